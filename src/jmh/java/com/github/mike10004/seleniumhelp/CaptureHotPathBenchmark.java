@@ -0,0 +1,109 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.filters.BrowserUpHttpFilterChain;
+import com.browserup.harreader.model.HarEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a complete interaction replayed through the filters that the traffic
+ * collector installs: the monitor filter used by {@link TrafficCollector#monitor(TrafficGenerator, TrafficMonitor)}
+ * and the HAR entry filter used for spilled and policy-restricted collection, each alone,
+ * and the composed chain of a proxy configured by the collector for
+ * {@link TrafficCollector#collect(TrafficGenerator, TrafficMonitor)}, which also captures
+ * the HAR. Run with {@code -prof gc} to measure allocation per interaction.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CaptureHotPathBenchmark {
+
+    @Param({"0", "4096", "262144"})
+    public int bodySize;
+
+    @Param({"text/html; charset=UTF-8", "image/png"})
+    public String contentType;
+
+    @Param({"identity", "gzip", "br"})
+    public String contentEncoding;
+
+    @Param({"8", "48"})
+    public int headerCount;
+
+    @Param({"8192"})
+    public int chunkSize;
+
+    private SyntheticExchange exchange;
+    private BrowserUpProxyServer collectorProxy;
+    private volatile int chainInteractions;
+
+    @Setup
+    public void setUp() {
+        exchange = new SyntheticExchange(bodySize, contentType, contentEncoding, headerCount, chunkSize);
+        TrafficCollectorImpl collector = (TrafficCollectorImpl) TrafficCollector.builder(config -> {
+            throw new UnsupportedOperationException("benchmark does not drive a browser");
+        }).build();
+        collectorProxy = new BrowserUpProxyServer();
+        collector.configureProxy(collectorProxy, null, (request, response) -> chainInteractions++);
+        collectorProxy.enableHarCaptureTypes(collector.getCaptureTypes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        exchange.close();
+    }
+
+    @Benchmark
+    public void monitorFilter(Blackhole bh) {
+        TrafficMonitor monitor = (request, response) -> {
+            bh.consume(request);
+            bh.consume(response);
+        };
+        exchange.replay(new TrafficMonitorFilter(exchange.getRequest(), exchange.getContext(), monitor));
+    }
+
+    @Benchmark
+    public void harEntryFilter(Blackhole bh) {
+        HarEntrySink sink = new HarEntrySink() {
+            @Override
+            public void entryCompleted(HarEntry entry) {
+                bh.consume(entry);
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+        exchange.replay(new HarEntrySpillingFilter(exchange.getRequest(), exchange.getContext(), sink, null, CapturePolicy.captureAll()));
+    }
+
+    /**
+     * Replays the exchange through the filter chain that the proxy creates for each request.
+     * A new HAR is started for each interaction so that captured entries do not accumulate
+     * across invocations.
+     */
+    @Benchmark
+    public int collectorFilterChain() {
+        collectorProxy.newHar();
+        exchange.replay(new BrowserUpHttpFilterChain(collectorProxy, exchange.getRequest(), exchange.getContext()));
+        return chainInteractions;
+    }
+}
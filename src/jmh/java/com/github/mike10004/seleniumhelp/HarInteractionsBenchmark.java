@@ -0,0 +1,72 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarHeader;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import com.browserup.harreader.model.HttpMethod;
+import com.github.mike10004.seleniumhelp.ImmutableHttpMessage.HttpContentSource;
+import com.google.common.io.ByteSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the conversion of captured HAR messages to the immutable messages
+ * that are delivered to traffic monitors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HarInteractionsBenchmark {
+
+    @Param({"8", "48"})
+    public int headerCount;
+
+    private HarRequest harRequest;
+    private HarResponse harResponse;
+    private HttpContentSource content;
+
+    @Setup
+    public void setUp() {
+        harRequest = new HarRequest();
+        harRequest.setMethod(HttpMethod.GET);
+        harRequest.setUrl("http://www.example.com/resource?q=1&r=2");
+        harResponse = new HarResponse();
+        harResponse.setStatus(200);
+        for (int i = 0; i < headerCount; i++) {
+            harRequest.getHeaders().add(header("X-Request-Header-" + i, "value-" + i));
+            harResponse.getHeaders().add(header("X-Response-Header-" + i, "value-" + i));
+        }
+        content = HttpContentSource.fromBytes(ByteSource.wrap(new byte[1024]));
+    }
+
+    private static HarHeader header(String name, String value) {
+        HarHeader header = new HarHeader();
+        header.setName(name);
+        header.setValue(value);
+        return header;
+    }
+
+    @Benchmark
+    public ImmutableHttpRequest freezeRequest() {
+        return HarInteractions.freeze(harRequest);
+    }
+
+    @Benchmark
+    public ImmutableHttpResponse freezeResponse() {
+        return HarInteractions.freeze(harResponse, content);
+    }
+}
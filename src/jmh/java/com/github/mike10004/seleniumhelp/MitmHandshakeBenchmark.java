@@ -0,0 +1,139 @@
+package com.github.mike10004.seleniumhelp;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of TLS handshakes between a client and the engine with which the MITM manager
+ * impersonates a server, with RSA and elliptic-curve root and leaf keys. The cached benchmark
+ * measures handshakes with a leaf certificate from the impersonation cache; the uncached
+ * benchmark also generates a new leaf certificate for each handshake.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MitmHandshakeBenchmark {
+
+    private static final String HOST = "www.example.com";
+
+    @Param({"RSA", "EC_P256"})
+    public CertificateKeyAlgorithm keyAlgorithm;
+
+    private Path scratchDir;
+    private AutoCertificateAndKeySource rootSource;
+    private SSLContext clientContext;
+    private CachingImpersonatingMitmManager cachingManager;
+    private CachingImpersonatingMitmManager uncachedManager;
+    private HttpRequest connect;
+
+    @Setup
+    public void setUp() throws Exception {
+        scratchDir = Files.createTempDirectory("mitm-handshake-benchmark");
+        rootSource = new AutoCertificateAndKeySource(scratchDir, keyAlgorithm);
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("root", rootSource.load().getCertificate());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(trustStore);
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, tmf.getTrustManagers(), null);
+        cachingManager = new CachingImpersonatingMitmManager(rootSource, ImpersonationCache.builder().build(), keyAlgorithm);
+        uncachedManager = new CachingImpersonatingMitmManager(rootSource, ImpersonationCache.builder().maximumSize(0).build(), keyAlgorithm);
+        connect = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, HOST + ":443");
+        connect.headers().set(HttpHeaderNames.HOST, HOST + ":443");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        rootSource.close();
+        Files.deleteIfExists(scratchDir);
+    }
+
+    @Benchmark
+    public SSLEngine cachedLeafHandshake() throws SSLException {
+        return handshake(cachingManager);
+    }
+
+    @Benchmark
+    public SSLEngine uncachedLeafHandshake() throws SSLException {
+        return handshake(uncachedManager);
+    }
+
+    private SSLEngine handshake(CachingImpersonatingMitmManager manager) throws SSLException {
+        SSLEngine server = manager.clientSslEngineFor(connect, null);
+        server.setUseClientMode(false);
+        SSLEngine client = clientContext.createSSLEngine(HOST, 443);
+        client.setUseClientMode(true);
+        int packetSize = Math.max(client.getSession().getPacketBufferSize(), server.getSession().getPacketBufferSize());
+        int appSize = Math.max(client.getSession().getApplicationBufferSize(), server.getSession().getApplicationBufferSize());
+        ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4), serverToClient = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer empty = ByteBuffer.allocate(0), sink = ByteBuffer.allocate(appSize * 2);
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int i = 0; i < 1000 && !(isFinished(client) && isFinished(server)); i++) {
+            step(client, empty, clientToServer, serverToClient, sink);
+            step(server, empty, serverToClient, clientToServer, sink);
+        }
+        if (!(isFinished(client) && isFinished(server))) {
+            throw new IllegalStateException("handshake did not finish");
+        }
+        return client;
+    }
+
+    private static boolean isFinished(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || status == SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    private static void step(SSLEngine engine, ByteBuffer empty, ByteBuffer outbound, ByteBuffer inbound, ByteBuffer sink) throws SSLException {
+        switch (engine.getHandshakeStatus()) {
+            case NEED_WRAP:
+                engine.wrap(empty, outbound);
+                break;
+            case NEED_UNWRAP:
+                inbound.flip();
+                engine.unwrap(inbound, sink);
+                inbound.compact();
+                sink.clear();
+                break;
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import com.github.mike10004.seleniumhelp.ImmutableHttpMessage.HttpContentSource;
+import com.google.common.collect.MapMaker;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the bookkeeping by which {@link TrafficMonitorFilter} accumulates each
+ * response object once, although the proxy passes every object to the filter twice.
+ * A chunked response is replayed through the filter as in {@link CaptureHotPathBenchmark}.
+ * The baseline is the same filter with the bookkeeping it had before accumulation was made
+ * lock-free restored by a subclass: a weak-keyed set of objects already seen, guarded by
+ * a lock, and a notification flag guarded by another lock. The difference between the two
+ * benchmarks is the cost of that bookkeeping per chunk. Run with {@code -prof gc} to
+ * compare allocation per response.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseAccumulationBenchmark {
+
+    @Param({"16", "1024"})
+    public int chunkCount;
+
+    @Param({"1024"})
+    public int chunkSize;
+
+    private SyntheticExchange exchange;
+
+    @Setup
+    public void setUp() {
+        exchange = new SyntheticExchange(chunkCount * chunkSize, "application/octet-stream", "identity", 8, chunkSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        exchange.close();
+    }
+
+    @Benchmark
+    public void lockedWeakSetBaseline(Blackhole bh) {
+        exchange.replay(new LockedWeakSetFilter(exchange.getRequest(), exchange.getContext(), createMonitor(bh)));
+    }
+
+    @Benchmark
+    public void lockFree(Blackhole bh) {
+        exchange.replay(new TrafficMonitorFilter(exchange.getRequest(), exchange.getContext(), createMonitor(bh)));
+    }
+
+    private static TrafficMonitor createMonitor(Blackhole bh) {
+        return (request, response) -> {
+            bh.consume(request);
+            bh.consume(response);
+        };
+    }
+
+    /**
+     * Filter that performs the bookkeeping that preceded lock-free accumulation before
+     * delegating to the actual filter.
+     */
+    private static class LockedWeakSetFilter extends TrafficMonitorFilter {
+
+        private final Set<HttpObject> accumulated;
+        private final Object accumulatedLock = new Object();
+        private final Object notificationLock = new Object();
+        private volatile boolean notified;
+
+        public LockedWeakSetFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, TrafficMonitor trafficMonitor) {
+            super(originalRequest, ctx, trafficMonitor);
+            Map<HttpObject, Boolean> map = new MapMaker().weakKeys().makeMap();
+            accumulated = Collections.newSetFromMap(map);
+        }
+
+        @Override
+        public HttpObject serverToProxyResponse(HttpObject httpObject) {
+            synchronized (accumulatedLock) {
+                if (!accumulated.contains(httpObject)) {
+                    accumulated.add(httpObject);
+                }
+                return super.serverToProxyResponse(httpObject);
+            }
+        }
+
+        @Override
+        public HttpObject proxyToClientResponse(HttpObject httpObject) {
+            synchronized (accumulatedLock) {
+                if (!accumulated.contains(httpObject)) {
+                    accumulated.add(httpObject);
+                }
+                return super.proxyToClientResponse(httpObject);
+            }
+        }
+
+        @Override
+        protected void interactionCompleted(HarRequest harRequest, HarResponse harResponse, HttpContentSource responseContent, Timings timings) {
+            synchronized (notificationLock) {
+                if (notified) {
+                    return;
+                }
+                super.interactionCompleted(harRequest, harResponse, responseContent, timings);
+                notified = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.Strings;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.littleshoot.proxy.HttpFilters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Synthetic request/response exchange that is replayed through a filter without
+ * a proxy server or a browser. The filter is given the context of a Netty embedded channel
+ * whose remote address is a loopback socket address, as the HAR capture filter expects.
+ */
+class SyntheticExchange {
+
+    private static final int MAX_BROTLI_STORED_BLOCK_LENGTH = 65536;
+    private static final InetSocketAddress CLIENT_ADDRESS = new InetSocketAddress(InetAddress.getLoopbackAddress(), 50000);
+
+    private final EmbeddedChannel channel;
+    private final HttpRequest request;
+    private final HttpHeaders responseHeaders;
+    private final List<byte[]> chunks;
+    private final int encodedBodySize;
+
+    /**
+     * Constructs an instance.
+     * @param bodySize decoded size of the response body
+     * @param contentType response content type; bodies of textual types are markup and others are random bytes
+     * @param contentEncoding response content encoding: identity, gzip, or br
+     * @param headerCount number of headers in the request and in the response
+     * @param chunkSize maximum size of each response content chunk
+     */
+    public SyntheticExchange(int bodySize, String contentType, String contentEncoding, int headerCount, int chunkSize) {
+        checkArgument(chunkSize > 0, "chunk size must be positive");
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter()) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return CLIENT_ADDRESS;
+            }
+        };
+        request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/resource?q=1&r=2");
+        addHeaders(request.headers(), "X-Request-Header-", headerCount);
+        request.headers().set(HttpHeaderNames.HOST, "www.example.com");
+        byte[] body = encode(createBody(bodySize, contentType), contentEncoding);
+        encodedBodySize = body.length;
+        responseHeaders = new DefaultHttpHeaders();
+        addHeaders(responseHeaders, "X-Response-Header-", headerCount);
+        responseHeaders.set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        responseHeaders.set(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        if (!"identity".equals(contentEncoding)) {
+            responseHeaders.set(HttpHeaderNames.CONTENT_ENCODING, contentEncoding);
+        }
+        chunks = new ArrayList<>();
+        for (int offset = 0; offset < body.length; offset += chunkSize) {
+            chunks.add(Arrays.copyOfRange(body, offset, Math.min(body.length, offset + chunkSize)));
+        }
+    }
+
+    private static void addHeaders(HttpHeaders headers, String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            headers.add(prefix + i, "value-" + Strings.repeat("v", i % 32));
+        }
+    }
+
+    private static byte[] createBody(int size, String contentType) {
+        if (contentType.startsWith("text/")) {
+            StringBuilder sb = new StringBuilder(size + 64);
+            for (int i = 0; sb.length() < size; i++) {
+                sb.append("<p class=\"item\">Paragraph ").append(i).append(" of synthetic content</p>\n");
+            }
+            return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.US_ASCII), size);
+        }
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] encode(byte[] body, String contentEncoding) {
+        switch (contentEncoding) {
+            case "identity":
+                return body;
+            case "gzip":
+                return gzip(body);
+            case "br":
+                return brotliStored(body);
+            default:
+                throw new IllegalArgumentException("unsupported encoding: " + contentEncoding);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 32);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes data as a brotli stream of uncompressed meta-blocks. No brotli encoder is
+     * available to the build, so this exercises the decoder's framing and copying
+     * rather than its decompression of real content.
+     */
+    static byte[] brotliStored(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + data.length / MAX_BROTLI_STORED_BLOCK_LENGTH * 3 + 4);
+        long bits = 0; // WBITS = 16, encoded as a single zero bit
+        int nbits = 1;
+        for (int offset = 0; offset < data.length; offset += MAX_BROTLI_STORED_BLOCK_LENGTH) {
+            int length = Math.min(MAX_BROTLI_STORED_BLOCK_LENGTH, data.length - offset);
+            nbits += 1; // ISLAST = 0
+            nbits += 2; // MNIBBLES = 0, meaning four nibbles
+            bits |= (long) (length - 1) << nbits;
+            nbits += 16;
+            bits |= 1L << nbits; // ISUNCOMPRESSED = 1
+            nbits += 1;
+            writeBits(out, bits, nbits);
+            bits = 0;
+            nbits = 0;
+            out.write(data, offset, length);
+        }
+        bits |= 0x3L << nbits; // ISLAST = 1, ISLASTEMPTY = 1
+        nbits += 2;
+        writeBits(out, bits, nbits);
+        return out.toByteArray();
+    }
+
+    private static void writeBits(ByteArrayOutputStream out, long bits, int nbits) {
+        for (int i = 0; i < nbits; i += 8) {
+            out.write((int) (bits >>> i) & 0xFF);
+        }
+    }
+
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    public ChannelHandlerContext getContext() {
+        return channel.pipeline().firstContext();
+    }
+
+    public int getEncodedBodySize() {
+        return encodedBodySize;
+    }
+
+    /**
+     * Replays the exchange through a filter, invoking the callbacks in the order the proxy
+     * invokes them for a request sent over an established connection.
+     * @param filters the filter
+     */
+    public void replay(HttpFilters filters) {
+        filters.clientToProxyRequest(request);
+        filters.proxyToServerRequest(request);
+        filters.proxyToServerRequestSending();
+        filters.proxyToServerRequestSent();
+        filters.serverToProxyResponseReceiving();
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, responseHeaders);
+        filters.serverToProxyResponse(response);
+        filters.proxyToClientResponse(response);
+        for (byte[] chunk : chunks) {
+            DefaultHttpContent content = new DefaultHttpContent(Unpooled.wrappedBuffer(chunk));
+            filters.serverToProxyResponse(content);
+            filters.proxyToClientResponse(content);
+        }
+        DefaultLastHttpContent last = new DefaultLastHttpContent();
+        filters.serverToProxyResponse(last);
+        filters.serverToProxyResponseReceived();
+        filters.proxyToClientResponse(last);
+    }
+
+    public void close() {
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,634 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Traffic monitor that hands interactions off to worker threads, so that a slow
+ * monitor does not stall the proxy's I/O threads. Interactions are held in a bounded
+ * queue; what happens when the queue is full is determined by the {@link OverflowPolicy}.
+ * Interactions are delivered to the wrapped monitor, if any, and to the subscribers of
+ * the {@link #asPublisher() publisher view}. The other callbacks, such as
+ * {@link #requestSent(ImmutableHttpRequest)} and {@link #responseContentChunk(ImmutableHttpRequest, ByteBuffer)},
+ * are delivered only to the wrapped monitor; content chunks are copied, because the buffers
+ * passed by the proxy are valid only during the call.
+ *
+ * <p>The callbacks for a request are delivered on a lane of their own, one at a time and in
+ * the order they were received, and the interaction is delivered after them. A lane is
+ * queued like an interaction, except that it is never discarded, so the overflow policy
+ * does not apply to it and a full queue blocks the proxy thread. With more than one worker
+ * thread, the wrapped monitor may be invoked concurrently for different requests, and
+ * interactions may be delivered out of order. Instances must be closed after the collection
+ * session in order to release the worker threads.
+ */
+public class AsyncTrafficMonitor implements TrafficMonitor, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncTrafficMonitor.class);
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    /**
+     * Enumeration of actions to take when an interaction is received and the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Block the proxy thread until space is available.
+         */
+        BLOCK,
+
+        /**
+         * Discard the interaction at the head of the queue to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Discard the new interaction.
+         */
+        DROP_NEWEST
+    }
+
+    @Nullable
+    private final TrafficMonitor delegate;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<Notification> queue;
+    private final int subscriberBufferSize;
+    private final Duration closeTimeout;
+    private final ExecutorService workers;
+    private final CopyOnWriteArrayList<InteractionSubscription> subscriptions;
+    private final ConcurrentMap<ImmutableHttpRequest, Lane> lanes;
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile boolean closed;
+
+    private AsyncTrafficMonitor(Builder builder) {
+        delegate = builder.delegate;
+        overflowPolicy = builder.overflowPolicy;
+        queue = new ArrayBlockingQueue<>(builder.queueCapacity);
+        subscriberBufferSize = builder.subscriberBufferSize;
+        closeTimeout = builder.closeTimeout;
+        subscriptions = new CopyOnWriteArrayList<>();
+        // weak keys are compared by identity; the proxy passes the same request instance to each callback
+        lanes = new MapMaker().weakKeys().makeMap();
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("traffic-monitor-dispatch-%d")
+                .build();
+        workers = Executors.newFixedThreadPool(builder.workerThreads, threadFactory);
+        for (int i = 0; i < builder.workerThreads; i++) {
+            workers.submit(this::work);
+        }
+    }
+
+    /**
+     * Creates a builder of an instance that dispatches interactions to the given monitor.
+     * @param delegate the monitor
+     * @return a new builder
+     */
+    public static Builder builder(TrafficMonitor delegate) {
+        return new Builder(requireNonNull(delegate, "delegate"));
+    }
+
+    /**
+     * Creates a builder of an instance that dispatches interactions only to subscribers
+     * of its {@link #asPublisher() publisher view}.
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder(null);
+    }
+
+    @Override
+    public void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+        responseReceived(httpRequest, httpResponse, Timings.unknown());
+    }
+
+    @Override
+    public void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse, Timings timings) {
+        receivedCount.incrementAndGet();
+        HttpInteraction interaction = new HttpInteraction(httpRequest, httpResponse, timings);
+        @Nullable Lane lane = lanes.remove(httpRequest);
+        if (lane != null) {
+            submitToLane(lane, () -> dispatch(interaction), httpRequest);
+        } else {
+            submit(() -> dispatch(interaction), httpRequest);
+        }
+    }
+
+    @Override
+    public void requestSent(ImmutableHttpRequest httpRequest) {
+        if (delegate != null) {
+            submitToLane(httpRequest, () -> deliver(() -> delegate.requestSent(httpRequest), httpRequest));
+        }
+    }
+
+    @Override
+    public void responseHeadersReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+        if (delegate != null) {
+            submitToLane(httpRequest, () -> deliver(() -> delegate.responseHeadersReceived(httpRequest, httpResponse), httpRequest));
+        }
+    }
+
+    @Override
+    public void responseContentChunk(ImmutableHttpRequest httpRequest, ByteBuffer chunk) {
+        if (delegate != null) {
+            ByteBuffer copy = ByteBuffer.allocate(chunk.remaining());
+            copy.put(chunk.duplicate());
+            copy.flip();
+            ByteBuffer readOnlyCopy = copy.asReadOnlyBuffer();
+            submitToLane(httpRequest, () -> deliver(() -> delegate.responseContentChunk(httpRequest, readOnlyCopy), httpRequest));
+        }
+    }
+
+    @Override
+    public boolean isResponseHeadersNotified() {
+        return delegate != null && delegate.isResponseHeadersNotified();
+    }
+
+    @Override
+    public boolean isResponseContentStreamed() {
+        return delegate != null && delegate.isResponseContentStreamed();
+    }
+
+    @Override
+    public boolean isResponseContentAggregated() {
+        return delegate == null || delegate.isResponseContentAggregated();
+    }
+
+    private void submit(Notification notification, ImmutableHttpRequest httpRequest) {
+        if (closed) {
+            log.debug("dropping notification received after close: {}", httpRequest.url);
+            droppedCount.incrementAndGet();
+            return;
+        }
+        enqueue(queue, notification, overflowPolicy, droppedCount, () -> closed);
+    }
+
+    private void submitToLane(ImmutableHttpRequest httpRequest, Notification notification) {
+        submitToLane(lanes.computeIfAbsent(httpRequest, k -> new Lane()), notification, httpRequest);
+    }
+
+    private void submitToLane(Lane lane, Notification notification, ImmutableHttpRequest httpRequest) {
+        if (closed) {
+            log.debug("dropping notification received after close: {}", httpRequest.url);
+            droppedCount.incrementAndGet();
+            return;
+        }
+        lane.add(notification);
+    }
+
+    /**
+     * Notification waiting to be dispatched by a worker thread.
+     */
+    private interface Notification {
+        void dispatch();
+    }
+
+    /**
+     * Serial queue of the notifications for one request. The lane is placed on the main queue
+     * when a notification is added to it while it is idle, and the worker that takes it
+     * dispatches its notifications until none remain, so they are dispatched one at a time.
+     */
+    private final class Lane implements Notification {
+
+        private final Queue<Notification> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        public void add(Notification notification) {
+            pending.add(notification);
+            if (wip.getAndIncrement() == 0) {
+                enqueue(queue, this, OverflowPolicy.BLOCK, droppedCount, () -> closed);
+            }
+        }
+
+        @Override
+        public void dispatch() {
+            int missed = 1;
+            do {
+                Notification notification;
+                while ((notification = pending.poll()) != null) {
+                    notification.dispatch();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    private interface CancellationCheck {
+        boolean isCancelled();
+    }
+
+    private static <E> void enqueue(BlockingQueue<E> queue, E item, OverflowPolicy policy, AtomicLong droppedCount, CancellationCheck cancellation) {
+        switch (policy) {
+            case BLOCK:
+                try {
+                    while (!queue.offer(item, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (cancellation.isCancelled()) {
+                            droppedCount.incrementAndGet();
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(item)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(item)) {
+                    droppedCount.incrementAndGet();
+                }
+                break;
+            default:
+                throw new IllegalStateException("unhandled policy: " + policy);
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Notification notification;
+            try {
+                notification = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                log.debug("dispatch worker interrupted");
+                return;
+            }
+            if (notification == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            notification.dispatch();
+        }
+    }
+
+    private void deliver(Runnable callback, ImmutableHttpRequest httpRequest) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            log.warn("monitor failed to handle notification for " + httpRequest.url, e);
+        }
+    }
+
+    private void dispatch(HttpInteraction interaction) {
+        if (delegate != null) {
+            deliver(() -> delegate.responseReceived(interaction.request, interaction.response, interaction.getTimings()), interaction.request);
+        }
+        for (InteractionSubscription subscription : subscriptions) {
+            subscription.offer(interaction);
+        }
+        dispatchedCount.incrementAndGet();
+    }
+
+    /**
+     * Returns a publisher view of the interactions received by this monitor. Each subscriber
+     * has a bounded buffer of interactions that have not yet been requested; when that buffer
+     * is full, the overflow policy of this monitor is applied, so with {@link OverflowPolicy#BLOCK}
+     * a subscriber's lack of demand propagates back to the proxy. Subscribers only receive
+     * interactions dispatched after they subscribe, and are completed when this monitor is closed.
+     * @return the publisher
+     */
+    public Publisher<HttpInteraction> asPublisher() {
+        return subscriber -> {
+            requireNonNull(subscriber, "subscriber");
+            InteractionSubscription subscription = new InteractionSubscription(subscriber);
+            subscriptions.add(subscription);
+            subscriber.onSubscribe(subscription);
+            if (closed) {
+                subscription.complete();
+            }
+        };
+    }
+
+    /**
+     * Stops accepting interactions, waits for queued interactions to be dispatched,
+     * and completes the subscribers of the publisher view.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(closeTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("{} notifications not dispatched within {}", queue.size(), closeTimeout);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        subscriptions.forEach(InteractionSubscription::complete);
+    }
+
+    @Override
+    public int getMaximumRequestBufferSizeInBytes() {
+        return delegate == null ? TrafficMonitor.super.getMaximumRequestBufferSizeInBytes() : delegate.getMaximumRequestBufferSizeInBytes();
+    }
+
+    @Override
+    public int getMaximumResponseBufferSizeInBytes() {
+        return delegate == null ? TrafficMonitor.super.getMaximumResponseBufferSizeInBytes() : delegate.getMaximumResponseBufferSizeInBytes();
+    }
+
+    @Override
+    public void sessionCreated(WeakReference<WebdrivingSession> session) {
+        if (delegate != null) {
+            delegate.sessionCreated(session);
+        }
+    }
+
+    /**
+     * Gets the number of interactions and other notifications waiting to be dispatched.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of interactions received from the proxy.
+     * @return the count
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * Gets the number of interactions taken off the queue and dispatched.
+     * @return the count
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * Gets the number of interactions and other notifications discarded, either from the main
+     * queue or from a subscriber's buffer, because of the overflow policy or because this
+     * monitor was closed.
+     * @return the count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Gets the number of interactions and other notifications for which the wrapped
+     * monitor threw an exception.
+     * @return the count
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("delegate", delegate)
+                .add("overflowPolicy", overflowPolicy)
+                .add("queueDepth", getQueueDepth())
+                .add("received", getReceivedCount())
+                .add("dispatched", getDispatchedCount())
+                .add("dropped", getDroppedCount())
+                .add("closed", closed)
+                .toString();
+    }
+
+    private class InteractionSubscription implements Subscription {
+
+        private final Subscriber<? super HttpInteraction> subscriber;
+        private final BlockingQueue<HttpInteraction> buffer;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        @Nullable
+        private volatile Throwable error;
+
+        public InteractionSubscription(Subscriber<? super HttpInteraction> subscriber) {
+            this.subscriber = subscriber;
+            buffer = new ArrayBlockingQueue<>(subscriberBufferSize);
+        }
+
+        void offer(HttpInteraction interaction) {
+            if (cancelled || done) {
+                return;
+            }
+            enqueue(buffer, interaction, overflowPolicy, droppedCount, () -> cancelled);
+            drain();
+        }
+
+        void complete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("non-positive request: " + n);
+                drain();
+                return;
+            }
+            long current, next;
+            do {
+                current = requested.get();
+                if (current == Long.MAX_VALUE) {
+                    break;
+                }
+                next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long r = requested.get();
+                long emitted = 0;
+                while (true) {
+                    if (cancelled) {
+                        buffer.clear();
+                        return;
+                    }
+                    Throwable t = error;
+                    if (t != null) {
+                        terminate(() -> subscriber.onError(t));
+                        return;
+                    }
+                    if (emitted == r) {
+                        if (done && buffer.isEmpty()) {
+                            terminate(subscriber::onComplete);
+                            return;
+                        }
+                        break;
+                    }
+                    boolean wasDone = done;
+                    HttpInteraction interaction = buffer.poll();
+                    if (interaction == null) {
+                        if (wasDone) {
+                            terminate(subscriber::onComplete);
+                            return;
+                        }
+                        break;
+                    }
+                    if (!signal(() -> subscriber.onNext(interaction))) {
+                        return;
+                    }
+                    emitted++;
+                }
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate(Runnable signal) {
+            cancelled = true;
+            subscriptions.remove(this);
+            buffer.clear();
+            signal(signal);
+        }
+
+        private boolean signal(Runnable signal) {
+            try {
+                signal.run();
+                return true;
+            } catch (RuntimeException e) {
+                log.warn("subscriber " + subscriber + " threw exception; cancelling subscription", e);
+                cancelled = true;
+                subscriptions.remove(this);
+                buffer.clear();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Builder of asynchronous traffic monitor instances.
+     */
+    public static final class Builder {
+
+        @Nullable
+        private final TrafficMonitor delegate;
+        private int queueCapacity = 1024;
+        private int workerThreads = 1;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private int subscriberBufferSize = 256;
+        private Duration closeTimeout = Duration.ofSeconds(30);
+
+        private Builder(@Nullable TrafficMonitor delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Sets the capacity of the queue of interactions waiting to be dispatched.
+         * @param queueCapacity the capacity; must be positive
+         * @return this builder instance
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            checkArgument(queueCapacity > 0, "queue capacity must be positive: %s", queueCapacity);
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that dispatch interactions.
+         * @param workerThreads the thread count; must be positive
+         * @return this builder instance
+         */
+        public Builder workerThreads(int workerThreads) {
+            checkArgument(workerThreads > 0, "worker thread count must be positive: %s", workerThreads);
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        /**
+         * Sets the action to take when an interaction is received and the queue is full.
+         * @param overflowPolicy the policy
+         * @return this builder instance
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = requireNonNull(overflowPolicy);
+            return this;
+        }
+
+        /**
+         * Sets the size of the buffer held for each subscriber of the publisher view.
+         * @param subscriberBufferSize the size; must be positive
+         * @return this builder instance
+         */
+        public Builder subscriberBufferSize(int subscriberBufferSize) {
+            checkArgument(subscriberBufferSize > 0, "subscriber buffer size must be positive: %s", subscriberBufferSize);
+            this.subscriberBufferSize = subscriberBufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait on close for queued interactions to be dispatched.
+         * @param closeTimeout the timeout
+         * @return this builder instance
+         */
+        public Builder closeTimeout(Duration closeTimeout) {
+            this.closeTimeout = requireNonNull(closeTimeout);
+            return this;
+        }
+
+        public AsyncTrafficMonitor build() {
+            return new AsyncTrafficMonitor(this);
+        }
+    }
+}
@@ -2,21 +2,23 @@ package com.github.mike10004.seleniumhelp;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.io.ByteSource;
-import com.google.common.io.Files;
 import com.browserup.bup.mitm.CertificateAndKey;
 import com.browserup.bup.mitm.CertificateAndKeySource;
 import com.browserup.bup.mitm.RootCertificateGenerator;
-import org.apache.commons.io.FileUtils;
+import com.browserup.bup.mitm.tools.DefaultSecurityProviderTool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.Executor;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -31,27 +33,46 @@ public class AutoCertificateAndKeySource implements CertificateAndKeySource, jav
     private volatile boolean closed;
     private transient final Object generationLock = new Object();
 
-    private final Path scratchDir;
     private final Random random;
+    private final CertificateKeyAlgorithm keyAlgorithm;
 
+    /**
+     * Constructs an instance. The certificate is generated in memory, so the scratch
+     * directory is not used; the parameter is retained for compatibility.
+     * @param scratchDir scratch directory
+     */
     @SuppressWarnings("unused")
     public AutoCertificateAndKeySource(Path scratchDir) {
-        this(scratchDir, new Random());
+        this(scratchDir, CertificateKeyAlgorithm.RSA);
+    }
+
+    /**
+     * Constructs an instance that generates a root certificate with a key of the given algorithm.
+     * @param scratchDir scratch directory; not used
+     * @param keyAlgorithm root certificate key algorithm
+     */
+    public AutoCertificateAndKeySource(Path scratchDir, CertificateKeyAlgorithm keyAlgorithm) {
+        this(scratchDir, new Random(), keyAlgorithm);
     }
 
     @VisibleForTesting
     AutoCertificateAndKeySource(Path scratchDir, Random random) {
-        this.scratchDir = scratchDir;
+        this(scratchDir, random, CertificateKeyAlgorithm.RSA);
+    }
+
+    @SuppressWarnings("unused")
+    private AutoCertificateAndKeySource(Path scratchDir, Random random, CertificateKeyAlgorithm keyAlgorithm) {
         this.random = random;
+        this.keyAlgorithm = Objects.requireNonNull(keyAlgorithm, "keyAlgorithm");
     }
 
     @SuppressWarnings("RedundantThrows")
     @Override
     public void close() throws IOException {
         synchronized (generationLock) {
+            closed = true;
             if (onDemandSource != null) {
                 Arrays.fill(onDemandSource.keystoreBytes, (byte) 0);
-                closed = true;
                 onDemandSource = null;
             }
         }
@@ -66,11 +87,7 @@ public class AutoCertificateAndKeySource implements CertificateAndKeySource, jav
             checkState(!closed, "this source is closed");
             if (onDemandSource == null) {
                 try {
-                    byte[] bytes = new byte[32];
-                    random.nextBytes(bytes);
-                    String password = Base64.getEncoder().encodeToString(bytes);
-                    keystorePasswordGenerated(password);
-                    onDemandSource = generate(password);
+                    onDemandSource = createSource();
                 } catch (IOException e) {
                     throw new CertificateGenerationException(e);
                 }
@@ -79,6 +96,21 @@ public class AutoCertificateAndKeySource implements CertificateAndKeySource, jav
 
     }
 
+    /**
+     * Creates the source of the root certificate and key. Invoked at most once per instance,
+     * when the certificate is first needed. The default implementation generates a password
+     * and a new keystore.
+     * @return a new source
+     * @throws IOException on I/O error
+     */
+    protected MemoryKeyStoreCertificateSource createSource() throws IOException {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String password = Base64.getEncoder().encodeToString(bytes);
+        keystorePasswordGenerated(password);
+        return generate(password);
+    }
+
     @Override
     public CertificateAndKey load() {
         generateIfNecessary();
@@ -100,8 +132,8 @@ public class AutoCertificateAndKeySource implements CertificateAndKeySource, jav
         }
     }
 
-    private static final String KEYSTORE_TYPE = "PKCS12";
-    private static final String KEYSTORE_PRIVATE_KEY_ALIAS = "key";
+    static final String KEYSTORE_TYPE = "PKCS12";
+    static final String KEYSTORE_PRIVATE_KEY_ALIAS = "key";
 
     protected static class MemoryKeyStoreCertificateSource extends KeyStoreStreamCertificateSource {
 
@@ -137,18 +169,62 @@ public class AutoCertificateAndKeySource implements CertificateAndKeySource, jav
     }
 
     protected MemoryKeyStoreCertificateSource generate(String keystorePassword) throws IOException {
-        File keystoreFile = File.createTempFile("dynamically-generated-certificate", ".keystore", scratchDir.toFile());
+        byte[] keystoreBytes = generateKeystoreBytes(keystorePassword, keyAlgorithm);
+        log.debug("generated keystore ({} bytes)", keystoreBytes.length);
+        keystoreBytesGenerated(ByteSource.wrap(keystoreBytes));
+        return new MemoryKeyStoreCertificateSource(KEYSTORE_TYPE, keystoreBytes, KEYSTORE_PRIVATE_KEY_ALIAS, keystorePassword);
+    }
+
+    /**
+     * Generates a root certificate and RSA key and serializes them as a keystore in memory.
+     * @param keystorePassword the keystore password
+     * @return the keystore bytes
+     * @throws IOException if the keystore cannot be serialized
+     */
+    static byte[] generateKeystoreBytes(String keystorePassword) throws IOException {
+        return generateKeystoreBytes(keystorePassword, CertificateKeyAlgorithm.RSA);
+    }
+
+    /**
+     * Generates a root certificate and key and serializes them as a keystore in memory.
+     * @param keystorePassword the keystore password
+     * @param keyAlgorithm the key algorithm
+     * @return the keystore bytes
+     * @throws IOException if the keystore cannot be serialized
+     */
+    static byte[] generateKeystoreBytes(String keystorePassword, CertificateKeyAlgorithm keyAlgorithm) throws IOException {
+        CertificateAndKey certificateAndKey = RootCertificateGenerator.builder()
+                .keyGenerator(keyAlgorithm.createKeyGenerator())
+                .build().load();
+        KeyStore keyStore = new DefaultSecurityProviderTool().createRootCertificateKeyStore(KEYSTORE_TYPE, certificateAndKey, KEYSTORE_PRIVATE_KEY_ALIAS, keystorePassword);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
         try {
-            // create a dynamic CA root certificate generator using default settings (2048-bit RSA keys)
-            RootCertificateGenerator rootCertificateGenerator = RootCertificateGenerator.builder().build();
-            rootCertificateGenerator.saveRootCertificateAndKey(KEYSTORE_TYPE, keystoreFile, KEYSTORE_PRIVATE_KEY_ALIAS, keystorePassword);
-            log.debug("saved keystore to {} ({} bytes)%n", keystoreFile, keystoreFile.length());
-            byte[] keystoreBytes = Files.toByteArray(keystoreFile);
-            keystoreBytesGenerated(ByteSource.wrap(keystoreBytes));
-            return new MemoryKeyStoreCertificateSource(KEYSTORE_TYPE, keystoreBytes, KEYSTORE_PRIVATE_KEY_ALIAS, keystorePassword);
-        } finally {
-            FileUtils.forceDelete(keystoreFile);
+            keyStore.store(out, keystorePassword.toCharArray());
+        } catch (GeneralSecurityException e) {
+            throw new CertificateGenerationException(e);
         }
+        return out.toByteArray();
+    }
+
+    /**
+     * Starts generating the certificate in the background, so that the first
+     * {@link #load()} does not wait for key generation. If generation fails,
+     * the failure is logged and generation is attempted again on the first load.
+     * @param executor the executor on which to generate the certificate
+     * @return this instance
+     */
+    public AutoCertificateAndKeySource prewarm(Executor executor) {
+        executor.execute(() -> {
+            if (closed) {
+                return;
+            }
+            try {
+                generateIfNecessary();
+            } catch (RuntimeException e) {
+                log.warn("background certificate generation failed", e);
+            }
+        });
+        return this;
     }
 
     public KeystoreInput acquireKeystoreInput() {
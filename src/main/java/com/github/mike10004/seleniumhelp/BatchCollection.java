@@ -0,0 +1,183 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.openqa.selenium.WebDriverException;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Batch of collection sessions running concurrently. Iterating over an instance yields
+ * the outcome of each session in order of completion, blocking until the next session
+ * completes. Closing the batch interrupts sessions still in progress.
+ * @param <R> generator result type
+ * @see TrafficCollector#collectAll(Collection, int)
+ */
+public class BatchCollection<R> implements Iterator<BatchCollection.Outcome<R>>, Closeable {
+
+    private final ExecutorService executor;
+    private final CompletionService<Outcome<R>> completionService;
+    private final int total;
+    private int taken;
+
+    BatchCollection(TrafficCollector collector, Collection<? extends TrafficGenerator<R>> generators, int parallelism) {
+        requireNonNull(collector, "collector");
+        checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+        ImmutableList<TrafficGenerator<R>> generatorList = ImmutableList.copyOf(generators);
+        executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, generatorList.size())), new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("batch-collection-%d")
+                .build());
+        completionService = new ExecutorCompletionService<>(executor);
+        total = generatorList.size();
+        for (int i = 0; i < generatorList.size(); i++) {
+            int index = i;
+            TrafficGenerator<R> generator = generatorList.get(i);
+            completionService.submit(() -> {
+                try {
+                    return new Outcome<>(index, generator, collector.collect(generator), null);
+                } catch (IOException | RuntimeException e) {
+                    return new Outcome<>(index, generator, null, e);
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return taken < total;
+    }
+
+    /**
+     * Waits for the next session to complete and returns its outcome.
+     * @return the outcome
+     * @throws NoSuchElementException if all outcomes have been returned
+     * @throws IllegalStateException if interrupted while waiting
+     */
+    @Override
+    public Outcome<R> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Future<Outcome<R>> future;
+        try {
+            future = completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for collection to complete", e);
+        }
+        taken++;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            // tasks catch checked and runtime exceptions, so only errors reach here
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Interrupts sessions still in progress and discards sessions not yet started.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("total", total)
+                .add("taken", taken)
+                .toString();
+    }
+
+    /**
+     * Outcome of a single collection session in a batch.
+     * @param <R> generator result type
+     */
+    public static final class Outcome<R> {
+
+        /**
+         * Position of the generator in the collection passed to {@link TrafficCollector#collectAll(Collection, int)}.
+         */
+        public final int index;
+
+        /**
+         * The generator.
+         */
+        public final TrafficGenerator<R> generator;
+
+        @Nullable
+        private final HarPlus<R> harPlus;
+
+        @Nullable
+        private final Exception exception;
+
+        private Outcome(int index, TrafficGenerator<R> generator, @Nullable HarPlus<R> harPlus, @Nullable Exception exception) {
+            this.index = index;
+            this.generator = generator;
+            this.harPlus = harPlus;
+            this.exception = exception;
+        }
+
+        /**
+         * Gets the result of the session, throwing the exception the session failed with, if any.
+         * @return the result
+         * @throws IOException if the session failed with an I/O exception
+         * @throws WebDriverException if the session failed with a webdriver exception
+         */
+        public HarPlus<R> get() throws IOException, WebDriverException {
+            if (exception instanceof IOException) {
+                throw (IOException) exception;
+            }
+            if (exception != null) {
+                throw (RuntimeException) exception;
+            }
+            return harPlus;
+        }
+
+        /**
+         * Checks whether the session completed without an exception.
+         * @return true if the session succeeded
+         */
+        public boolean isSuccess() {
+            return exception == null;
+        }
+
+        /**
+         * Gets the exception the session failed with.
+         * @return the exception, or null if the session succeeded
+         */
+        @Nullable
+        public Exception getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("index", index)
+                    .add("success", isSuccess())
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Accumulator of message body bytes that holds content in memory up to a threshold
+ * and then either streams it to a file or truncates it, according to a set of limits.
+ * Instances are confined to the channel thread that delivers the message.
+ */
+class BodyAccumulator {
+
+    private static final Logger log = LoggerFactory.getLogger(BodyAccumulator.class);
+
+    private final BodyCaptureLimits limits;
+    @Nullable
+    private final SpilledBodyFiles spilledFiles;
+    private final ByteArrayOutputStream memory;
+    @Nullable
+    private File file;
+    @Nullable
+    private OutputStream fileOutput;
+    private long size;
+    private boolean truncated;
+    private boolean finished;
+
+    public BodyAccumulator(BodyCaptureLimits limits) {
+        this(limits, null);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param limits the limits
+     * @param spilledFiles the set to which a file is added if the body is spilled, or null
+     * to have the file deleted on exit unless the limits call for it to be kept
+     */
+    public BodyAccumulator(BodyCaptureLimits limits, @Nullable SpilledBodyFiles spilledFiles) {
+        this.limits = requireNonNull(limits);
+        this.spilledFiles = spilledFiles;
+        memory = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Appends the readable bytes of a buffer without changing the buffer's reader index.
+     * @param buffer the buffer
+     */
+    public void append(ByteBuf buffer) {
+        int length = buffer.readableBytes();
+        if (length == 0 || truncated || finished) {
+            if (length > 0 && !finished) {
+                truncated = true;
+            }
+            return;
+        }
+        long maxBodySize = limits.getMaxBodySize();
+        if (maxBodySize >= 0 && size + length > maxBodySize) {
+            length = (int) (maxBodySize - size);
+            truncated = true;
+        }
+        if (fileOutput == null && size + length > limits.getMemoryThreshold()) {
+            if (limits.getScratchDir() == null || !spill()) {
+                length = (int) Math.max(0, limits.getMemoryThreshold() - size);
+                truncated = true;
+            }
+        }
+        if (length <= 0) {
+            return;
+        }
+        try {
+            buffer.getBytes(buffer.readerIndex(), fileOutput != null ? fileOutput : memory, length);
+            size += length;
+        } catch (IOException e) {
+            log.warn("failed to store body content in {}; content will be truncated", file, e);
+            truncated = true;
+        }
+    }
+
+    private boolean spill() {
+        try {
+            File scratchDir = requireNonNull(limits.getScratchDir()).toFile();
+            file = File.createTempFile("body", ".tmp", scratchDir);
+            if (spilledFiles != null) {
+                spilledFiles.add(file);
+            } else if (!limits.isSpilledFilesKept()) {
+                file.deleteOnExit();
+            }
+            fileOutput = new BufferedOutputStream(new FileOutputStream(file));
+            memory.writeTo(fileOutput);
+            memory.reset();
+            return true;
+        } catch (IOException e) {
+            log.warn("failed to create body file in {}; content will be truncated", limits.getScratchDir(), e);
+            closeQuietly();
+            file = null;
+            fileOutput = null;
+            return false;
+        }
+    }
+
+    /**
+     * Marks the end of the body. Subsequent appends are ignored.
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            } catch (IOException e) {
+                log.warn("failed to close body file {}", file, e);
+                truncated = true;
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Gets the accumulated content. If the content is held in a file, the file is read
+     * each time the byte source is opened.
+     * @return the content
+     */
+    public ByteSource toByteSource() {
+        if (file != null) {
+            return Files.asByteSource(file);
+        }
+        return ByteSource.wrap(memory.toByteArray());
+    }
+
+    /**
+     * Gets the accumulated content as an array, if it is held in memory.
+     * @return the content, or null if the content is held in a file
+     */
+    @Nullable
+    public byte[] toByteArrayIfInMemory() {
+        return file == null ? memory.toByteArray() : null;
+    }
+
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Value class that defines limits on how request and response bodies are held during capture.
+ * Bodies up to the memory threshold are held in memory. Larger bodies are streamed to temporary
+ * files in the scratch directory, if one is configured; otherwise they are truncated at the
+ * memory threshold. Independently, bodies may be truncated at a maximum size. Truncated content
+ * is flagged by {@link ImmutableHttpMessage#isContentTruncated()} and by a {@code _contentTruncated}
+ * field in the HAR response.
+ *
+ * <p>Files in the scratch directory are deleted when the collection session in which they were
+ * created ends, unless the limits are built with {@link Builder#keepSpilledFiles()}. Files created
+ * by filters used outside a traffic collector are deleted when the virtual machine exits.
+ * @see CapturePolicy.Builder#bodyLimits(BodyCaptureLimits)
+ */
+public final class BodyCaptureLimits {
+
+    private static final BodyCaptureLimits UNBOUNDED = new BodyCaptureLimits(Integer.MAX_VALUE, null, -1, false);
+
+    private final int memoryThreshold;
+    @Nullable
+    private final Path scratchDir;
+    private final long maxBodySize;
+    private final boolean spilledFilesKept;
+
+    private BodyCaptureLimits(int memoryThreshold, @Nullable Path scratchDir, long maxBodySize, boolean spilledFilesKept) {
+        this.memoryThreshold = memoryThreshold;
+        this.scratchDir = scratchDir;
+        this.maxBodySize = maxBodySize;
+        this.spilledFilesKept = spilledFilesKept;
+    }
+
+    /**
+     * Returns an instance that holds all bodies in memory without limit.
+     * @return the unbounded instance
+     */
+    public static BodyCaptureLimits unbounded() {
+        return UNBOUNDED;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks whether this instance imposes any limit.
+     * @return false if all bodies are held in memory in their entirety
+     */
+    public boolean isBounded() {
+        return memoryThreshold != Integer.MAX_VALUE || maxBodySize >= 0;
+    }
+
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    @Nullable
+    public Path getScratchDir() {
+        return scratchDir;
+    }
+
+    /**
+     * Gets the size at which bodies are truncated regardless of where they are held.
+     * @return the maximum size in bytes, or a negative value if there is no maximum
+     */
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Checks whether files in the scratch directory are kept after the collection session ends.
+     * @return true if the caller is responsible for deleting the files
+     * @see Builder#keepSpilledFiles()
+     */
+    public boolean isSpilledFilesKept() {
+        return spilledFilesKept;
+    }
+
+    @Override
+    public String toString() {
+        MoreObjects.ToStringHelper h = MoreObjects.toStringHelper(this).omitNullValues();
+        h.add("memoryThreshold", memoryThreshold);
+        h.add("scratchDir", scratchDir);
+        if (maxBodySize >= 0) h.add("maxBodySize", maxBodySize);
+        if (spilledFilesKept) h.add("spilledFilesKept", true);
+        return h.toString();
+    }
+
+    /**
+     * Builder of body capture limits.
+     */
+    public static final class Builder {
+
+        private int memoryThreshold = 4 * 1024 * 1024;
+        private Path scratchDir;
+        private long maxBodySize = -1;
+        private boolean keepSpilledFiles;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the size up to which bodies are held in memory.
+         * @param memoryThreshold the threshold in bytes
+         * @return this builder instance
+         */
+        public Builder memoryThreshold(int memoryThreshold) {
+            checkArgument(memoryThreshold >= 0, "memory threshold must be nonnegative: %s", memoryThreshold);
+            this.memoryThreshold = memoryThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the directory in which bodies larger than the memory threshold are stored.
+         * @param scratchDir the directory
+         * @return this builder instance
+         */
+        public Builder spillTo(Path scratchDir) {
+            this.scratchDir = requireNonNull(scratchDir, "scratchDir");
+            return this;
+        }
+
+        /**
+         * Sets the size at which bodies are truncated.
+         * @param maxBodySize the maximum size in bytes
+         * @return this builder instance
+         */
+        public Builder truncateAt(long maxBodySize) {
+            checkArgument(maxBodySize >= 0, "max body size must be nonnegative: %s", maxBodySize);
+            this.maxBodySize = maxBodySize;
+            return this;
+        }
+
+        /**
+         * Configures the limits so that files in the scratch directory are kept after the
+         * collection session ends. Use this if content sources handed to monitors or
+         * {@code _contentFile} fields of HAR entries are to be read after the session ends.
+         * The caller is then responsible for deleting the files.
+         * @return this builder instance
+         */
+        public Builder keepSpilledFiles() {
+            this.keepSpilledFiles = true;
+            return this;
+        }
+
+        public BodyCaptureLimits build() {
+            return new BodyCaptureLimits(memoryThreshold, scratchDir, maxBodySize, keepSpilledFiles);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.filters.ClientRequestCaptureFilter;
+import com.browserup.bup.filters.ServerResponseCaptureFilter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+
+import javax.annotation.Nullable;
+
+/**
+ * Capture filters that store body content in a {@link BodyAccumulator} instead of
+ * aggregating it into a byte array.
+ */
+class BoundedCaptureFilters {
+
+    private BoundedCaptureFilters() {}
+
+    /**
+     * Request capture filter whose {@link #getFullRequestContents()} method returns the
+     * content only if it is held in memory, and an empty array otherwise. Use {@link #getBody()}
+     * to access content that is held in a file.
+     */
+    static class RequestFilter extends ClientRequestCaptureFilter {
+
+        private final BodyAccumulator body;
+
+        public RequestFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, BodyCaptureLimits limits, @Nullable SpilledBodyFiles spilledFiles) {
+            super(originalRequest, ctx);
+            body = new BodyAccumulator(limits, spilledFiles);
+        }
+
+        @Override
+        protected void storeRequestContent(HttpContent httpContent) {
+            body.append(httpContent.content());
+        }
+
+        @Override
+        public byte[] getFullRequestContents() {
+            body.finish();
+            byte[] content = body.toByteArrayIfInMemory();
+            return content == null ? new byte[0] : content;
+        }
+
+        public BodyAccumulator getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Response capture filter that does not decompress content. Use {@link #getBody()}
+     * to access the raw content and {@link #getContentEncoding()} to determine how it
+     * is encoded.
+     */
+    static class ResponseFilter extends ServerResponseCaptureFilter {
+
+        private final BodyAccumulator body;
+
+        public ResponseFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, BodyCaptureLimits limits, @Nullable SpilledBodyFiles spilledFiles) {
+            super(originalRequest, ctx, false);
+            body = new BodyAccumulator(limits, spilledFiles);
+        }
+
+        @Override
+        protected void storeResponseContent(HttpContent httpContent) {
+            body.append(httpContent.content());
+        }
+
+        @Override
+        protected void captureFullResponseContents() {
+            body.finish();
+        }
+
+        public BodyAccumulator getBody() {
+            return body;
+        }
+    }
+}
@@ -6,11 +6,14 @@ import com.browserup.harreader.model.HarQueryParam;
 import com.browserup.harreader.model.HarResponse;
 import com.browserup.harreader.model.HttpMethod;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
 import com.google.common.net.HostAndPort;
 import com.browserup.bup.BrowserUpProxy;
 import com.browserup.bup.client.ClientUtil;
 
 import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -19,6 +22,12 @@ import static java.util.Objects.requireNonNull;
  */
 public class BrowserMobs {
 
+    /**
+     * Resolving the connectable address walks the network interfaces, which is
+     * slow relative to a short collection session, so the result is cached briefly.
+     */
+    private static final Supplier<InetAddress> connectableAddress = Suppliers.memoizeWithExpiration(ClientUtil::getConnectableAddress, 1, TimeUnit.MINUTES);
+
     private BrowserMobs() {
     }
 
@@ -38,7 +47,7 @@ public class BrowserMobs {
      * @see ClientUtil#createSeleniumProxy(BrowserUpProxy)
      */
     public static FullSocketAddress resolveSocketAddress(BrowserUpProxy browserMobProxy) {
-        InetAddress address = ClientUtil.getConnectableAddress();
+        InetAddress address = connectableAddress.get();
         return FullSocketAddress.define(toLiteral(address), browserMobProxy.getPort());
     }
 
@@ -0,0 +1,409 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.BrowserUpProxy;
+import com.browserup.bup.BrowserUpProxyServer;
+import com.google.common.base.MoreObjects;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpRequest;
+import org.littleshoot.proxy.HttpFilters;
+import org.littleshoot.proxy.HttpFiltersSource;
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pool of started proxy instances that may be reused across collection sessions.
+ * Each proxy is associated with a configuration key, and is only handed out again
+ * to callers that lease with an equal key, because configuration such as the
+ * MITM manager cannot be changed after a proxy is started. The number of proxies,
+ * idle and leased, is bounded by the pool's maximum size.
+ *
+ * <p>Each pooled proxy has a switchable filters source, installed ahead of any filters
+ * added by the initializer, to which a per-lease filters source may be attached. Because
+ * the proxy's buffer sizes are fixed when it is started, attached filters sources
+ * should not require request or response aggregation buffers.
+ * @see TrafficCollector.Builder#proxyPool(BrowserUpProxyPool)
+ */
+public class BrowserUpProxyPool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(BrowserUpProxyPool.class);
+
+    private final Supplier<? extends BrowserUpProxy> proxyInstantiator;
+    private final Predicate<? super BrowserUpProxy> healthCheck;
+    private final int maxSize;
+    private final Duration leaseTimeout;
+    private final Semaphore leasePermits;
+    private final Deque<PooledProxy> idle;
+    private int leasedCount;
+    private boolean closed;
+
+    private BrowserUpProxyPool(Builder builder) {
+        proxyInstantiator = builder.proxyInstantiator;
+        healthCheck = builder.healthCheck;
+        maxSize = builder.maxSize;
+        leaseTimeout = builder.leaseTimeout;
+        leasePermits = new Semaphore(maxSize, true);
+        idle = new ArrayDeque<>(maxSize);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Leases a started proxy. An idle proxy with an equal configuration key is reused
+     * if one is available and healthy; otherwise a new proxy is instantiated, passed
+     * to the initializer, and started. This method blocks if the maximum number of
+     * proxies are already leased.
+     * @param configKey the configuration key
+     * @param initializer the initializer that configures a new proxy before it is started
+     * @return the lease
+     * @throws ProxyPoolException if no proxy becomes available within the lease timeout
+     */
+    public Lease lease(Object configKey, Consumer<? super BrowserUpProxy> initializer) {
+        return lease(configKey, proxyInstantiator, initializer);
+    }
+
+    /**
+     * Leases a started proxy, using the given supplier instead of the pool's
+     * instantiator if a new proxy must be created.
+     * @param configKey the configuration key
+     * @param instantiator the supplier of a new proxy instance
+     * @param initializer the initializer that configures a new proxy before it is started
+     * @return the lease
+     * @throws ProxyPoolException if no proxy becomes available within the lease timeout
+     * @see #lease(Object, Consumer)
+     */
+    public Lease lease(Object configKey, Supplier<? extends BrowserUpProxy> instantiator, Consumer<? super BrowserUpProxy> initializer) {
+        requireNonNull(configKey, "configKey");
+        requireNonNull(instantiator, "instantiator");
+        requireNonNull(initializer, "initializer");
+        acquirePermit();
+        try {
+            PooledProxy pooled = takeIdle(configKey);
+            if (pooled == null) {
+                pooled = createProxy(configKey, instantiator, initializer);
+            }
+            return new Lease(pooled);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                leasedCount--;
+            }
+            leasePermits.release();
+            throw e;
+        }
+    }
+
+    private void acquirePermit() {
+        boolean acquired;
+        try {
+            acquired = leasePermits.tryAcquire(leaseTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProxyPoolException("interrupted while waiting for proxy", e);
+        }
+        if (!acquired) {
+            throw new ProxyPoolException("no proxy available within " + leaseTimeout);
+        }
+        synchronized (this) {
+            if (closed) {
+                leasePermits.release();
+                throw new IllegalStateException("pool is closed");
+            }
+            leasedCount++;
+        }
+    }
+
+    @Nullable
+    private PooledProxy takeIdle(Object configKey) {
+        List<PooledProxy> evicted = new ArrayList<>();
+        PooledProxy match = null;
+        synchronized (this) {
+            for (Iterator<PooledProxy> it = idle.iterator(); it.hasNext(); ) {
+                PooledProxy candidate = it.next();
+                if (configKey.equals(candidate.configKey)) {
+                    it.remove();
+                    if (isHealthy(candidate.proxy)) {
+                        match = candidate;
+                        break;
+                    }
+                    evicted.add(candidate);
+                }
+            }
+            if (match == null) {
+                // make room for a new proxy by evicting the least recently used idle proxies
+                while (!idle.isEmpty() && idle.size() + leasedCount > maxSize) {
+                    evicted.add(idle.removeLast());
+                }
+            }
+        }
+        evicted.forEach(PooledProxy::stop);
+        return match;
+    }
+
+    private PooledProxy createProxy(Object configKey, Supplier<? extends BrowserUpProxy> instantiator, Consumer<? super BrowserUpProxy> initializer) {
+        BrowserUpProxy proxy = instantiator.get();
+        SwitchableFiltersSource leaseFilters = new SwitchableFiltersSource();
+        proxy.addLastHttpFilterFactory(leaseFilters);
+        initializer.accept(proxy);
+        proxy.start();
+        log.debug("started pooled proxy on port {}", proxy.getPort());
+        return new PooledProxy(configKey, proxy, leaseFilters);
+    }
+
+    private boolean isHealthy(BrowserUpProxy proxy) {
+        try {
+            return healthCheck.test(proxy);
+        } catch (RuntimeException e) {
+            log.info("health check failed on proxy at port {}: {}", proxy.getPort(), e.toString());
+            return false;
+        }
+    }
+
+    private void release(PooledProxy pooled, boolean reusable) {
+        pooled.leaseFilters.attach(null);
+        boolean retained = false;
+        synchronized (this) {
+            leasedCount--;
+            if (reusable && !closed && isHealthy(pooled.proxy)) {
+                idle.addFirst(pooled);
+                retained = true;
+            }
+        }
+        leasePermits.release();
+        if (!retained) {
+            pooled.stop();
+        }
+    }
+
+    /**
+     * Gets the number of idle proxies.
+     * @return the idle count
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Gets the number of leased proxies.
+     * @return the leased count
+     */
+    public synchronized int getLeasedCount() {
+        return leasedCount;
+    }
+
+    /**
+     * Stops all idle proxies. Proxies that are leased at the time this method is invoked
+     * are stopped when they are returned.
+     */
+    @Override
+    public void close() {
+        List<PooledProxy> stopping;
+        synchronized (this) {
+            closed = true;
+            stopping = new ArrayList<>(idle);
+            idle.clear();
+        }
+        stopping.forEach(PooledProxy::stop);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maxSize", maxSize)
+                .add("idle", idle.size())
+                .add("leased", leasedCount)
+                .add("closed", closed)
+                .toString();
+    }
+
+    /**
+     * Default health check, which tests whether the proxy is started and not yet stopped.
+     * @param proxy the proxy
+     * @return true if the proxy is fit for reuse
+     */
+    static boolean isRunning(BrowserUpProxy proxy) {
+        if (!proxy.isStarted()) {
+            return false;
+        }
+        return !(proxy instanceof BrowserUpProxyServer) || !((BrowserUpProxyServer) proxy).isStopped();
+    }
+
+    private static class PooledProxy {
+
+        public final Object configKey;
+        public final BrowserUpProxy proxy;
+        public final SwitchableFiltersSource leaseFilters;
+
+        private PooledProxy(Object configKey, BrowserUpProxy proxy, SwitchableFiltersSource leaseFilters) {
+            this.configKey = configKey;
+            this.proxy = proxy;
+            this.leaseFilters = leaseFilters;
+        }
+
+        public void stop() {
+            try {
+                proxy.stop();
+            } catch (RuntimeException e) {
+                log.info("failed to stop pooled proxy: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Lease of a proxy from the pool. Closing the lease returns the proxy to the pool.
+     */
+    public final class Lease implements Closeable {
+
+        private final PooledProxy pooled;
+        private boolean reusable = true;
+        private boolean returned;
+
+        private Lease(PooledProxy pooled) {
+            this.pooled = pooled;
+        }
+
+        /**
+         * Gets the leased proxy.
+         * @return the proxy
+         */
+        public BrowserUpProxy getProxy() {
+            return pooled.proxy;
+        }
+
+        /**
+         * Attaches a filters source that applies only for the duration of this lease.
+         * @param filtersSource the filters source, or null to detach the current one
+         */
+        public void attach(@Nullable HttpFiltersSource filtersSource) {
+            checkState(!returned, "lease already returned");
+            pooled.leaseFilters.attach(filtersSource);
+        }
+
+        /**
+         * Marks the proxy as unfit for reuse, so that it is stopped instead of being
+         * returned to the pool when this lease is closed.
+         */
+        public void invalidate() {
+            reusable = false;
+        }
+
+        @Override
+        public void close() {
+            if (returned) {
+                return;
+            }
+            returned = true;
+            release(pooled, reusable);
+        }
+    }
+
+    private static class SwitchableFiltersSource extends HttpFiltersSourceAdapter {
+
+        @Nullable
+        private volatile HttpFiltersSource current;
+
+        public void attach(@Nullable HttpFiltersSource filtersSource) {
+            current = filtersSource;
+        }
+
+        @Override
+        public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+            HttpFiltersSource current = this.current;
+            return current == null ? null : current.filterRequest(originalRequest, ctx);
+        }
+    }
+
+    /**
+     * Exception thrown when a proxy cannot be leased from the pool.
+     */
+    public static class ProxyPoolException extends RuntimeException {
+
+        public ProxyPoolException(String message) {
+            super(message);
+        }
+
+        public ProxyPoolException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Builder of proxy pool instances.
+     */
+    public static final class Builder {
+
+        private Supplier<? extends BrowserUpProxy> proxyInstantiator = BrowserUpProxyServer::new;
+        private Predicate<? super BrowserUpProxy> healthCheck = BrowserUpProxyPool::isRunning;
+        private int maxSize = 4;
+        private Duration leaseTimeout = Duration.ofMinutes(5);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the supplier of new proxy instances, used unless a lease request
+         * supplies its own.
+         * @param proxyInstantiator the supplier
+         * @return this builder instance
+         */
+        public Builder proxyInstantiator(Supplier<? extends BrowserUpProxy> proxyInstantiator) {
+            this.proxyInstantiator = requireNonNull(proxyInstantiator);
+            return this;
+        }
+
+        /**
+         * Sets the health check that idle proxies must pass to be reused. By default,
+         * a proxy is healthy if it is started and not stopped.
+         * @param healthCheck the health check
+         * @return this builder instance
+         */
+        public Builder healthCheck(Predicate<? super BrowserUpProxy> healthCheck) {
+            this.healthCheck = requireNonNull(healthCheck);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of proxies, idle or leased.
+         * @param maxSize the maximum; must be positive
+         * @return this builder instance
+         */
+        public Builder maxSize(int maxSize) {
+            checkArgument(maxSize > 0, "max size must be positive: %s", maxSize);
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait for a proxy to become available.
+         * @param leaseTimeout the timeout
+         * @return this builder instance
+         */
+        public Builder leaseTimeout(Duration leaseTimeout) {
+            this.leaseTimeout = requireNonNull(leaseTimeout);
+            return this;
+        }
+
+        public BrowserUpProxyPool build() {
+            return new BrowserUpProxyPool(this);
+        }
+    }
+}
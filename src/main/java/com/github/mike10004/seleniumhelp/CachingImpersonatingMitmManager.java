@@ -0,0 +1,138 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.mitm.CertificateAndKey;
+import com.browserup.bup.mitm.CertificateAndKeySource;
+import com.browserup.bup.mitm.CertificateInfo;
+import com.browserup.bup.mitm.CertificateInfoGenerator;
+import com.browserup.bup.mitm.HostnameCertificateInfoGenerator;
+import com.browserup.bup.mitm.exception.MitmException;
+import com.browserup.bup.mitm.keys.KeyGenerator;
+import com.browserup.bup.mitm.manager.ImpersonatingMitmManager;
+import com.browserup.bup.mitm.tools.DefaultSecurityProviderTool;
+import com.browserup.bup.mitm.tools.SecurityProviderTool;
+import com.browserup.bup.mitm.util.MitmConstants;
+import com.browserup.bup.mitm.util.SslUtil;
+import com.browserup.bup.util.HttpUtil;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import org.littleshoot.proxy.MitmManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.security.KeyPair;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * MITM manager that impersonates servers with leaf certificates from an {@link ImpersonationCache},
+ * so that leaf certificates are reused across proxies and sessions that use the same root
+ * certificate. Leaf certificates are generated the way {@link ImpersonatingMitmManager} generates
+ * them with its default settings, except that the leaf key algorithm may be chosen, and engines
+ * for connections to upstream servers are created by an {@link ImpersonatingMitmManager}.
+ */
+public class CachingImpersonatingMitmManager implements MitmManager {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingImpersonatingMitmManager.class);
+
+    private final MitmManager upstreamManager;
+    private final ImpersonationCache cache;
+    private final Supplier<CertificateAndKey> rootCertificate;
+    private final Supplier<String> rootFingerprint;
+    private final CertificateKeyAlgorithm serverKeyAlgorithm;
+    private final KeyGenerator serverKeyGenerator;
+    private final SecurityProviderTool securityProviderTool;
+    private final CertificateInfoGenerator certificateInfoGenerator;
+    private final List<String> clientCipherSuites;
+
+    public CachingImpersonatingMitmManager(CertificateAndKeySource rootCertificateSource, ImpersonationCache cache) {
+        this(rootCertificateSource, cache, CertificateKeyAlgorithm.RSA);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param rootCertificateSource source of the root certificate that signs leaf certificates
+     * @param cache cache of leaf certificates
+     * @param serverKeyAlgorithm algorithm of leaf certificate keys
+     */
+    public CachingImpersonatingMitmManager(CertificateAndKeySource rootCertificateSource, ImpersonationCache cache, CertificateKeyAlgorithm serverKeyAlgorithm) {
+        requireNonNull(rootCertificateSource, "rootCertificateSource");
+        this.cache = requireNonNull(cache, "cache");
+        upstreamManager = ImpersonatingMitmManager.builder()
+                .rootCertificateSource(rootCertificateSource)
+                .build();
+        rootCertificate = Suppliers.memoize(rootCertificateSource::load);
+        rootFingerprint = Suppliers.memoize(() -> fingerprint(rootCertificate.get().getCertificate()));
+        this.serverKeyAlgorithm = requireNonNull(serverKeyAlgorithm, "serverKeyAlgorithm");
+        serverKeyGenerator = serverKeyAlgorithm.createKeyGenerator();
+        securityProviderTool = new DefaultSecurityProviderTool();
+        certificateInfoGenerator = new HostnameCertificateInfoGenerator();
+        clientCipherSuites = SslUtil.getDefaultCipherList();
+    }
+
+    private static String fingerprint(X509Certificate certificate) {
+        try {
+            return Hashing.sha256().hashBytes(certificate.getEncoded()).toString();
+        } catch (CertificateEncodingException e) {
+            throw new MitmException("failed to encode root certificate", e);
+        }
+    }
+
+    @Override
+    public SSLEngine serverSslEngine(String peerHost, int peerPort) {
+        return upstreamManager.serverSslEngine(peerHost, peerPort);
+    }
+
+    @Override
+    public SSLEngine serverSslEngine() {
+        return upstreamManager.serverSslEngine();
+    }
+
+    @Override
+    public SSLEngine clientSslEngineFor(HttpRequest httpRequest, SSLSession serverSslSession) {
+        String hostname = HttpUtil.getHostFromRequest(httpRequest);
+        try {
+            SslContext context = cache.get(rootFingerprint.get(), hostname, serverKeyAlgorithm, () -> createImpersonatingSslContext(hostname));
+            return context.newEngine(ByteBufAllocator.DEFAULT);
+        } catch (ExecutionException | RuntimeException e) {
+            throw new MitmException("Error creating SSLEngine for connection to client to impersonate upstream host: " + hostname, e);
+        }
+    }
+
+    private SslContext createImpersonatingSslContext(String hostname) throws SSLException {
+        long start = System.currentTimeMillis();
+        CertificateInfo certificateInfo = certificateInfoGenerator.generate(Collections.singletonList(hostname), null);
+        KeyPair serverKeyPair = serverKeyGenerator.generate();
+        CertificateAndKey root = rootCertificate.get();
+        CertificateAndKey impersonated = securityProviderTool.createServerCertificate(certificateInfo,
+                root.getCertificate(), root.getPrivateKey(), serverKeyPair, MitmConstants.DEFAULT_MESSAGE_DIGEST);
+        X509Certificate[] chain = {impersonated.getCertificate(), root.getCertificate()};
+        SslContext context = SslContextBuilder.forServer(impersonated.getPrivateKey(), chain)
+                .ciphers(clientCipherSuites, SupportedCipherSuiteFilter.INSTANCE)
+                .build();
+        log.debug("Impersonated certificate for {} in {}ms", hostname, System.currentTimeMillis() - start);
+        return context;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("cache", cache)
+                .add("serverKeyAlgorithm", serverKeyAlgorithm)
+                .toString();
+    }
+}
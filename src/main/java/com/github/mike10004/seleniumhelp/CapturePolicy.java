@@ -0,0 +1,292 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.util.BrowserUpHttpUtil;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import io.netty.handler.codec.http.HttpHeaderValues;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Policy that determines how much of each interaction is captured. A policy is an ordered
+ * list of rules, each of which matches on URL, request method, and response content type;
+ * the first matching rule determines the capture level, and the default level applies if
+ * no rule matches. Bodies that are not captured are neither buffered nor decompressed.
+ * @see TrafficCollector.Builder#capturePolicy(CapturePolicy)
+ */
+public final class CapturePolicy {
+
+    /**
+     * Enumeration of capture levels.
+     */
+    public enum Level {
+
+        /**
+         * Capture request and response lines and headers, but no bodies.
+         */
+        HEADERS_ONLY,
+
+        /**
+         * Capture headers and bodies with textual content types.
+         */
+        TEXT_BODIES,
+
+        /**
+         * Capture headers and all bodies.
+         */
+        FULL
+    }
+
+    private static final CapturePolicy CAPTURE_ALL = new CapturePolicy(ImmutableList.of(), Level.FULL, BodyCaptureLimits.unbounded());
+
+    private final ImmutableList<Rule> rules;
+    private final Level defaultLevel;
+    private final BodyCaptureLimits bodyLimits;
+
+    private CapturePolicy(Iterable<Rule> rules, Level defaultLevel, BodyCaptureLimits bodyLimits) {
+        this.rules = ImmutableList.copyOf(rules);
+        this.defaultLevel = requireNonNull(defaultLevel);
+        this.bodyLimits = requireNonNull(bodyLimits);
+    }
+
+    /**
+     * Returns a policy that captures everything.
+     * @return the policy
+     */
+    public static CapturePolicy captureAll() {
+        return CAPTURE_ALL;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks whether this policy captures everything regardless of the interaction.
+     * @return true if this policy captures all bodies
+     */
+    public boolean isCaptureAll() {
+        return defaultLevel == Level.FULL && rules.stream().allMatch(rule -> rule.level == Level.FULL);
+    }
+
+    /**
+     * Gets the limits on how captured bodies are held.
+     * @return the body limits
+     */
+    public BodyCaptureLimits getBodyLimits() {
+        return bodyLimits;
+    }
+
+    /**
+     * Gets the capture level for an interaction.
+     * @param url the request URL
+     * @param method the request method
+     * @param contentType the response content type, or null if unknown
+     * @return the capture level
+     */
+    public Level getLevel(String url, String method, @Nullable String contentType) {
+        for (Rule rule : rules) {
+            if (rule.matchesRequest(url, method) && rule.matchesContentType(contentType)) {
+                return rule.level;
+            }
+        }
+        return defaultLevel;
+    }
+
+    /**
+     * Gets the highest capture level that may apply to a request before the response content
+     * type is known. Rules that depend on content type may or may not match, so their levels
+     * are considered, up to and including the first rule that matches regardless of content type.
+     * @param url the request URL
+     * @param method the request method
+     * @return the highest possible capture level
+     */
+    public Level getMaximumLevel(String url, String method) {
+        Level max = Level.HEADERS_ONLY;
+        for (Rule rule : rules) {
+            if (rule.matchesRequest(url, method)) {
+                max = max(max, rule.level);
+                if (rule.contentTypePattern == null) {
+                    return max;
+                }
+            }
+        }
+        return max(max, defaultLevel);
+    }
+
+    private static Level max(Level a, Level b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * Determines whether the response content of an interaction is to be captured.
+     * @param url the request URL
+     * @param method the request method
+     * @param contentType the response content type, or null if not specified
+     * @return true if the response content is to be captured
+     */
+    public boolean isResponseContentCaptured(String url, String method, @Nullable String contentType) {
+        switch (getLevel(url, method, contentType)) {
+            case FULL:
+                return true;
+            case TEXT_BODIES:
+                return isTextual(contentType);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Determines whether the request content of an interaction is to be captured. The request
+     * content is captured before the response content type is known, so the highest level
+     * that may apply to the interaction is used, and under {@link Level#TEXT_BODIES} only
+     * request content with a textual content type, including URL-encoded form data, is captured.
+     * @param url the request URL
+     * @param method the request method
+     * @param contentType the request content type, or null if not specified
+     * @return true if the request content is to be captured
+     */
+    public boolean isRequestContentCaptured(String url, String method, @Nullable String contentType) {
+        switch (getMaximumLevel(url, method)) {
+            case FULL:
+                return true;
+            case TEXT_BODIES:
+                return isTextual(contentType) || isUrlEncodedForm(contentType);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isUrlEncodedForm(@Nullable String contentType) {
+        return contentType != null && contentType.trim().toLowerCase(Locale.ROOT)
+                .startsWith(HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.toString());
+    }
+
+    private static boolean isTextual(@Nullable String contentType) {
+        return contentType != null && BrowserUpHttpUtil.hasTextualContent(contentType);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("rules", rules)
+                .add("defaultLevel", defaultLevel)
+                .add("bodyLimits", bodyLimits)
+                .toString();
+    }
+
+    private static final class Rule {
+
+        @Nullable
+        private final Pattern urlPattern;
+        @Nullable
+        private final String method;
+        @Nullable
+        private final Pattern contentTypePattern;
+        private final Level level;
+
+        private Rule(@Nullable Pattern urlPattern, @Nullable String method, @Nullable Pattern contentTypePattern, Level level) {
+            this.urlPattern = urlPattern;
+            this.method = method;
+            this.contentTypePattern = contentTypePattern;
+            this.level = requireNonNull(level, "level");
+        }
+
+        public boolean matchesRequest(String url, String method) {
+            return (urlPattern == null || urlPattern.matcher(url).find())
+                    && (this.method == null || this.method.equalsIgnoreCase(method));
+        }
+
+        public boolean matchesContentType(@Nullable String contentType) {
+            return contentTypePattern == null || (contentType != null && contentTypePattern.matcher(contentType).find());
+        }
+
+        @Override
+        public String toString() {
+            MoreObjects.ToStringHelper h = MoreObjects.toStringHelper(this).omitNullValues();
+            h.add("url", urlPattern);
+            h.add("method", method);
+            h.add("contentType", contentTypePattern);
+            h.add("level", level);
+            return h.toString();
+        }
+    }
+
+    /**
+     * Builder of capture policies. Rules are evaluated in the order they are added.
+     */
+    public static final class Builder {
+
+        private final List<Rule> rules = new ArrayList<>();
+        private Level defaultLevel = Level.FULL;
+        private BodyCaptureLimits bodyLimits = BodyCaptureLimits.unbounded();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the limits on how captured bodies are held. By default, bodies are held
+         * in memory without limit.
+         * @param bodyLimits the limits
+         * @return this builder instance
+         */
+        public Builder bodyLimits(BodyCaptureLimits bodyLimits) {
+            this.bodyLimits = requireNonNull(bodyLimits);
+            return this;
+        }
+
+        /**
+         * Adds a rule. Patterns are searched for in the URL and the {@code Content-Type} header
+         * value, so anchor them if they must match the entire string.
+         * @param urlPattern pattern to search for in the URL, or null to match any URL
+         * @param method request method, or null to match any method
+         * @param contentTypePattern pattern to search for in the response content type, or null to match any
+         * @param level the capture level for matching interactions
+         * @return this builder instance
+         */
+        public Builder rule(@Nullable Pattern urlPattern, @Nullable String method, @Nullable Pattern contentTypePattern, Level level) {
+            rules.add(new Rule(urlPattern, method, contentTypePattern, level));
+            return this;
+        }
+
+        /**
+         * Adds a rule that matches on URL only.
+         * @param urlPattern pattern to search for in the URL
+         * @param level the capture level
+         * @return this builder instance
+         */
+        public Builder url(Pattern urlPattern, Level level) {
+            return rule(requireNonNull(urlPattern), null, null, level);
+        }
+
+        /**
+         * Adds a rule that matches on response content type only.
+         * @param contentTypePattern pattern to search for in the content type
+         * @param level the capture level
+         * @return this builder instance
+         */
+        public Builder contentType(Pattern contentTypePattern, Level level) {
+            return rule(null, null, requireNonNull(contentTypePattern), level);
+        }
+
+        /**
+         * Sets the level for interactions that match no rule. The default is {@link Level#FULL}.
+         * @param defaultLevel the default level
+         * @return this builder instance
+         */
+        public Builder defaultLevel(Level defaultLevel) {
+            this.defaultLevel = requireNonNull(defaultLevel);
+            return this;
+        }
+
+        public CapturePolicy build() {
+            return new CapturePolicy(rules, defaultLevel, bodyLimits);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.mitm.keys.ECKeyGenerator;
+import com.browserup.bup.mitm.keys.KeyGenerator;
+import com.browserup.bup.mitm.keys.RSAKeyGenerator;
+
+/**
+ * Algorithm of the keys of generated root and impersonating certificates.
+ * Elliptic-curve keys are much cheaper to generate and sign with than RSA keys,
+ * which makes impersonating each host and completing each handshake faster.
+ */
+public enum CertificateKeyAlgorithm {
+
+    /**
+     * 2048-bit RSA keys. This is the default, and is compatible with all clients.
+     */
+    RSA {
+        @Override
+        public KeyGenerator createKeyGenerator() {
+            return new RSAKeyGenerator();
+        }
+    },
+
+    /**
+     * Elliptic-curve keys on the NIST P-256 curve, also known as {@code secp256r1}.
+     */
+    EC_P256 {
+        @Override
+        public KeyGenerator createKeyGenerator() {
+            return new ECKeyGenerator("secp256r1");
+        }
+    };
+
+    /**
+     * Creates a generator of key pairs with this algorithm.
+     * @return a new key generator
+     */
+    public abstract KeyGenerator createKeyGenerator();
+}
@@ -0,0 +1,88 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarContent;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+
+import javax.annotation.Nullable;
+import java.util.Date;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compact form of a HAR entry for retention in memory. The request and response headers
+ * are moved out of the entry into {@link CompactHeaders} instances, and the header strings
+ * and other frequently repeated strings are interned with a {@link HeaderDictionary}.
+ * The HAR model form is restored by {@link #toHarEntry()}. The rest of the entry, including
+ * request and response content text, is retained as is.
+ */
+final class CompactHarEntry {
+
+    private final HarEntry entry;
+    @Nullable
+    private final CompactHeaders requestHeaders;
+    @Nullable
+    private final CompactHeaders responseHeaders;
+
+    private CompactHarEntry(HarEntry entry, @Nullable CompactHeaders requestHeaders, @Nullable CompactHeaders responseHeaders) {
+        this.entry = requireNonNull(entry);
+        this.requestHeaders = requestHeaders;
+        this.responseHeaders = responseHeaders;
+    }
+
+    /**
+     * Creates the compact form of an entry. The entry is modified and must not be used by
+     * the caller afterwards.
+     * @param entry the entry
+     * @param dictionary the dictionary with which to intern strings
+     * @return the compact form of the entry
+     */
+    public static CompactHarEntry compact(HarEntry entry, HeaderDictionary dictionary) {
+        CompactHeaders requestHeaders = null, responseHeaders = null;
+        HarRequest request = entry.getRequest();
+        if (request != null) {
+            request.setHttpVersion(dictionary.intern(request.getHttpVersion()));
+            requestHeaders = CompactHeaders.of(request.getHeaders(), dictionary);
+            if (requestHeaders != null) {
+                request.setHeaders(null);
+            }
+        }
+        HarResponse response = entry.getResponse();
+        if (response != null) {
+            response.setHttpVersion(dictionary.intern(response.getHttpVersion()));
+            response.setStatusText(dictionary.intern(response.getStatusText()));
+            HarContent content = response.getContent();
+            if (content != null) {
+                content.setMimeType(dictionary.intern(content.getMimeType()));
+            }
+            responseHeaders = CompactHeaders.of(response.getHeaders(), dictionary);
+            if (responseHeaders != null) {
+                response.setHeaders(null);
+            }
+        }
+        entry.setServerIPAddress(dictionary.intern(entry.getServerIPAddress()));
+        return new CompactHarEntry(entry, requestHeaders, responseHeaders);
+    }
+
+    @Nullable
+    public Date getStartedDateTime() {
+        return entry.getStartedDateTime();
+    }
+
+    /**
+     * Restores the HAR model form of the entry. Each invocation sets new header lists on
+     * the entry and returns the same entry instance, so the caller should retain either
+     * the returned entry or this instance, but not both.
+     * @return the entry
+     */
+    public HarEntry toHarEntry() {
+        if (requestHeaders != null) {
+            entry.getRequest().setHeaders(requestHeaders.toHarHeaders());
+        }
+        if (responseHeaders != null) {
+            entry.getResponse().setHeaders(responseHeaders.toHarHeaders());
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarHeader;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Immutable list of headers held as parallel arrays of names and values, which retains
+ * far less heap than a list of {@link HarHeader} objects.
+ */
+final class CompactHeaders {
+
+    private static final String[] NO_STRINGS = {};
+
+    public static final CompactHeaders EMPTY = new CompactHeaders(NO_STRINGS, NO_STRINGS);
+
+    private final String[] names;
+    private final String[] values;
+
+    private CompactHeaders(String[] names, String[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * Creates an instance from HAR headers, interning names and values with a dictionary.
+     * @param headers the headers
+     * @param dictionary the dictionary
+     * @return an instance, or null if any header has a comment, which is not retained
+     */
+    @Nullable
+    public static CompactHeaders of(@Nullable List<HarHeader> headers, HeaderDictionary dictionary) {
+        if (headers == null || headers.isEmpty()) {
+            return EMPTY;
+        }
+        String[] names = new String[headers.size()];
+        String[] values = new String[headers.size()];
+        for (int i = 0; i < names.length; i++) {
+            HarHeader header = headers.get(i);
+            if (header.getComment() != null) {
+                return null;
+            }
+            names[i] = dictionary.intern(header.getName());
+            values[i] = dictionary.intern(header.getValue());
+        }
+        return new CompactHeaders(names, values);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        checkElementIndex(index, names.length);
+        return names[index];
+    }
+
+    public String getValue(int index) {
+        checkElementIndex(index, values.length);
+        return values[index];
+    }
+
+    /**
+     * Creates a new list of HAR headers with the names and values of these headers.
+     * @return a new mutable list
+     */
+    public List<HarHeader> toHarHeaders() {
+        List<HarHeader> headers = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            headers.add(BrowserMobs.newHarHeader(names[i], values[i]));
+        }
+        return headers;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactHeaders{size=" + names.length + "}";
+    }
+}
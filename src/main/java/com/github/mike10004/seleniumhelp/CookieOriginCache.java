@@ -0,0 +1,55 @@
+package com.github.mike10004.seleniumhelp;
+
+import org.apache.http.cookie.CookieOrigin;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of cookie origins keyed by the scheme, authority and path of a request URL.
+ * The query and fragment do not affect the cookie origin, so requests that differ
+ * only in those parts share a cache entry. Instances are safe for use by multiple threads.
+ */
+class CookieOriginCache {
+
+    private final ConcurrentMap<String, CookieOrigin> origins = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the cookie origin of a request URL.
+     * @param url the request URL
+     * @return the cookie origin
+     * @throws IllegalArgumentException if the URL is malformed
+     */
+    public CookieOrigin get(String url) {
+        String key = stripQueryAndFragment(url);
+        CookieOrigin origin = origins.get(key);
+        if (origin == null) {
+            origin = origins.computeIfAbsent(key, CookieOriginCache::buildOrigin);
+        }
+        return origin;
+    }
+
+    private static CookieOrigin buildOrigin(String url) {
+        try {
+            return CookieUtility.getInstance().buildCookieOrigin(new URL(url)).origin;
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static String stripQueryAndFragment(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char ch = url.charAt(i);
+            if (ch == '?' || ch == '#') {
+                return url.substring(0, i);
+            }
+        }
+        return url;
+    }
+
+    public int size() {
+        return origins.size();
+    }
+}
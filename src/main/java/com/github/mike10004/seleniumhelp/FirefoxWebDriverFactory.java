@@ -489,6 +489,18 @@ public class FirefoxWebDriverFactory extends CapableWebDriverFactory<FirefoxOpti
             return this;
         }
 
+        /**
+         * Disables the browser's disk and memory caches, so that every resource is requested
+         * through the proxy. Use this for browsers whose sessions are pooled by a
+         * {@link PooledWebDriverFactory}, whose reset action cannot clear the Firefox cache.
+         * @return this instance
+         */
+        public Builder disableCache() {
+            profilePreferences.put("browser.cache.disk.enable", false);
+            profilePreferences.put("browser.cache.memory.enable", false);
+            return this;
+        }
+
         /**
          * Adds one cookie.
          * @param cookie cookie to add
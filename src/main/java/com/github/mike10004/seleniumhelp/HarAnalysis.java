@@ -2,6 +2,11 @@ package com.github.mike10004.seleniumhelp;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
 import com.google.common.net.HttpHeaders;
 import com.browserup.harreader.model.Har;
 import com.browserup.harreader.model.HarEntry;
@@ -9,27 +14,33 @@ import com.browserup.harreader.model.HarHeader;
 import com.browserup.harreader.model.HarPostData;
 import com.browserup.harreader.model.HarRequest;
 import com.browserup.harreader.model.HarResponse;
+import org.apache.http.cookie.CookieOrigin;
 import org.apache.http.cookie.MalformedCookieException;
 
 import javax.annotation.Nullable;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.function.Predicate;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.requireNonNull;
 
 public class HarAnalysis {
 
     private final Har har;
+    private final Supplier<HarIndex> index;
 
     protected HarAnalysis(Har har) {
         this.har = checkNotNull(har);
+        index = Suppliers.memoize(() -> HarIndex.build(har));
     }
 
     public static HarAnalysis of(Har har) {
@@ -40,31 +51,111 @@ public class HarAnalysis {
         return findCookies(SetCookieHeaderParser.create());
     }
 
+    /**
+     * Finds cookies set by responses, extracting them from entries in parallel.
+     * Entries are split among the threads of the pool, each thread accumulates its own
+     * partial result, and partial results are merged in entry order, so the result is
+     * the same as that of {@link #findCookies()}.
+     * @param pool the pool whose threads perform the extraction
+     * @return the cookie collection
+     */
+    public CookieCollection findCookies(ForkJoinPool pool) {
+        return findCookies(SetCookieHeaderParser.create(), pool);
+    }
+
     CookieCollection findCookies(final SetCookieHeaderParser cookieSpec) {
-        Stream<HarEntry> headerValues = findEntriesWithSetCookieHeaders();
-        List<DeserializableCookie> cookies = new ArrayList<>();
-        headerValues.forEach(entry -> {
-            cookies.addAll(makeCookiesFromEntry(cookieSpec, entry));
-        });
+        CookieOriginCache originCache = new CookieOriginCache();
+        Multimap<CookieKey, DeserializableCookie> cookies = findEntriesWithSetCookieHeaders()
+                .collect(cookieAccumulator(cookieSpec, originCache));
         return MultimapCookieCollection.build(cookies);
     }
 
-    private Stream<HarEntry> findEntriesWithSetCookieHeaders() {
-        Stream<HarEntry> entriesWithCookieHeaders = har.getLog().getEntries().stream()
-                .filter(ENTRY_HAS_SET_COOKIE_HEADER_IN_RESPONSE);
-        return entriesWithCookieHeaders;
+    CookieCollection findCookies(final SetCookieHeaderParser cookieSpec, ForkJoinPool pool) {
+        requireNonNull(pool, "pool");
+        CookieOriginCache originCache = new CookieOriginCache();
+        ForkJoinTask<Multimap<CookieKey, DeserializableCookie>> task = pool.submit(() -> findEntriesWithSetCookieHeaders()
+                .parallel()
+                .collect(cookieAccumulator(cookieSpec, originCache)));
+        try {
+            return MultimapCookieCollection.build(task.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while finding cookies", e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
-    private static final Predicate<HarEntry> ENTRY_HAS_SET_COOKIE_HEADER_IN_RESPONSE = new Predicate<HarEntry>() {
-        @Override
-        public boolean test(HarEntry entry) {
-            HarResponse input = null;
-            if (entry != null) {
-                input = entry.getResponse();
+    private static Collector<HarEntry, ?, Multimap<CookieKey, DeserializableCookie>> cookieAccumulator(SetCookieHeaderParser cookieSpec, CookieOriginCache originCache) {
+        return Collector.of(ArrayListMultimap::create, (multimap, entry) -> {
+            for (DeserializableCookie cookie : makeCookiesFromEntry(cookieSpec, entry, originCache)) {
+                multimap.put(CookieKey.from(cookie), cookie);
             }
-            return input != null && input.getHeaders().stream().anyMatch(header -> HttpHeaders.SET_COOKIE.equalsIgnoreCase(header.getName()));
-        }
-    };
+        }, (left, right) -> {
+            left.putAll(right);
+            return left;
+        });
+    }
+
+    private Stream<HarEntry> findEntriesWithSetCookieHeaders() {
+        return getIndex().findWithResponseHeader(HttpHeaders.SET_COOKIE).stream();
+    }
+
+    /**
+     * Gets the index of the HAR entries. The index is built when this method is first
+     * invoked, so it reflects the entries at that time.
+     * @return the index
+     */
+    public HarIndex getIndex() {
+        return index.get();
+    }
+
+    /**
+     * Finds entries whose request URL has a given host.
+     * @param host the host; case-insensitive
+     * @return the entries
+     */
+    public List<HarEntry> findEntriesByHost(String host) {
+        return getIndex().findByHost(host);
+    }
+
+    /**
+     * Finds entries with a given response status.
+     * @param status the status
+     * @return the entries
+     */
+    public List<HarEntry> findEntriesByStatus(int status) {
+        return getIndex().findByStatus(status);
+    }
+
+    /**
+     * Finds entries whose request URL starts with a given prefix.
+     * @param urlPrefix the prefix
+     * @return the entries
+     */
+    public List<HarEntry> findEntriesByUrlPrefix(String urlPrefix) {
+        return getIndex().findByUrlPrefix(urlPrefix);
+    }
+
+    /**
+     * Finds entries whose response is a redirect, meaning it has a 3xx status
+     * and a {@code Location} header.
+     * @return the entries
+     */
+    public List<HarEntry> findRedirects() {
+        return getIndex().findWithResponseHeader(HttpHeaders.LOCATION).stream()
+                .filter(entry -> entry.getResponse().getStatus() >= 300 && entry.getResponse().getStatus() <= 399)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finds entries whose response has a client error or server error status.
+     * @return the entries
+     */
+    public List<HarEntry> findErrorResponses() {
+        return getIndex().findByStatus(400, 599);
+    }
 
     public static String describe(HarRequest request) {
         if (request == null) {
@@ -117,27 +208,24 @@ public class HarAnalysis {
 
     @VisibleForTesting
     static List<DeserializableCookie> makeCookiesFromEntry(final SetCookieHeaderParser cookieSpec, final HarEntry entry) {
-        URL originUrl;
+        return makeCookiesFromEntry(cookieSpec, entry, new CookieOriginCache());
+    }
+
+    private static List<DeserializableCookie> makeCookiesFromEntry(final SetCookieHeaderParser cookieSpec, final HarEntry entry, CookieOriginCache originCache) {
         Instant creationDate = getResponseMoment(entry);
-        try {
-            originUrl = new URL(entry.getRequest().getUrl());
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException(e);
-        }
-        Stream<String> headerValues = entry.getResponse().getHeaders().stream()
-                .filter(header -> HttpHeaders.SET_COOKIE.equalsIgnoreCase(header.getName()))
-                .map(HarHeader::getValue);
-        final List<DeserializableCookie> cookies = new ArrayList<>();
-        headerValues.forEach(headerValue -> {
-            try {
-                List<org.apache.http.cookie.Cookie> parsed = cookieSpec.parse(headerValue, originUrl, creationDate);
-                Stream<DeserializableCookie> cookieStream = parsed.stream()
-                        .map(x -> (DeserializableCookie) x);
-                cookieStream.forEach(cookies::add);
-            } catch (MalformedCookieException e) {
-                throw new IllegalArgumentException(e);
+        CookieOrigin origin = originCache.get(entry.getRequest().getUrl());
+        final List<DeserializableCookie> cookies = new ArrayList<>(1);
+        for (HarHeader header : entry.getResponse().getHeaders()) {
+            if (HttpHeaders.SET_COOKIE.equalsIgnoreCase(header.getName())) {
+                try {
+                    for (org.apache.http.cookie.Cookie parsed : cookieSpec.parse(header.getValue(), origin, creationDate)) {
+                        cookies.add((DeserializableCookie) parsed);
+                    }
+                } catch (MalformedCookieException e) {
+                    throw new IllegalArgumentException(e);
+                }
             }
-        });
+        }
         return cookies;
     }
 
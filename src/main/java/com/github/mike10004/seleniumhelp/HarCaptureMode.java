@@ -0,0 +1,32 @@
+package com.github.mike10004.seleniumhelp;
+
+/**
+ * Mode that determines which filter assembles the HAR returned by a traffic collector.
+ * @see TrafficCollector.Builder#harCaptureMode(HarCaptureMode)
+ */
+public enum HarCaptureMode {
+
+    /**
+     * The proxy's HAR capture filter assembles the HAR. The HAR contains pages, cookies,
+     * and detailed timings, and captures content according to the collector's capture types.
+     * A {@link CapturePolicy capture policy} only applies to monitor notifications. This is
+     * the default.
+     */
+    PROXY,
+
+    /**
+     * This library's own filter assembles each HAR entry as soon as the corresponding
+     * interaction is completed. Entries honor the {@link CapturePolicy capture policy},
+     * may be passed to {@link HarEntryProcessor entry processors} and a
+     * {@link io.github.mike10004.seleniumcapture.HarBodyStore body store}, and are held
+     * in memory until the collection ends. The HAR contains no pages, its requests and
+     * responses have no parsed cookies, its timings are those measured by the filter, and
+     * the collector's capture types are ignored.
+     *
+     * <p>Entries are held in a compact form in which headers are interned and shared among
+     * entries. Only headers are compacted; request and response content text is held in full,
+     * so use a capture policy or a body store to reduce the memory held for bodies.
+     * Compaction does not apply in {@link #PROXY} mode.
+     */
+    PER_ENTRY
+}
@@ -0,0 +1,21 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarEntry;
+
+/**
+ * Interface for classes that modify HAR entries during traffic collection, as each
+ * request/response interaction is completed. Unlike a {@link HarPostProcessor}, an entry
+ * processor does not see the entire HAR, so it is suitable for per-entry work such as
+ * redaction, enrichment, or trimming. Entries are processed concurrently on a bounded
+ * worker pool, so implementations must be safe for use by multiple threads.
+ * @see TrafficCollector.Builder#harEntryProcessor(HarEntryProcessor)
+ */
+public interface HarEntryProcessor {
+
+    /**
+     * Processes an entry, modifying it in place.
+     * @param entry the entry
+     */
+    void process(HarEntry entry);
+
+}
@@ -0,0 +1,22 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarEntry;
+
+import java.io.IOException;
+
+/**
+ * Interface of a service that accepts HAR entries as they are completed during a
+ * collection session. Implementations must be safe for use by multiple threads,
+ * because entries are completed on proxy I/O threads.
+ * @see TrafficCollector.Builder#spillHarEntries(java.nio.file.Path)
+ */
+public interface HarEntrySink extends java.io.Closeable {
+
+    /**
+     * Accepts a completed entry.
+     * @param entry the entry
+     * @throws IOException on I/O error
+     */
+    void entryCompleted(HarEntry entry) throws IOException;
+
+}
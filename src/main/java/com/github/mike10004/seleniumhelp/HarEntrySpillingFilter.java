@@ -0,0 +1,141 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import com.github.mike10004.seleniumhelp.ImmutableHttpMessage.HttpContentSource;
+import io.github.mike10004.seleniumcapture.HarBodyStore;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Filter that assembles a HAR entry for each request/response interaction and sends
+ * it to a sink as soon as the interaction is completed. If a traffic monitor is
+ * provided, it is notified as well.
+ */
+class HarEntrySpillingFilter extends TrafficMonitorFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(HarEntrySpillingFilter.class);
+
+    private static final TrafficMonitor INACTIVE_MONITOR = (httpRequest, httpResponse) -> {};
+
+    private final HarEntrySink sink;
+    @Nullable
+    private final TrafficMonitor monitor;
+    @Nullable
+    private final HarBodyStore bodyStore;
+    private volatile Date startedDateTime;
+
+    public HarEntrySpillingFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, HarEntrySink sink, @Nullable TrafficMonitor monitor, CapturePolicy capturePolicy) {
+        this(originalRequest, ctx, sink, monitor, capturePolicy, null);
+    }
+
+    /**
+     * Constructs an instance that stores response bodies in a body store instead of the HAR.
+     * @param bodyStore the body store, or null to include response bodies in the HAR
+     */
+    public HarEntrySpillingFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, HarEntrySink sink, @Nullable TrafficMonitor monitor, CapturePolicy capturePolicy, @Nullable HarBodyStore bodyStore) {
+        this(originalRequest, ctx, sink, monitor, capturePolicy, bodyStore, null);
+    }
+
+    /**
+     * Constructs an instance that records the files to which bodies are spilled.
+     * @param spilledFiles the set of spilled files, or null
+     */
+    public HarEntrySpillingFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, HarEntrySink sink, @Nullable TrafficMonitor monitor, CapturePolicy capturePolicy, @Nullable HarBodyStore bodyStore, @Nullable SpilledBodyFiles spilledFiles) {
+        super(originalRequest, ctx, monitor == null ? INACTIVE_MONITOR : monitor, capturePolicy, spilledFiles);
+        this.sink = requireNonNull(sink);
+        this.monitor = monitor;
+        this.bodyStore = bodyStore;
+    }
+
+    @Override
+    public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+        if (httpObject instanceof HttpRequest && startedDateTime == null) {
+            startedDateTime = new Date();
+        }
+        return super.clientToProxyRequest(httpObject);
+    }
+
+    @Override
+    protected boolean isHarResponseContentCaptured() {
+        return true;
+    }
+
+    /**
+     * Returns true, because the HAR entry includes the request details.
+     * @return true
+     */
+    @Override
+    protected boolean isHarRequestDetailCaptured() {
+        return true;
+    }
+
+    @Override
+    protected void populateHarResponseContent(HarResponse harResponse, byte[] content, @Nullable Charset charset) {
+        if (bodyStore != null && content.length > 0) {
+            try {
+                bodyStore.storeContent(harResponse, content, charset);
+                return;
+            } catch (IOException e) {
+                log.warn("failed to store response body in {}; body will be included in HAR", bodyStore, e);
+            }
+        }
+        super.populateHarResponseContent(harResponse, content, charset);
+    }
+
+    /**
+     * Returns true, because response content is needed for the HAR entry even if the
+     * monitor does not aggregate it.
+     * @return true
+     */
+    @Override
+    protected boolean isResponseContentAggregated() {
+        return true;
+    }
+
+    /**
+     * Notifies the monitor and then sends the entry to the sink. The monitor is notified
+     * first because sinks and entry processors may modify the HAR request and response
+     * in place, and the monitor must receive them as captured.
+     */
+    @Override
+    protected void interactionCompleted(HarRequest harRequest, HarResponse harResponse, HttpContentSource responseContent, Timings timings) {
+        try {
+            if (monitor != null) {
+                super.interactionCompleted(harRequest, harResponse, responseContent, timings);
+            }
+        } finally {
+            HarEntry entry = createEntry(harRequest, harResponse, timings);
+            try {
+                sink.entryCompleted(entry);
+            } catch (IOException | RuntimeException e) {
+                log.error("failed to write entry for " + harRequest.getUrl(), e);
+            }
+        }
+    }
+
+    private HarEntry createEntry(HarRequest harRequest, HarResponse harResponse, Timings timings) {
+        HarEntry entry = new HarEntry();
+        Date started = startedDateTime;
+        entry.setStartedDateTime(started == null ? new Date() : started);
+        entry.setTime((int) Math.max(0, timings.getTotal(TimeUnit.MILLISECONDS)));
+        entry.setTimings(timings.toHarTiming());
+        entry.setServerIPAddress(getServerIpAddress());
+        entry.setRequest(harRequest);
+        entry.setResponse(harResponse);
+        return entry;
+    }
+}
@@ -0,0 +1,309 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarHeader;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import com.google.common.base.Ascii;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.primitives.Ints;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Index of the entries of a HAR, built in a single pass, that answers queries by host, status,
+ * URL prefix, and header name without scanning all entries. Host names and header names are
+ * case-insensitive. Query results are lists of entries in the order in which they appear in
+ * the HAR. The index reflects the entries at the time it was built; later modifications of
+ * the HAR are not reflected. Instances are immutable.
+ * @see HarAnalysis#getIndex()
+ */
+public final class HarIndex {
+
+    /**
+     * Status assigned to entries that have no response.
+     */
+    public static final int NO_RESPONSE_STATUS = 0;
+
+    private final ImmutableList<HarEntry> entries;
+    private final ImmutableListMultimap<String, HarEntry> byHost;
+    private final ImmutableSortedMap<Integer, int[]> positionsByStatus;
+    private final ImmutableSortedMap<String, int[]> positionsByUrl;
+    private final ImmutableListMultimap<String, HarEntry> byRequestHeader;
+    private final ImmutableListMultimap<String, HarEntry> byResponseHeader;
+
+    private HarIndex(List<HarEntry> entries) {
+        this.entries = ImmutableList.copyOf(entries);
+        ImmutableListMultimap.Builder<String, HarEntry> byHost = ImmutableListMultimap.builder();
+        Map<Integer, List<Integer>> positionsByStatus = new TreeMap<>();
+        Map<String, List<Integer>> positionsByUrl = new TreeMap<>();
+        ImmutableListMultimap.Builder<String, HarEntry> byRequestHeader = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, HarEntry> byResponseHeader = ImmutableListMultimap.builder();
+        HeaderNames headerNames = new HeaderNames();
+        for (int i = 0; i < this.entries.size(); i++) {
+            HarEntry entry = this.entries.get(i);
+            HarRequest request = entry.getRequest();
+            HarResponse response = entry.getResponse();
+            @Nullable String url = request == null ? null : request.getUrl();
+            if (url != null) {
+                positionsByUrl.computeIfAbsent(url, k -> new ArrayList<>(1)).add(i);
+                @Nullable String host = parseHost(url);
+                if (host != null) {
+                    byHost.put(host, entry);
+                }
+            }
+            int status = response == null ? NO_RESPONSE_STATUS : response.getStatus();
+            positionsByStatus.computeIfAbsent(status, k -> new ArrayList<>()).add(i);
+            if (request != null) {
+                indexHeaders(request.getHeaders(), entry, headerNames, byRequestHeader);
+            }
+            if (response != null) {
+                indexHeaders(response.getHeaders(), entry, headerNames, byResponseHeader);
+            }
+        }
+        this.byHost = byHost.build();
+        this.positionsByStatus = toPositionArrays(positionsByStatus);
+        this.positionsByUrl = toPositionArrays(positionsByUrl);
+        this.byRequestHeader = byRequestHeader.build();
+        this.byResponseHeader = byResponseHeader.build();
+    }
+
+    /**
+     * Builds an index of the entries of a HAR.
+     * @param har the HAR
+     * @return a new index
+     */
+    public static HarIndex build(Har har) {
+        @Nullable List<HarEntry> entries = har.getLog().getEntries();
+        return build(entries == null ? ImmutableList.of() : entries);
+    }
+
+    /**
+     * Builds an index of a list of entries.
+     * @param entries the entries
+     * @return a new index
+     */
+    public static HarIndex build(List<HarEntry> entries) {
+        return new HarIndex(requireNonNull(entries, "entries"));
+    }
+
+    private static void indexHeaders(@Nullable List<HarHeader> headers, HarEntry entry, HeaderNames headerNames, ImmutableListMultimap.Builder<String, HarEntry> index) {
+        if (headers == null || headers.isEmpty()) {
+            return;
+        }
+        // a header name repeated within a message is indexed once
+        String[] indexed = new String[headers.size()];
+        int numIndexed = 0;
+        for (HarHeader header : headers) {
+            @Nullable String name = header.getName();
+            if (name == null) {
+                continue;
+            }
+            String key = headerNames.toKey(name);
+            boolean seen = false;
+            for (int i = 0; i < numIndexed && !seen; i++) {
+                seen = indexed[i] == key;
+            }
+            if (!seen) {
+                indexed[numIndexed++] = key;
+                index.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Map of header names to their lowercase equivalents. Equal lowercase names are the
+     * same instance, so they can be compared by identity.
+     */
+    private static final class HeaderNames {
+
+        private final Map<String, String> keys = new HashMap<>();
+
+        public String toKey(String name) {
+            String key = keys.get(name);
+            if (key == null) {
+                String lowercase = Ascii.toLowerCase(name);
+                key = keys.computeIfAbsent(lowercase, k -> k);
+                keys.put(name, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Parses the lowercase host from a URL without constructing a URL or URI object.
+     * @param url the URL
+     * @return the host, or null if the URL has no authority
+     */
+    @Nullable
+    static String parseHost(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return null;
+        }
+        int start = schemeEnd + 3;
+        int end = start;
+        while (end < url.length()) {
+            char ch = url.charAt(end);
+            if (ch == '/' || ch == '?' || ch == '#') {
+                break;
+            }
+            end++;
+        }
+        int userInfoEnd = url.lastIndexOf('@', end - 1);
+        if (userInfoEnd >= start) {
+            start = userInfoEnd + 1;
+        }
+        int hostEnd = end;
+        if (start < end && url.charAt(start) == '[') {
+            int bracket = url.indexOf(']', start);
+            if (bracket > 0 && bracket < end) {
+                hostEnd = bracket + 1;
+            }
+        } else {
+            int colon = url.indexOf(':', start);
+            if (colon >= 0 && colon < end) {
+                hostEnd = colon;
+            }
+        }
+        if (hostEnd <= start) {
+            return null;
+        }
+        return Ascii.toLowerCase(url.substring(start, hostEnd));
+    }
+
+    /**
+     * Gets all the entries.
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the lowercase names of the hosts of the request URLs.
+     * @return the hosts
+     */
+    public ImmutableSet<String> getHosts() {
+        return byHost.keySet();
+    }
+
+    /**
+     * Finds entries whose request URL has a given host.
+     * @param host the host, such as {@code www.example.com}; case-insensitive
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> findByHost(String host) {
+        return byHost.get(Ascii.toLowerCase(host));
+    }
+
+    /**
+     * Finds entries with a given response status.
+     * @param status the status; use {@link #NO_RESPONSE_STATUS} for entries without a response
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> findByStatus(int status) {
+        int[] positions = positionsByStatus.get(status);
+        return positions == null ? ImmutableList.of() : inHarOrder(positions);
+    }
+
+    /**
+     * Finds entries whose response status is in a range.
+     * @param lowerInclusive the lower bound
+     * @param upperInclusive the upper bound
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> findByStatus(int lowerInclusive, int upperInclusive) {
+        checkArgument(lowerInclusive <= upperInclusive, "lower bound %s > upper bound %s", lowerInclusive, upperInclusive);
+        return inHarOrder(positionsByStatus.subMap(lowerInclusive, true, upperInclusive, true).values());
+    }
+
+    /**
+     * Finds entries whose request URL is equal to a given URL.
+     * @param url the URL
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> findByUrl(String url) {
+        int[] positions = positionsByUrl.get(url);
+        return positions == null ? ImmutableList.of() : inHarOrder(positions);
+    }
+
+    /**
+     * Finds entries whose request URL starts with a given prefix.
+     * @param prefix the prefix, such as {@code https://www.example.com/api/}
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> findByUrlPrefix(String prefix) {
+        SortedMap<String, int[]> matches = prefix.isEmpty() ? positionsByUrl : positionsByUrl.subMap(prefix, prefix + Character.MAX_VALUE);
+        return inHarOrder(matches.values());
+    }
+
+    /**
+     * Finds entries whose request has a header with a given name.
+     * @param headerName the header name; case-insensitive
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> findWithRequestHeader(String headerName) {
+        return byRequestHeader.get(Ascii.toLowerCase(headerName));
+    }
+
+    /**
+     * Finds entries whose response has a header with a given name.
+     * @param headerName the header name; case-insensitive
+     * @return the entries
+     */
+    public ImmutableList<HarEntry> findWithResponseHeader(String headerName) {
+        return byResponseHeader.get(Ascii.toLowerCase(headerName));
+    }
+
+    private static <K extends Comparable<K>> ImmutableSortedMap<K, int[]> toPositionArrays(Map<K, List<Integer>> positionLists) {
+        ImmutableSortedMap.Builder<K, int[]> b = ImmutableSortedMap.naturalOrder();
+        positionLists.forEach((key, positions) -> b.put(key, Ints.toArray(positions)));
+        return b.build();
+    }
+
+    /*
+     * Position arrays are in ascending order, so a single array maps directly to entries.
+     */
+    private ImmutableList<HarEntry> inHarOrder(int[] positions) {
+        ImmutableList.Builder<HarEntry> b = ImmutableList.builderWithExpectedSize(positions.length);
+        for (int position : positions) {
+            b.add(entries.get(position));
+        }
+        return b.build();
+    }
+
+    private ImmutableList<HarEntry> inHarOrder(Collection<int[]> positionArrays) {
+        if (positionArrays.size() == 1) {
+            return inHarOrder(positionArrays.iterator().next());
+        }
+        int[] positions = positionArrays.stream().flatMapToInt(Arrays::stream).toArray();
+        Arrays.sort(positions);
+        return inHarOrder(positions);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("entries.size", entries.size())
+                .add("hosts.size", byHost.keySet().size())
+                .add("statuses", positionsByStatus.keySet())
+                .toString();
+    }
+}
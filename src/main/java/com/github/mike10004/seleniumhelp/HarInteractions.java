@@ -11,6 +11,8 @@ import com.browserup.harreader.model.HarPostData;
 import com.browserup.harreader.model.HarPostDataParam;
 import com.browserup.harreader.model.HarRequest;
 import com.browserup.harreader.model.HarResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.message.BasicNameValuePair;
 import org.slf4j.LoggerFactory;
@@ -83,8 +85,24 @@ final class HarInteractions {
         return HttpContentSource.fromChars(CharSource.wrap(content.getText()));
     }
 
+    /**
+     * Parses a URI from a URL string. A string that is a valid absolute URI with a host and
+     * contains no percent-encoded octets is parsed directly; otherwise the string is parsed as a URL whose components are
+     * used to construct the URI, which quotes illegal characters.
+     * @param uriStr the URL string
+     * @return the URI
+     */
     @VisibleForTesting
     static URI parseUri(String uriStr) {
+        if (uriStr.indexOf('%') < 0) {
+            try {
+                URI uri = new URI(uriStr);
+                if (uri.isAbsolute() && uri.getHost() != null) {
+                    return uri;
+                }
+            } catch (URISyntaxException ignore) {
+            }
+        }
         try {
             URL url = new URL(uriStr);
             return new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(), url.getPath(), url.getQuery(), url.getRef());
@@ -94,20 +112,62 @@ final class HarInteractions {
     }
 
     public static ImmutableHttpRequest freeze(HarRequest harRequest) {
+        return freeze(harRequest, toContentSource(harRequest.getPostData()));
+    }
+
+    /**
+     * Creates an immutable request with the method, URL, and headers of a HAR request
+     * and the given content, ignoring any post data in the HAR request.
+     * @param harRequest the HAR request
+     * @param content the content source
+     * @return a new request instance
+     */
+    public static ImmutableHttpRequest freeze(HarRequest harRequest, HttpContentSource content) {
         if (harRequest.getUrl() == null) {
             throw new IllegalArgumentException("url is null in " + HarAnalysis.describe(harRequest));
         }
         return ImmutableHttpRequest.builder(parseUri(harRequest.getUrl()))
                 .method(Optional.ofNullable(harRequest.getMethod()).map(HttpMethod::name).orElse("GET"))
                 .addHeaders(harRequest.getHeaders().stream().map(pair -> new SimpleImmutableEntry<>(pair.getName(), pair.getValue())))
-                .content(toContentSource(harRequest.getPostData()))
+                .content(content)
                 .build();
     }
 
+    /**
+     * Creates an immutable request from a Netty request. Headers are copied from the request
+     * and the trailing headers, if any. Query parameters and content are not decoded until
+     * they are requested from the returned instance.
+     * @param httpRequest the request
+     * @param fullUrl the full URL of the request
+     * @param trailingHeaders trailing headers, or null
+     * @param content the content source
+     * @return a new request instance
+     */
+    public static ImmutableHttpRequest freeze(HttpRequest httpRequest, String fullUrl, @Nullable HttpHeaders trailingHeaders, HttpContentSource content) {
+        ImmutableHttpRequest.Builder builder = ImmutableHttpRequest.builder(parseUri(fullUrl))
+                .method(httpRequest.method().name())
+                .addHeaders(httpRequest.headers().entries());
+        if (trailingHeaders != null) {
+            builder.addHeaders(trailingHeaders.entries());
+        }
+        return builder.content(content).build();
+    }
+
     public static ImmutableHttpResponse freeze(HarResponse harResponse) {
+        return freeze(harResponse, toContentSource(harResponse.getContent()));
+    }
+
+    /**
+     * Creates an immutable response with the status and headers of a HAR response
+     * and the given content, ignoring any content in the HAR response.
+     * @param harResponse the HAR response
+     * @param content the content source
+     * @return a new response instance
+     */
+    public static ImmutableHttpResponse freeze(HarResponse harResponse, HttpContentSource content) {
         return ImmutableHttpResponse.builder(harResponse.getStatus())
                 .addHeaders(harResponse.getHeaders().stream().map(pair -> new SimpleImmutableEntry<>(pair.getName(), pair.getValue())))
-                .content(toContentSource(harResponse.getContent()))
+                .content(content)
                 .build();
     }
 
@@ -1,6 +1,10 @@
 package com.github.mike10004.seleniumhelp;
 
 import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+
+import java.io.IOException;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -31,6 +35,16 @@ public class HarPlus<T> {
         this.result = result;
     }
 
+    /**
+     * Returns a stream of the captured HAR entries. Subclasses may read the entries
+     * lazily from an external source, so the stream should be closed after use.
+     * @return a stream of entries
+     * @throws IOException on I/O error
+     */
+    public Stream<HarEntry> streamEntries() throws IOException {
+        return har.getLog().getEntries().stream();
+    }
+
     public static HarPlus<Void> nothing(Har har) {
         return new HarPlus<>(har, (Void)null);
     }
@@ -0,0 +1,74 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded dictionary that maps strings to canonical instances, so that equal header names
+ * and values captured from many messages share a single string instance. Strings longer
+ * than the maximum length, such as cookie values, are not interned, and once the dictionary
+ * is full, only strings already in it are interned. Instances are safe for use by multiple threads.
+ */
+final class HeaderDictionary {
+
+    public static final int DEFAULT_MAX_ENTRIES = 8192;
+
+    public static final int DEFAULT_MAX_LENGTH = 128;
+
+    private final ConcurrentMap<String, String> strings;
+    private final int maxEntries;
+    private final int maxLength;
+
+    public HeaderDictionary() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LENGTH);
+    }
+
+    public HeaderDictionary(int maxEntries, int maxLength) {
+        checkArgument(maxEntries >= 0, "max entries must be nonnegative: %s", maxEntries);
+        checkArgument(maxLength >= 0, "max length must be nonnegative: %s", maxLength);
+        this.maxEntries = maxEntries;
+        this.maxLength = maxLength;
+        strings = new ConcurrentHashMap<>(Math.min(maxEntries, 256));
+    }
+
+    /**
+     * Gets the canonical instance of a string.
+     * @param string the string
+     * @return the canonical instance, or the argument if it is not interned
+     */
+    @Nullable
+    public String intern(@Nullable String string) {
+        if (string == null || string.length() > maxLength) {
+            return string;
+        }
+        String canonical = strings.get(string);
+        if (canonical == null) {
+            if (strings.size() >= maxEntries) {
+                return string;
+            }
+            canonical = strings.putIfAbsent(string, string);
+            if (canonical == null) {
+                canonical = string;
+            }
+        }
+        return canonical;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", strings.size())
+                .add("maxEntries", maxEntries)
+                .add("maxLength", maxLength)
+                .toString();
+    }
+}
@@ -5,15 +5,26 @@ import com.google.common.base.Suppliers;
 
 import java.util.function.Supplier;
 
-class HttpInteraction {
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Value class that represents a request/response interaction.
+ */
+public class HttpInteraction {
 
     public final ImmutableHttpRequest request;
     public final ImmutableHttpResponse response;
+    private final Timings timings;
     private final Supplier<String> stringRepresentation;
 
-    HttpInteraction(ImmutableHttpRequest request, ImmutableHttpResponse response) {
-        this.request = request;
-        this.response = response;
+    public HttpInteraction(ImmutableHttpRequest request, ImmutableHttpResponse response) {
+        this(request, response, Timings.unknown());
+    }
+
+    public HttpInteraction(ImmutableHttpRequest request, ImmutableHttpResponse response, Timings timings) {
+        this.request = requireNonNull(request, "request");
+        this.response = requireNonNull(response, "response");
+        this.timings = requireNonNull(timings, "timings");
         stringRepresentation = Suppliers.memoize(() -> {
             return MoreObjects.toStringHelper(HttpInteraction.class).add("request", request).add("response", response).toString();
         });
@@ -27,6 +38,10 @@ class HttpInteraction {
         return response;
     }
 
+    public Timings getTimings() {
+        return timings;
+    }
+
     @Override
     public String toString() {
         return stringRepresentation.get();
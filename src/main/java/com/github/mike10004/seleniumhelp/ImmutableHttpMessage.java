@@ -54,6 +54,15 @@ public class ImmutableHttpMessage {
         return dataSource.asChars(this);
     }
 
+    /**
+     * Checks whether the content of this message was truncated during capture.
+     * @return true if the content is incomplete
+     * @see BodyCaptureLimits
+     */
+    public boolean isContentTruncated() {
+        return dataSource.isTruncated();
+    }
+
     protected static CharSource encodeToBase64(ByteSource byteSource) {
         return new CharSource() {
             @Override
@@ -103,6 +112,14 @@ public class ImmutableHttpMessage {
         CharSource asChars(ImmutableHttpMessage message);
         ByteSource asBytes(ImmutableHttpMessage message);
 
+        /**
+         * Checks whether this content was truncated during capture.
+         * @return true if the content is incomplete
+         */
+        default boolean isTruncated() {
+            return false;
+        }
+
         static HttpContentSource empty() {
             return new HttpContentSource() {
                 @Override
@@ -138,6 +155,97 @@ public class ImmutableHttpMessage {
         static HttpContentSource fromBase64(String base64Data) {
             return new OriginalByteSource(Base64ByteSource.forBase64String(base64Data));
         }
+
+        /**
+         * Creates a source of textual content that is held in its encoded form.
+         * The bytes are decoded only when the content is read as characters,
+         * and they are returned as-is when the content is read as bytes.
+         * @param encodedText the encoded text
+         * @param charset the charset to use when decoding the text
+         * @return a new content source
+         */
+        static HttpContentSource fromText(ByteSource encodedText, Charset charset) {
+            return new EncodedTextSource(encodedText, charset);
+        }
+
+        /**
+         * Creates a source that provides the same content as the given source
+         * but is marked as truncated.
+         * @param source the source of the truncated content
+         * @return a new content source
+         */
+        static HttpContentSource truncated(HttpContentSource source) {
+            return new TruncatedSource(source);
+        }
+    }
+
+    protected static final class TruncatedSource implements HttpContentSource {
+
+        private final HttpContentSource source;
+
+        public TruncatedSource(HttpContentSource source) {
+            this.source = checkNotNull(source);
+        }
+
+        @Override
+        public boolean isNativelyText() {
+            return source.isNativelyText();
+        }
+
+        @Override
+        public CharSource asChars(ImmutableHttpMessage message) {
+            return source.asChars(message);
+        }
+
+        @Override
+        public ByteSource asBytes(ImmutableHttpMessage message) {
+            return source.asBytes(message);
+        }
+
+        @Override
+        public boolean isTruncated() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "TruncatedSource{" + source + '}';
+        }
+    }
+
+    protected static final class EncodedTextSource implements HttpContentSource {
+
+        private final ByteSource byteSource;
+        private final Charset charset;
+
+        public EncodedTextSource(ByteSource byteSource, Charset charset) {
+            this.byteSource = checkNotNull(byteSource);
+            this.charset = checkNotNull(charset);
+        }
+
+        @Override
+        public boolean isNativelyText() {
+            return true;
+        }
+
+        @Override
+        public CharSource asChars(ImmutableHttpMessage message) {
+            return byteSource.asCharSource(charset);
+        }
+
+        @Override
+        public ByteSource asBytes(ImmutableHttpMessage message) {
+            return byteSource;
+        }
+
+        @Override
+        public String toString() {
+            return "EncodedTextSource{" +
+                    "nativelyText=" + isNativelyText() +
+                    ",charset=" + charset +
+                    ",byteSource.size=" + byteSource.sizeIfKnown() +
+                    '}';
+        }
     }
 
     protected static final class OriginalByteSource implements HttpContentSource {
@@ -2,10 +2,12 @@ package com.github.mike10004.seleniumhelp;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.net.MediaType;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -17,8 +19,8 @@ public class ImmutableHttpRequest extends ImmutableHttpMessage {
 
     public final String method;
     public final URI url;
-    private transient final Object paramsLock = new Object();
     private volatile ImmutableMultimap<String, String> queryParams;
+    private volatile ImmutableMultimap<String, String> formParams;
 
     private ImmutableHttpRequest(Builder builder) {
         super(builder);
@@ -42,18 +44,49 @@ public class ImmutableHttpRequest extends ImmutableHttpMessage {
         return parseQueryParams(StandardCharsets.UTF_8);
     }
 
+    /**
+     * Parses the query parameters of the request URL. The parameters are parsed
+     * on the first invocation and the result is reused on later invocations.
+     * @param charset the charset of percent-encoded octets
+     * @return the query parameters
+     */
     public ImmutableMultimap<String, String> parseQueryParams(Charset charset) {
-        synchronized (paramsLock) {
-            if (queryParams == null) {
-                List<NameValuePair> nameValuePairs = URLEncodedUtils.parse(url, charset);
-                ImmutableMultimap.Builder<String, String> b = ImmutableMultimap.builder();
-                for (NameValuePair nameValuePair : nameValuePairs) {
-                    b.put(Strings.nullToEmpty(nameValuePair.getName()), Strings.nullToEmpty(nameValuePair.getValue()));
-                }
-                queryParams = b.build();
+        ImmutableMultimap<String, String> params = queryParams;
+        if (params == null) {
+            params = toMultimap(URLEncodedUtils.parse(url, charset));
+            queryParams = params;
+        }
+        return params;
+    }
+
+    /**
+     * Parses the parameters of URL-encoded form content. The content is decoded
+     * on the first invocation and the result is reused on later invocations.
+     * @return the form parameters, or an empty multimap if the content type is
+     * not {@code application/x-www-form-urlencoded}
+     * @throws IOException if the content cannot be read
+     */
+    public ImmutableMultimap<String, String> parseFormParams() throws IOException {
+        ImmutableMultimap<String, String> params = formParams;
+        if (params == null) {
+            MediaType contentType = getContentType();
+            if (contentType != null && contentType.withoutParameters().equals(MediaType.FORM_DATA)) {
+                Charset charset = contentType.charset().or(DEFAULT_HTTP_CHARSET);
+                params = toMultimap(URLEncodedUtils.parse(getContentAsChars().read(), charset));
+            } else {
+                params = ImmutableMultimap.of();
             }
-            return queryParams;
+            formParams = params;
+        }
+        return params;
+    }
+
+    private static ImmutableMultimap<String, String> toMultimap(List<NameValuePair> nameValuePairs) {
+        ImmutableMultimap.Builder<String, String> b = ImmutableMultimap.builder();
+        for (NameValuePair nameValuePair : nameValuePairs) {
+            b.put(Strings.nullToEmpty(nameValuePair.getName()), Strings.nullToEmpty(nameValuePair.getValue()));
         }
+        return b.build();
     }
 
     @SuppressWarnings("unused")
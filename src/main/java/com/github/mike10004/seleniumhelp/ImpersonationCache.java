@@ -0,0 +1,161 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.netty.handler.ssl.SslContext;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded cache of SSL contexts with impersonating leaf certificates, keyed by the root
+ * certificate that signed the leaf, the impersonated hostname, and the leaf key algorithm.
+ * A cache may be shared by any number of proxies and collection sessions, so that each
+ * leaf certificate is generated once per root and hostname rather than once per session. The least recently used contexts
+ * are evicted when the cache is full, and contexts expire a fixed time after they are created.
+ * Instances are safe for use by multiple threads.
+ * @see CachingImpersonatingMitmManager
+ */
+public final class ImpersonationCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 1024;
+
+    public static final Duration DEFAULT_EXPIRATION = Duration.ofHours(1);
+
+    private static final ImpersonationCache DEFAULT_INSTANCE = builder().build();
+
+    private final Cache<Key, SslContext> contexts;
+    private final long maximumSize;
+    private final Duration expiration;
+
+    private ImpersonationCache(Builder builder) {
+        maximumSize = builder.maximumSize;
+        expiration = builder.expiration;
+        contexts = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expiration.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Gets the process-wide instance, which has the default maximum size and expiration.
+     * @return the process-wide instance
+     */
+    public static ImpersonationCache getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the SSL context for a root and hostname, creating it if it is not cached.
+     * @param rootFingerprint fingerprint of the root certificate
+     * @param hostname the impersonated hostname; case-insensitive
+     * @param keyAlgorithm algorithm of the leaf certificate key
+     * @param loader callable that creates the context
+     * @return the context
+     * @throws ExecutionException if the loader throws a checked exception
+     */
+    SslContext get(String rootFingerprint, String hostname, CertificateKeyAlgorithm keyAlgorithm, Callable<SslContext> loader) throws ExecutionException {
+        return contexts.get(new Key(rootFingerprint, Ascii.toLowerCase(hostname), keyAlgorithm), loader);
+    }
+
+    public long size() {
+        return contexts.size();
+    }
+
+    public CacheStats stats() {
+        return contexts.stats();
+    }
+
+    /**
+     * Discards all cached contexts.
+     */
+    public void invalidateAll() {
+        contexts.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", contexts.size())
+                .add("maximumSize", maximumSize)
+                .add("expiration", expiration)
+                .toString();
+    }
+
+    private static final class Key {
+
+        private final String rootFingerprint;
+        private final String hostname;
+        private final CertificateKeyAlgorithm keyAlgorithm;
+
+        private Key(String rootFingerprint, String hostname, CertificateKeyAlgorithm keyAlgorithm) {
+            this.rootFingerprint = requireNonNull(rootFingerprint);
+            this.hostname = requireNonNull(hostname);
+            this.keyAlgorithm = requireNonNull(keyAlgorithm);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hostname.equals(key.hostname) && rootFingerprint.equals(key.rootFingerprint) && keyAlgorithm == key.keyAlgorithm;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rootFingerprint, hostname, keyAlgorithm);
+        }
+    }
+
+    public static final class Builder {
+
+        private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private Duration expiration = DEFAULT_EXPIRATION;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of contexts retained.
+         * @param maximumSize the maximum size
+         * @return this builder instance
+         */
+        public Builder maximumSize(long maximumSize) {
+            checkArgument(maximumSize >= 0, "maximum size must be nonnegative: %s", maximumSize);
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Sets the time after which a context expires. A context expires this long after it
+         * is created even if it is in use, and is regenerated, with a new leaf certificate,
+         * the next time its hostname is impersonated.
+         * @param expiration the time after creation at which a context expires
+         * @return this builder instance
+         */
+        public Builder expireAfterWrite(Duration expiration) {
+            checkArgument(!expiration.isNegative(), "expiration must be nonnegative: %s", expiration);
+            this.expiration = expiration;
+            return this;
+        }
+
+        public ImpersonationCache build() {
+            return new ImpersonationCache(this);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.mike10004.seleniumhelp;
+
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.Collections;
+
+/**
+ * Keystore file creator implementation that converts keystores in process, with the
+ * JCA and Bouncy Castle APIs, instead of executing {@code keytool} and {@code openssl}.
+ * No temporary files are created, and instances are stateless, so they may be used
+ * by multiple threads concurrently.
+ */
+public class JcaKeystoreFileCreator implements KeystoreFileCreator {
+
+    private static final Logger log = LoggerFactory.getLogger(JcaKeystoreFileCreator.class);
+
+    private static final String[] INPUT_KEYSTORE_TYPES = {"PKCS12", "JKS"};
+    private static final String OUTPUT_KEYSTORE_TYPE = "PKCS12";
+
+    @Override
+    public void createPKCS12File(KeystoreInput keystore, File p12File) throws IOException {
+        byte[] pkcs12Bytes = toPkcs12Bytes(keystore);
+        Files.write(p12File.toPath(), pkcs12Bytes);
+        log.debug("pkcs12: {} ({} bytes)", p12File, pkcs12Bytes.length);
+    }
+
+    /**
+     * Writes a PEM file containing the certificates and unencrypted private keys
+     * of a PKCS12 keystore, like {@code openssl pkcs12 -nodes} does.
+     */
+    @Override
+    public void createPemFile(File pkcs12File, String keystorePassword, File pemFile) throws IOException {
+        byte[] pkcs12Bytes = Files.readAllBytes(pkcs12File.toPath());
+        String pem = toPem(KeystoreInput.wrap(pkcs12Bytes, keystorePassword));
+        Files.write(pemFile.toPath(), pem.getBytes(StandardCharsets.US_ASCII));
+        log.debug("pem: {} ({} chars)", pemFile, pem.length());
+    }
+
+    /**
+     * Converts a keystore to PKCS12 format, protected by the keystore password.
+     * @param keystore the keystore, in PKCS12 or JKS format
+     * @return the PKCS12 keystore bytes
+     * @throws IOException if the keystore cannot be read
+     */
+    public byte[] toPkcs12Bytes(KeystoreInput keystore) throws IOException {
+        char[] password = keystore.getPassword().toCharArray();
+        KeyStore source = load(keystore);
+        try {
+            KeyStore target = KeyStore.getInstance(OUTPUT_KEYSTORE_TYPE);
+            target.load(null, null);
+            for (String alias : Collections.list(source.aliases())) {
+                if (source.isKeyEntry(alias)) {
+                    Key key = source.getKey(alias, password);
+                    target.setKeyEntry(alias, key, password, source.getCertificateChain(alias));
+                } else if (source.isCertificateEntry(alias)) {
+                    target.setCertificateEntry(alias, source.getCertificate(alias));
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            target.store(out, password);
+            return out.toByteArray();
+        } catch (GeneralSecurityException e) {
+            throw new AutoCertificateAndKeySource.CertificateGenerationException("failed to convert keystore to pkcs12", e);
+        }
+    }
+
+    /**
+     * Exports the certificates and unencrypted private keys of a keystore in PEM format.
+     * For each key entry, the certificate chain precedes the private key, which is written
+     * in PKCS8 form. Certificate entries follow the key entries.
+     * @param keystore the keystore, in PKCS12 or JKS format
+     * @return the PEM text
+     * @throws IOException if the keystore cannot be read
+     */
+    public String toPem(KeystoreInput keystore) throws IOException {
+        char[] password = keystore.getPassword().toCharArray();
+        KeyStore source = load(keystore);
+        StringWriter text = new StringWriter(4096);
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(text)) {
+            for (String alias : Collections.list(source.aliases())) {
+                if (source.isKeyEntry(alias)) {
+                    Certificate[] chain = source.getCertificateChain(alias);
+                    if (chain != null) {
+                        for (Certificate certificate : chain) {
+                            pemWriter.writeObject(certificate);
+                        }
+                    }
+                    Key key = source.getKey(alias, password);
+                    if (key instanceof PrivateKey) {
+                        pemWriter.writeObject(new JcaPKCS8Generator((PrivateKey) key, null));
+                    }
+                }
+            }
+            for (String alias : Collections.list(source.aliases())) {
+                if (source.isCertificateEntry(alias)) {
+                    pemWriter.writeObject(source.getCertificate(alias));
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new AutoCertificateAndKeySource.CertificateGenerationException("failed to export keystore to pem", e);
+        }
+        return text.toString();
+    }
+
+    private static KeyStore load(KeystoreInput keystore) throws IOException {
+        char[] password = keystore.getPassword().toCharArray();
+        IOException failure = null;
+        for (String type : INPUT_KEYSTORE_TYPES) {
+            try (InputStream in = keystore.getBytes().openStream()) {
+                KeyStore keyStore = KeyStore.getInstance(type);
+                keyStore.load(in, password);
+                return keyStore;
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new AutoCertificateAndKeySource.CertificateGenerationException("failed to load keystore", e);
+            }
+        }
+        throw failure;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sink that accumulates HAR entries in memory. Entries are retained in compact form,
+ * with headers interned through a dictionary shared by all entries of the sink,
+ * and are converted back to the HAR model when {@link #toHar()} is invoked. This sink is used
+ * only in the {@link HarCaptureMode#PER_ENTRY per-entry} HAR capture mode.
+ */
+class MemoryHarEntrySink implements HarEntrySink {
+
+    private final List<CompactHarEntry> entries = new ArrayList<>();
+    private final HeaderDictionary dictionary;
+
+    public MemoryHarEntrySink() {
+        this(new HeaderDictionary());
+    }
+
+    public MemoryHarEntrySink(HeaderDictionary dictionary) {
+        this.dictionary = requireNonNull(dictionary);
+    }
+
+    @Override
+    public void entryCompleted(HarEntry entry) {
+        CompactHarEntry compacted = CompactHarEntry.compact(entry, dictionary);
+        synchronized (this) {
+            entries.add(compacted);
+        }
+    }
+
+    /**
+     * Creates a HAR containing the entries accepted so far, in order of start time.
+     * @return a new HAR instance
+     */
+    public synchronized Har toHar() {
+        List<HarEntry> sorted = entries.stream()
+                .sorted(Comparator.comparing(CompactHarEntry::getStartedDateTime, Comparator.nullsLast(Comparator.naturalOrder())))
+                .map(CompactHarEntry::toHarEntry)
+                .collect(Collectors.toList());
+        Har har = SpilledHar.createSkeleton();
+        har.getLog().setEntries(sorted);
+        return har;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -23,6 +23,10 @@ class MultimapCookieCollection implements CookieCollection {
         return new MultimapCookieCollection(buildCookieKeyMultimap(cookies));
     }
 
+    static CookieCollection build(Multimap<CookieKey, DeserializableCookie> cookiesByKey) {
+        return new MultimapCookieCollection(cookiesByKey);
+    }
+
     @Override
     public ImmutableList<DeserializableCookie> makeCookieList(Function<? super CookieKey, Comparator<? super DeserializableCookie>> comparatorFactory) {
         requireNonNull(comparatorFactory, "comparator");
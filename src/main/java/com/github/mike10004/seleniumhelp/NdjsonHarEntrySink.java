@@ -0,0 +1,77 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.HarReaderMode;
+import com.browserup.harreader.model.HarEntry;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.MoreObjects;
+import io.github.mike10004.seleniumcapture.HarCodec;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Entry sink that appends each entry to a file as a single line of JSON.
+ * The file can be read with {@link SpilledHar}.
+ */
+class NdjsonHarEntrySink implements HarEntrySink {
+
+    private final File file;
+    private final Writer writer;
+    private final ObjectWriter entryWriter;
+    private transient final Object writeLock = new Object();
+    private volatile boolean closed;
+    private volatile int entryCount;
+
+    public NdjsonHarEntrySink(File file) throws IOException {
+        this.file = requireNonNull(file);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        entryWriter = HarCodec.getInstance(HarReaderMode.STRICT).getEntryWriter();
+    }
+
+    @Override
+    public void entryCompleted(HarEntry entry) throws IOException {
+        requireNonNull(entry, "entry");
+        String json = entryWriter.writeValueAsString(entry);
+        synchronized (writeLock) {
+            checkState(!closed, "sink is closed");
+            writer.write(json);
+            writer.write('\n');
+            entryCount++;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (!closed) {
+                closed = true;
+                writer.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("file", file)
+                .add("entryCount", entryCount)
+                .add("closed", closed)
+                .toString();
+    }
+}
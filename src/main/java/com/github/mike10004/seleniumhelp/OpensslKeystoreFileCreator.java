@@ -17,6 +17,7 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * Keystore file creator implementation that uses an {@code openssl} executable.
+ * @see JcaKeystoreFileCreator
  */
 public class OpensslKeystoreFileCreator implements KeystoreFileCreator {
 
@@ -0,0 +1,628 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.mitm.CertificateAndKeySource;
+import com.google.common.base.MoreObjects;
+import com.google.gson.JsonObject;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.service.DriverService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Webdriver factory that keeps launched webdriving sessions and hands them out again
+ * instead of starting a new driver service and browser for each session. Closing a
+ * session produced by this factory resets the browser state and returns the session
+ * to the pool; {@link WebdrivingSession#tryQuit(Duration)} quits the session for real.
+ *
+ * <p>A browser's proxy settings cannot be changed after it is launched, so sessions
+ * are only reused for configurations with an equivalent proxy specification and the
+ * same certificate and key source. Pair this factory with a {@link BrowserUpProxyPool}
+ * so that consecutive collection sessions use the same proxy address.
+ *
+ * <p>The default reset action clears storage for the current origin, deletes cookies
+ * visible to the current page, and navigates to {@code about:blank}. WebDriver does not
+ * provide a way to clear cookies and storage for all origins, so callers that require
+ * complete isolation should supply a browser-specific reset action or not pool sessions.
+ *
+ * <p>A resource that the browser serves from its HTTP cache never reaches the proxy, so
+ * it would be missing from the traffic captured during later leases. The default reset
+ * action clears the cache of Chrome browsers through the DevTools protocol. Other
+ * browsers have no such command; launch Firefox with the cache disabled by
+ * {@link FirefoxWebDriverFactory.Builder#disableCache()}.
+ */
+public class PooledWebDriverFactory implements WebDriverFactory, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledWebDriverFactory.class);
+
+    private final WebDriverFactory delegate;
+    private final int maxSessions;
+    private final int maxUses;
+    private final Duration maxAge;
+    private final Duration waitTimeout;
+    private final Consumer<? super WebDriver> resetAction;
+    private final Semaphore leasePermits;
+    private final Deque<PooledSession> idle;
+    private int leasedCount;
+    private boolean closed;
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong recycleCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private PooledWebDriverFactory(Builder builder) {
+        delegate = builder.delegate;
+        maxSessions = builder.maxSessions;
+        maxUses = builder.maxUses;
+        maxAge = builder.maxAge;
+        waitTimeout = builder.waitTimeout;
+        resetAction = builder.resetAction;
+        leasePermits = new Semaphore(maxSessions, true);
+        idle = new ArrayDeque<>(maxSessions);
+    }
+
+    /**
+     * Creates a builder of a factory that pools sessions created by the given factory.
+     * @param delegate the factory that launches new sessions
+     * @return a new builder
+     */
+    public static Builder builder(WebDriverFactory delegate) {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public WebdrivingSession startWebdriving(WebdrivingConfig config) throws IOException {
+        long start = System.nanoTime();
+        SessionKey key = SessionKey.of(config);
+        acquirePermit();
+        try {
+            PooledSession pooled = takeIdle(key);
+            if (pooled == null) {
+                pooled = launch(key, config);
+            } else {
+                hitCount.incrementAndGet();
+            }
+            pooled.uses++;
+            leaseCount.incrementAndGet();
+            return new LeasedSession(pooled);
+        } catch (IOException | RuntimeException e) {
+            releasePermit();
+            throw e;
+        } finally {
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Launches sessions for the given configuration and adds them to the pool,
+     * so that subsequent requests for equivalent configurations need not wait.
+     * Fewer sessions are launched if the pool would otherwise exceed its maximum size.
+     * @param config the configuration
+     * @param count the number of sessions to launch
+     * @return the number of sessions launched
+     * @throws IOException if a session could not be launched
+     */
+    public int prewarm(WebdrivingConfig config, int count) throws IOException {
+        SessionKey key = SessionKey.of(config);
+        int launched = 0;
+        for (int i = 0; i < count; i++) {
+            if (!leasePermits.tryAcquire()) {
+                break;
+            }
+            synchronized (this) {
+                leasedCount++;
+                if (closed || idle.size() + leasedCount > maxSessions) {
+                    leasedCount--;
+                    leasePermits.release();
+                    break;
+                }
+            }
+            PooledSession pooled;
+            try {
+                pooled = launch(key, config);
+            } catch (IOException | RuntimeException e) {
+                releasePermit();
+                throw e;
+            }
+            synchronized (this) {
+                leasedCount--;
+                idle.addFirst(pooled);
+            }
+            leasePermits.release();
+            launched++;
+        }
+        return launched;
+    }
+
+    private void acquirePermit() throws IOException {
+        boolean acquired;
+        try {
+            acquired = leasePermits.tryAcquire(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for webdriving session", e);
+        }
+        if (!acquired) {
+            throw new IOException("no webdriving session available within " + waitTimeout);
+        }
+        synchronized (this) {
+            if (closed) {
+                leasePermits.release();
+                throw new IllegalStateException("factory is closed");
+            }
+            leasedCount++;
+        }
+    }
+
+    private void releasePermit() {
+        synchronized (this) {
+            leasedCount--;
+        }
+        leasePermits.release();
+    }
+
+    @Nullable
+    private PooledSession takeIdle(SessionKey key) {
+        List<PooledSession> evicted = new ArrayList<>();
+        PooledSession match = null;
+        synchronized (this) {
+            for (Iterator<PooledSession> it = idle.iterator(); it.hasNext(); ) {
+                PooledSession candidate = it.next();
+                if (key.equals(candidate.key)) {
+                    it.remove();
+                    if (!isExpired(candidate)) {
+                        match = candidate;
+                        break;
+                    }
+                    evicted.add(candidate);
+                }
+            }
+            if (match == null) {
+                while (!idle.isEmpty() && idle.size() + leasedCount > maxSessions) {
+                    evicted.add(idle.removeLast());
+                }
+            }
+        }
+        evicted.forEach(this::recycle);
+        return match;
+    }
+
+    private PooledSession launch(SessionKey key, WebdrivingConfig config) throws IOException {
+        WebdrivingSession session = delegate.startWebdriving(config);
+        log.debug("launched pooled session {}", session);
+        return new PooledSession(key, session);
+    }
+
+    private boolean isExpired(PooledSession pooled) {
+        return pooled.uses >= maxUses || System.nanoTime() - pooled.launchedNanos >= maxAge.toNanos();
+    }
+
+    private void recycle(PooledSession pooled) {
+        recycleCount.incrementAndGet();
+        try {
+            pooled.session.close();
+        } catch (IOException | RuntimeException e) {
+            log.info("failed to close pooled session: {}", e.toString());
+        }
+    }
+
+    private void release(PooledSession pooled) {
+        boolean retained = false;
+        if (!isExpired(pooled) && reset(pooled.session.getWebDriver())) {
+            synchronized (this) {
+                if (!closed) {
+                    idle.addFirst(pooled);
+                    retained = true;
+                }
+            }
+        }
+        releasePermit();
+        if (!retained) {
+            recycle(pooled);
+        }
+    }
+
+    private void discard(PooledSession pooled, Duration quitTimeout) {
+        releasePermit();
+        recycleCount.incrementAndGet();
+        pooled.session.tryQuit(quitTimeout);
+    }
+
+    private boolean reset(WebDriver driver) {
+        try {
+            resetAction.accept(driver);
+            return true;
+        } catch (RuntimeException e) {
+            log.info("failed to reset pooled session: {}", e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Default reset action.
+     * @param driver the webdriver
+     */
+    static void resetBrowserState(WebDriver driver) {
+        if (driver instanceof JavascriptExecutor) {
+            try {
+                ((JavascriptExecutor) driver).executeScript("try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+            } catch (RuntimeException e) {
+                log.debug("failed to clear storage: {}", e.toString());
+            }
+        }
+        driver.manage().deleteAllCookies();
+        clearHttpCache(driver);
+        driver.get("about:blank");
+    }
+
+    /**
+     * Clears the HTTP cache of a Chrome browser by sending the DevTools protocol
+     * command {@code Network.clearBrowserCache} to the driver service. This method does
+     * nothing for other browsers.
+     * @param driver the webdriver
+     * @throws UncheckedIOException if the command could not be sent or was rejected
+     */
+    static void clearHttpCache(WebDriver driver) {
+        if (!(driver instanceof RemoteWebDriver)) {
+            return;
+        }
+        RemoteWebDriver remoteDriver = (RemoteWebDriver) driver;
+        CommandExecutor executor = remoteDriver.getCommandExecutor();
+        if (!BrowserType.CHROME.equals(remoteDriver.getCapabilities().getBrowserName())
+                || !(executor instanceof HttpCommandExecutor)
+                || remoteDriver.getSessionId() == null) {
+            return;
+        }
+        JsonObject command = new JsonObject();
+        command.addProperty("cmd", "Network.clearBrowserCache");
+        command.add("params", new JsonObject());
+        try {
+            String serverAddress = ((HttpCommandExecutor) executor).getAddressOfRemoteServer().toString().replaceFirst("/+$", "");
+            URL url = new URL(serverAddress + "/session/" + remoteDriver.getSessionId() + "/goog/cdp/execute");
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            try {
+                conn.setRequestMethod("POST");
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(command.toString().getBytes(UTF_8));
+                }
+                int status = conn.getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("clearing browser cache failed with status " + status);
+                }
+            } finally {
+                conn.disconnect();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quits all idle sessions. Sessions that are leased at the time this method is
+     * invoked are quit when they are closed.
+     */
+    @Override
+    public void close() {
+        List<PooledSession> quitting;
+        synchronized (this) {
+            closed = true;
+            quitting = new ArrayList<>(idle);
+            idle.clear();
+        }
+        quitting.forEach(this::recycle);
+    }
+
+    /**
+     * Gets a snapshot of this pool's metrics.
+     * @return the metrics
+     */
+    public Metrics getMetrics() {
+        int idleCount, leased;
+        synchronized (this) {
+            idleCount = idle.size();
+            leased = leasedCount;
+        }
+        return new Metrics(leaseCount.get(), hitCount.get(), recycleCount.get(), Duration.ofNanos(totalWaitNanos.get()), idleCount, leased);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("delegate", delegate)
+                .add("maxSessions", maxSessions)
+                .add("metrics", getMetrics())
+                .toString();
+    }
+
+    /**
+     * Snapshot of pool metrics.
+     */
+    public static final class Metrics {
+
+        private final long leaseCount;
+        private final long hitCount;
+        private final long recycleCount;
+        private final Duration totalWait;
+        private final int idleCount;
+        private final int leasedCount;
+
+        private Metrics(long leaseCount, long hitCount, long recycleCount, Duration totalWait, int idleCount, int leasedCount) {
+            this.leaseCount = leaseCount;
+            this.hitCount = hitCount;
+            this.recycleCount = recycleCount;
+            this.totalWait = totalWait;
+            this.idleCount = idleCount;
+            this.leasedCount = leasedCount;
+        }
+
+        /**
+         * Gets the number of sessions handed out.
+         * @return the count
+         */
+        public long getLeaseCount() {
+            return leaseCount;
+        }
+
+        /**
+         * Gets the number of sessions handed out that were reused rather than launched.
+         * @return the count
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Gets the fraction of sessions handed out that were reused.
+         * @return the hit rate, or zero if no sessions have been handed out
+         */
+        public double getHitRate() {
+            return leaseCount == 0 ? 0 : (double) hitCount / leaseCount;
+        }
+
+        /**
+         * Gets the number of sessions quit because they expired, failed to reset, or were evicted.
+         * @return the count
+         */
+        public long getRecycleCount() {
+            return recycleCount;
+        }
+
+        /**
+         * Gets the total time callers spent waiting for sessions, including launch time.
+         * @return the total wait time
+         */
+        public Duration getTotalWait() {
+            return totalWait;
+        }
+
+        /**
+         * Gets the average time callers spent waiting for a session.
+         * @return the average wait time
+         */
+        public Duration getAverageWait() {
+            return leaseCount == 0 ? Duration.ZERO : totalWait.dividedBy(leaseCount);
+        }
+
+        public int getIdleCount() {
+            return idleCount;
+        }
+
+        public int getLeasedCount() {
+            return leasedCount;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("leaseCount", leaseCount)
+                    .add("hitRate", getHitRate())
+                    .add("recycleCount", recycleCount)
+                    .add("averageWait", getAverageWait())
+                    .add("idle", idleCount)
+                    .add("leased", leasedCount)
+                    .toString();
+        }
+    }
+
+    private static class PooledSession {
+
+        public final SessionKey key;
+        public final WebdrivingSession session;
+        public final long launchedNanos;
+        public int uses;
+
+        private PooledSession(SessionKey key, WebdrivingSession session) {
+            this.key = key;
+            this.session = session;
+            launchedNanos = System.nanoTime();
+        }
+    }
+
+    private class LeasedSession implements WebdrivingSession {
+
+        private final PooledSession pooled;
+        private boolean returned;
+
+        private LeasedSession(PooledSession pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public WebDriver getWebDriver() {
+            return pooled.session.getWebDriver();
+        }
+
+        @Nullable
+        @Override
+        public DriverService getDriverService() {
+            return pooled.session.getDriverService();
+        }
+
+        @Override
+        public synchronized void tryQuit(Duration quitTimeout) throws WebdriverQuitException {
+            if (returned) {
+                return;
+            }
+            returned = true;
+            discard(pooled, quitTimeout);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (returned) {
+                return;
+            }
+            returned = true;
+            release(pooled);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("session", pooled.session)
+                    .add("uses", pooled.uses)
+                    .toString();
+        }
+    }
+
+    /**
+     * Key that identifies configurations whose sessions are interchangeable.
+     */
+    private static final class SessionKey {
+
+        private final Map<String, Object> proxy;
+        @Nullable
+        private final CertificateAndKeySource certificateAndKeySource;
+
+        private SessionKey(Map<String, Object> proxy, @Nullable CertificateAndKeySource certificateAndKeySource) {
+            this.proxy = proxy;
+            this.certificateAndKeySource = certificateAndKeySource;
+        }
+
+        public static SessionKey of(WebdrivingConfig config) {
+            WebdrivingProxyDefinition proxySpecification = config.getProxySpecification();
+            Proxy proxy = proxySpecification == null ? null : proxySpecification.createWebdrivingProxy();
+            Map<String, Object> proxyJson = proxy == null ? Collections.emptyMap() : proxy.toJson();
+            return new SessionKey(proxyJson, config.getCertificateAndKeySource());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SessionKey)) return false;
+            SessionKey that = (SessionKey) o;
+            return proxy.equals(that.proxy) && certificateAndKeySource == that.certificateAndKeySource;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(proxy, System.identityHashCode(certificateAndKeySource));
+        }
+    }
+
+    /**
+     * Builder of pooled webdriver factory instances.
+     */
+    public static final class Builder {
+
+        private final WebDriverFactory delegate;
+        private int maxSessions = 2;
+        private int maxUses = 100;
+        private Duration maxAge = Duration.ofMinutes(30);
+        private Duration waitTimeout = Duration.ofMinutes(5);
+        private Consumer<? super WebDriver> resetAction = PooledWebDriverFactory::resetBrowserState;
+
+        private Builder(WebDriverFactory delegate) {
+            this.delegate = requireNonNull(delegate, "delegate");
+        }
+
+        /**
+         * Sets the maximum number of sessions, idle or leased.
+         * @param maxSessions the maximum; must be positive
+         * @return this builder instance
+         */
+        public Builder maxSessions(int maxSessions) {
+            checkArgument(maxSessions > 0, "max sessions must be positive: %s", maxSessions);
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Sets the number of times a session may be handed out before it is quit.
+         * @param maxUses the maximum; must be positive
+         * @return this builder instance
+         */
+        public Builder maxUses(int maxUses) {
+            checkArgument(maxUses > 0, "max uses must be positive: %s", maxUses);
+            this.maxUses = maxUses;
+            return this;
+        }
+
+        /**
+         * Sets the age after which a session is quit instead of being handed out again.
+         * @param maxAge the maximum age
+         * @return this builder instance
+         */
+        public Builder maxAge(Duration maxAge) {
+            this.maxAge = requireNonNull(maxAge);
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait for a session to become available.
+         * @param waitTimeout the timeout
+         * @return this builder instance
+         */
+        public Builder waitTimeout(Duration waitTimeout) {
+            this.waitTimeout = requireNonNull(waitTimeout);
+            return this;
+        }
+
+        /**
+         * Sets the action that resets browser state when a session is returned to the pool.
+         * If the action throws an exception, the session is quit instead.
+         * @param resetAction the reset action
+         * @return this builder instance
+         */
+        public Builder resetAction(Consumer<? super WebDriver> resetAction) {
+            this.resetAction = requireNonNull(resetAction);
+            return this;
+        }
+
+        public PooledWebDriverFactory build() {
+            return new PooledWebDriverFactory(this);
+        }
+    }
+}
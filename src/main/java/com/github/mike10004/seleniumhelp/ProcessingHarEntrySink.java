@@ -0,0 +1,109 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarEntry;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sink that applies entry processors to each entry on a bounded worker pool and then
+ * passes the entry to another sink. If the pool's queue is full, the entry is processed
+ * on the thread that completed it, which slows the proxy down rather than buffering
+ * without limit. Entries may reach the downstream sink in a different order than they
+ * were completed. Processors may modify entries in place, so entries must not be used by
+ * the caller after they are passed to {@link #entryCompleted(HarEntry)}.
+ */
+class ProcessingHarEntrySink implements HarEntrySink {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessingHarEntrySink.class);
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final HarEntrySink delegate;
+    private final ImmutableList<HarEntryProcessor> processors;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public ProcessingHarEntrySink(HarEntrySink delegate, Iterable<? extends HarEntryProcessor> processors, int threads, int queueCapacity) {
+        checkArgument(threads > 0, "threads must be positive: %s", threads);
+        checkArgument(queueCapacity > 0, "queue capacity must be positive: %s", queueCapacity);
+        this.delegate = requireNonNull(delegate);
+        this.processors = ImmutableList.copyOf(processors);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("har-entry-processor-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public void entryCompleted(HarEntry entry) {
+        requireNonNull(entry, "entry");
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                processAndForward(entry);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    private void processAndForward(HarEntry entry) {
+        for (HarEntryProcessor processor : processors) {
+            try {
+                processor.process(entry);
+            } catch (RuntimeException e) {
+                log.warn("entry processor {} failed on {}", processor, entry.getRequest() == null ? null : entry.getRequest().getUrl(), e);
+            }
+        }
+        try {
+            delegate.entryCompleted(entry);
+        } catch (IOException | RuntimeException e) {
+            log.error("failed to write entry for " + (entry.getRequest() == null ? null : entry.getRequest().getUrl()), e);
+        }
+    }
+
+    /**
+     * Waits for entries already accepted to be processed and then closes the downstream sink.
+     * If processing does not finish within the timeout or the wait is interrupted, the entries
+     * not yet forwarded are dropped and their number is logged.
+     * @throws IOException if closing the downstream sink fails
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+                log.warn("entry processing did not finish within {} seconds; {} entries dropped", CLOSE_TIMEOUT_SECONDS, pending.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            log.warn("interrupted while waiting for entry processing; {} entries dropped", pending.get());
+        } finally {
+            delegate.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("delegate", delegate)
+                .add("processors.size", processors.size())
+                .add("poolSize", executor.getPoolSize())
+                .add("pending", pending.get())
+                .toString();
+    }
+}
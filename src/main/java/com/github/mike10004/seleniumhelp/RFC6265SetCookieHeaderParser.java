@@ -79,6 +79,23 @@ class RFC6265SetCookieHeaderParser implements SetCookieHeaderParser {
             buffer.append(s);
             cursor = new ParserCursor(0, buffer.length());
         }
+        return parse(buffer, cursor, origin, creationDate);
+    }
+
+    /**
+     * Parses a header value directly, without wrapping it in a header object.
+     */
+    @Override
+    public List<Cookie> parse(String setCookieHeaderValue, CookieOrigin origin, @Nullable Instant creationDate) throws MalformedCookieException {
+        requireNonNull(setCookieHeaderValue, "Header value");
+        requireNonNull(origin, "Cookie origin");
+        final CharArrayBuffer buffer = new CharArrayBuffer(setCookieHeaderValue.length());
+        buffer.append(setCookieHeaderValue);
+        return parse(buffer, new ParserCursor(0, buffer.length()), origin, creationDate);
+    }
+
+    private List<Cookie> parse(final CharArrayBuffer buffer, final ParserCursor cursor, final CookieOrigin origin, final @Nullable Instant creationDate) throws MalformedCookieException {
+        final int valueStart = cursor.getPos();
         final String name = tokenParser.parseToken(buffer, cursor, TOKEN_DELIMS);
         if (name.length() == 0) {
             return Collections.emptyList();
@@ -89,7 +106,7 @@ class RFC6265SetCookieHeaderParser implements SetCookieHeaderParser {
         final int valueDelim = buffer.charAt(cursor.getPos());
         cursor.updatePos(cursor.getPos() + 1);
         if (valueDelim != '=') {
-            throw new MalformedCookieException("Cookie value is invalid: '" + header.toString() + "'");
+            throw new MalformedCookieException("Cookie value is invalid: '" + SM.SET_COOKIE + ": " + buffer.substring(valueStart, buffer.length()) + "'");
         }
         final String value = tokenParser.parseValue(buffer, cursor, VALUE_DELIMS);
         if (!cursor.atEnd()) {
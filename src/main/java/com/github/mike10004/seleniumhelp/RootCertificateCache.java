@@ -0,0 +1,372 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Cache of a generated root certificate and key in a local directory, so that the
+ * certificate can be reused across JVM runs instead of being generated anew by each
+ * {@link AutoCertificateAndKeySource}. The cache directory and files are readable only
+ * by the owner, where the file system supports POSIX permissions. A cached certificate
+ * older than the maximum age is replaced by a new one, as is a cached keystore that
+ * cannot be opened with the stored password. Access by concurrent JVMs is coordinated
+ * with a lock file, and access by instances within a JVM that share a directory is
+ * coordinated with a lock per directory. Roots with keys of different algorithms are
+ * stored in separate files, so they may share a directory.
+ */
+public final class RootCertificateCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RootCertificateCache.class);
+
+    /**
+     * Default maximum age of a cached certificate. The generated certificates are valid
+     * for much longer, so a certificate is never used close to its expiry.
+     */
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(30);
+
+    private static final String FILENAME_STEM = "root-ca";
+    private static final String KEYSTORE_SUFFIX = ".p12";
+    private static final String METADATA_SUFFIX = ".properties";
+    private static final String LOCK_FILENAME = "root-ca.lock";
+    private static final String PROP_PASSWORD = "password";
+    private static final String PROP_CREATED = "created";
+
+    private static final ConcurrentMap<Path, RootCertificateCache> instances = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Path, Object> directoryLocks = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final Clock clock;
+    private final Map<CertificateKeyAlgorithm, CachedRoot> roots = new EnumMap<>(CertificateKeyAlgorithm.class);
+
+    @VisibleForTesting
+    RootCertificateCache(Path directory, Clock clock) {
+        this.directory = requireNonNull(directory);
+        this.clock = requireNonNull(clock);
+    }
+
+    /**
+     * Gets the process-wide instance for a directory.
+     * @param directory the cache directory; created if it does not exist
+     * @return the instance
+     */
+    public static RootCertificateCache getInstance(Path directory) {
+        Path key = directory.toAbsolutePath().normalize();
+        return instances.computeIfAbsent(key, k -> new RootCertificateCache(k, Clock.systemUTC()));
+    }
+
+    /**
+     * Gets the process-wide instance for the default directory,
+     * {@code .cache/selenium-capture/root-ca} in the user's home directory.
+     * @return the instance
+     */
+    public static RootCertificateCache getDefault() {
+        return getInstance(Paths.get(System.getProperty("user.home"), ".cache", "selenium-capture", "root-ca"));
+    }
+
+    /**
+     * Acquires a root certificate with the default maximum age.
+     * @return the cached root
+     * @throws IOException on I/O error
+     * @see #DEFAULT_MAX_AGE
+     */
+    public CachedRoot acquire() throws IOException {
+        return acquire(DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Acquires a root certificate with an RSA key.
+     * @param maxAge the maximum age of the certificate
+     * @return the cached root
+     * @throws IOException on I/O error
+     */
+    public CachedRoot acquire(Duration maxAge) throws IOException {
+        return acquire(maxAge, CertificateKeyAlgorithm.RSA);
+    }
+
+    /**
+     * Acquires a root certificate. If a certificate with a key of the given algorithm and
+     * no older than the maximum age has been loaded by this instance or stored in the
+     * directory, it is returned; otherwise a new certificate is generated and stored in
+     * the directory.
+     * @param maxAge the maximum age of the certificate
+     * @param keyAlgorithm the algorithm of the certificate key
+     * @return the cached root
+     * @throws IOException on I/O error
+     */
+    public synchronized CachedRoot acquire(Duration maxAge, CertificateKeyAlgorithm keyAlgorithm) throws IOException {
+        checkArgument(!maxAge.isNegative(), "max age must be nonnegative: %s", maxAge);
+        requireNonNull(keyAlgorithm, "keyAlgorithm");
+        Instant now = clock.instant();
+        @Nullable CachedRoot root = roots.get(keyAlgorithm);
+        if (root != null && !root.isExpired(now, maxAge)) {
+            return root;
+        }
+        createDirectory();
+        // a file lock is held by the JVM, so instances that share a directory must also be serialized in the JVM
+        synchronized (directoryLocks.computeIfAbsent(directory.toRealPath(), k -> new Object())) {
+            try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILENAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    @Nullable CachedRoot stored = readStored(keyAlgorithm);
+                    if (stored != null && !stored.isExpired(now, maxAge)) {
+                        log.debug("reusing {} root certificate created {} in {}", keyAlgorithm, stored.getCreated(), directory);
+                        root = stored;
+                    } else {
+                        root = generateAndStore(now, keyAlgorithm);
+                    }
+                    roots.put(keyAlgorithm, root);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Creates a certificate and key source that acquires its root certificate from this cache.
+     * @return a new certificate and key source
+     */
+    public AutoCertificateAndKeySource createCertificateAndKeySource() {
+        return createCertificateAndKeySource(DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Creates a certificate and key source that acquires its root certificate, with an RSA key,
+     * from this cache.
+     * @param maxAge the maximum age of the certificate
+     * @return a new certificate and key source
+     */
+    public AutoCertificateAndKeySource createCertificateAndKeySource(Duration maxAge) {
+        return createCertificateAndKeySource(maxAge, CertificateKeyAlgorithm.RSA);
+    }
+
+    /**
+     * Creates a certificate and key source that acquires its root certificate from this cache.
+     * @param maxAge the maximum age of the certificate
+     * @param keyAlgorithm the algorithm of the certificate key
+     * @return a new certificate and key source
+     */
+    public AutoCertificateAndKeySource createCertificateAndKeySource(Duration maxAge, CertificateKeyAlgorithm keyAlgorithm) {
+        return new CachedCertificateAndKeySource(this, maxAge, keyAlgorithm);
+    }
+
+    /**
+     * Gets the stem of the names of the files that store a root certificate. RSA roots use
+     * the stem that predates the choice of algorithm, so previously cached roots are reused.
+     */
+    private static String getFilenameStem(CertificateKeyAlgorithm keyAlgorithm) {
+        if (keyAlgorithm == CertificateKeyAlgorithm.RSA) {
+            return FILENAME_STEM;
+        }
+        return FILENAME_STEM + "-" + keyAlgorithm.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    private static boolean isPosix() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+    private void createDirectory() throws IOException {
+        if (isPosix()) {
+            Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(ownerOnly));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    @Nullable
+    private CachedRoot readStored(CertificateKeyAlgorithm keyAlgorithm) throws IOException {
+        Properties metadata = new Properties();
+        byte[] keystoreBytes;
+        String stem = getFilenameStem(keyAlgorithm);
+        try (InputStream in = Files.newInputStream(directory.resolve(stem + METADATA_SUFFIX))) {
+            metadata.load(in);
+            keystoreBytes = Files.readAllBytes(directory.resolve(stem + KEYSTORE_SUFFIX));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        String password = metadata.getProperty(PROP_PASSWORD);
+        String created = metadata.getProperty(PROP_CREATED);
+        if (password == null || created == null || keystoreBytes.length == 0) {
+            log.info("ignoring incomplete root certificate cache in {}", directory);
+            return null;
+        }
+        Instant createdInstant;
+        try {
+            createdInstant = Instant.parse(created);
+        } catch (java.time.format.DateTimeParseException e) {
+            log.info("ignoring root certificate cache with invalid creation time {} in {}", created, directory);
+            return null;
+        }
+        // the keystore and metadata files are replaced separately, so they may not match after a crash
+        if (!isLoadable(keystoreBytes, password)) {
+            log.info("ignoring root certificate cache whose keystore cannot be opened with the stored password in {}", directory);
+            return null;
+        }
+        return new CachedRoot(keystoreBytes, password, createdInstant, keyAlgorithm);
+    }
+
+    private static boolean isLoadable(byte[] keystoreBytes, String password) {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(AutoCertificateAndKeySource.KEYSTORE_TYPE);
+            keyStore.load(new ByteArrayInputStream(keystoreBytes), password.toCharArray());
+            return keyStore.getKey(AutoCertificateAndKeySource.KEYSTORE_PRIVATE_KEY_ALIAS, password.toCharArray()) != null;
+        } catch (IOException | GeneralSecurityException e) {
+            log.debug("failed to load cached keystore: {}", e.toString());
+            return false;
+        }
+    }
+
+    private CachedRoot generateAndStore(Instant now, CertificateKeyAlgorithm keyAlgorithm) throws IOException {
+        byte[] passwordBytes = new byte[32];
+        new SecureRandom().nextBytes(passwordBytes);
+        String password = Base64.getEncoder().encodeToString(passwordBytes);
+        Path keystoreTemp = createOwnerOnlyTempFile(".p12");
+        Path metadataTemp = createOwnerOnlyTempFile(".properties");
+        try {
+            byte[] keystoreBytes = AutoCertificateAndKeySource.generateKeystoreBytes(password, keyAlgorithm);
+            Files.write(keystoreTemp, keystoreBytes);
+            Properties metadata = new Properties();
+            metadata.setProperty(PROP_PASSWORD, password);
+            metadata.setProperty(PROP_CREATED, now.toString());
+            try (OutputStream out = Files.newOutputStream(metadataTemp)) {
+                metadata.store(out, null);
+            }
+            String stem = getFilenameStem(keyAlgorithm);
+            Files.move(keystoreTemp, directory.resolve(stem + KEYSTORE_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(metadataTemp, directory.resolve(stem + METADATA_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("stored new {} root certificate in {}", keyAlgorithm, directory);
+            return new CachedRoot(keystoreBytes, password, now, keyAlgorithm);
+        } finally {
+            Files.deleteIfExists(keystoreTemp);
+            Files.deleteIfExists(metadataTemp);
+        }
+    }
+
+    private Path createOwnerOnlyTempFile(String suffix) throws IOException {
+        FileAttribute<?>[] attributes = isPosix()
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+        return Files.createTempFile(directory, "root-ca", suffix, attributes);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("directory", directory)
+                .toString();
+    }
+
+    /**
+     * Root certificate and key in a PKCS12 keystore, with the keystore password.
+     */
+    public static final class CachedRoot {
+
+        private final byte[] keystoreBytes;
+        private final String password;
+        private final Instant created;
+        private final CertificateKeyAlgorithm keyAlgorithm;
+
+        private CachedRoot(byte[] keystoreBytes, String password, Instant created, CertificateKeyAlgorithm keyAlgorithm) {
+            this.keystoreBytes = requireNonNull(keystoreBytes);
+            this.password = requireNonNull(password);
+            this.created = requireNonNull(created);
+            this.keyAlgorithm = requireNonNull(keyAlgorithm);
+        }
+
+        /**
+         * Gets a copy of the keystore bytes.
+         * @return the keystore bytes
+         */
+        public byte[] getKeystoreBytes() {
+            return keystoreBytes.clone();
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public Instant getCreated() {
+            return created;
+        }
+
+        public CertificateKeyAlgorithm getKeyAlgorithm() {
+            return keyAlgorithm;
+        }
+
+        private boolean isExpired(Instant now, Duration maxAge) {
+            return created.plus(maxAge).isBefore(now);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("keystoreBytes.length", keystoreBytes.length)
+                    .add("created", created)
+                    .add("keyAlgorithm", keyAlgorithm)
+                    .toString();
+        }
+    }
+
+    private static final class CachedCertificateAndKeySource extends AutoCertificateAndKeySource {
+
+        private final RootCertificateCache cache;
+        private final Duration maxAge;
+        private final CertificateKeyAlgorithm keyAlgorithm;
+
+        public CachedCertificateAndKeySource(RootCertificateCache cache, Duration maxAge, CertificateKeyAlgorithm keyAlgorithm) {
+            super(cache.getDirectory(), keyAlgorithm);
+            this.cache = cache;
+            this.maxAge = requireNonNull(maxAge);
+            this.keyAlgorithm = keyAlgorithm;
+        }
+
+        @Override
+        protected MemoryKeyStoreCertificateSource createSource() throws IOException {
+            CachedRoot root = cache.acquire(maxAge, keyAlgorithm);
+            return new MemoryKeyStoreCertificateSource(KEYSTORE_TYPE, root.getKeystoreBytes(), KEYSTORE_PRIVATE_KEY_ALIAS, root.getPassword());
+        }
+    }
+}
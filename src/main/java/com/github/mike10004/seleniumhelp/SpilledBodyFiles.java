@@ -0,0 +1,40 @@
+package com.github.mike10004.seleniumhelp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Set of the files to which bodies are spilled during a collection session, so that
+ * they can be deleted when the session ends.
+ * @see BodyCaptureLimits.Builder#keepSpilledFiles()
+ */
+class SpilledBodyFiles {
+
+    private static final Logger log = LoggerFactory.getLogger(SpilledBodyFiles.class);
+
+    private final Set<File> files = ConcurrentHashMap.newKeySet();
+
+    public void add(File file) {
+        files.add(requireNonNull(file));
+    }
+
+    /**
+     * Deletes the files added so far.
+     */
+    public void deleteAll() {
+        for (Iterator<File> it = files.iterator(); it.hasNext(); ) {
+            File file = it.next();
+            it.remove();
+            if (!file.delete() && file.exists()) {
+                log.warn("failed to delete body file {}", file);
+            }
+        }
+    }
+}
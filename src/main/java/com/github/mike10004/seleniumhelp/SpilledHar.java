@@ -0,0 +1,121 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.HarReaderMode;
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarCreatorBrowser;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarLog;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.MoreObjects;
+import io.github.mike10004.seleniumcapture.HarCodec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lazy handle to HAR entries that were written to a file during a collection session.
+ * The file contains one JSON-serialized entry per line. Nothing is read from the file
+ * until {@link #streamEntries()} or {@link #toHar()} is invoked.
+ * @see TrafficCollector.Builder#spillHarEntries(java.nio.file.Path)
+ */
+public class SpilledHar {
+
+    private static final String CREATOR_NAME = "selenium-capture";
+
+    private final File entriesFile;
+
+    /**
+     * Constructs an instance.
+     * @param entriesFile file containing entries in newline-delimited JSON format
+     */
+    public SpilledHar(File entriesFile) {
+        this.entriesFile = requireNonNull(entriesFile, "entriesFile");
+    }
+
+    /**
+     * Gets the file that contains the entries.
+     * @return the entries file
+     */
+    public File getEntriesFile() {
+        return entriesFile;
+    }
+
+    /**
+     * Opens a stream of entries read from the file. The stream holds an open file handle,
+     * so it should be closed after use, e.g. in a try-with-resources block.
+     * @return a stream of entries
+     * @throws IOException if the file cannot be opened
+     */
+    public Stream<HarEntry> streamEntries() throws IOException {
+        ObjectReader entryReader = HarCodec.getInstance(HarReaderMode.LAX).getEntryReader();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(entriesFile), StandardCharsets.UTF_8));
+        try {
+            return reader.lines()
+                    .filter(line -> !line.isEmpty())
+                    .map(line -> {
+                        try {
+                            return entryReader.<HarEntry>readValue(line);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }).onClose(() -> {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads all entries into memory and returns a HAR containing them.
+     * @return a new HAR instance
+     * @throws IOException on I/O error
+     */
+    public Har toHar() throws IOException {
+        List<HarEntry> entries;
+        try (Stream<HarEntry> stream = streamEntries()) {
+            entries = stream.collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Har har = createSkeleton();
+        har.getLog().setEntries(entries);
+        return har;
+    }
+
+    /**
+     * Creates a HAR object that has a log but no entries.
+     * @return a new HAR instance
+     */
+    static Har createSkeleton() {
+        HarCreatorBrowser creator = new HarCreatorBrowser();
+        creator.setName(CREATOR_NAME);
+        HarLog log = new HarLog();
+        log.setCreator(creator);
+        Har har = new Har();
+        har.setLog(log);
+        return har;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("entriesFile", entriesFile)
+                .toString();
+    }
+}
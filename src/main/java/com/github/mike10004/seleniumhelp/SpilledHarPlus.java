@@ -0,0 +1,63 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarEntry;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Result of a traffic capture session whose HAR entries were written to disk as they
+ * were completed. The {@link #har} field of an instance of this class contains a log
+ * without any entries; use {@link #spilled} or {@link #streamEntries()} to access them.
+ * @param <T> result type
+ * @see TrafficCollector.Builder#spillHarEntries(java.nio.file.Path)
+ */
+public class SpilledHarPlus<T> extends HarPlus<T> {
+
+    /**
+     * Handle to the file containing the HAR entries.
+     */
+    public final SpilledHar spilled;
+
+    /**
+     * Constructs an instance.
+     * @param spilled the handle to the entries file
+     * @param result a result object
+     */
+    public SpilledHarPlus(SpilledHar spilled, T result) {
+        super(SpilledHar.createSkeleton(), result);
+        this.spilled = requireNonNull(spilled, "spilled");
+    }
+
+    /**
+     * Opens a stream of entries read lazily from the entries file.
+     * @return a stream of entries that should be closed after use
+     * @throws IOException on I/O error
+     */
+    @Override
+    public Stream<HarEntry> streamEntries() throws IOException {
+        return spilled.streamEntries();
+    }
+
+    @Override
+    public String toString() {
+        return "SpilledHarPlus{" +
+                "spilled=" + spilled +
+                ", result=" + result +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) return false;
+        SpilledHarPlus<?> that = (SpilledHarPlus<?>) o;
+        return spilled.getEntriesFile().equals(that.spilled.getEntriesFile());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + spilled.getEntriesFile().hashCode();
+    }
+}
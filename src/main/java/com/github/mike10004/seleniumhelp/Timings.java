@@ -0,0 +1,238 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarTiming;
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Value class that represents the phases of a request/response interaction as observed
+ * by the capturing proxy. Durations are measured with a monotonic clock. A phase that did
+ * not occur, such as DNS resolution or connection establishment for a request sent over
+ * a reused connection, has duration {@link #NOT_APPLICABLE}.
+ * @see TrafficMonitor#responseReceived(ImmutableHttpRequest, ImmutableHttpResponse, Timings)
+ */
+public final class Timings {
+
+    /**
+     * Value returned for the duration of a phase that did not occur or was not observed.
+     */
+    public static final long NOT_APPLICABLE = -1;
+
+    private static final Timings UNKNOWN = new Timings(NOT_APPLICABLE, NOT_APPLICABLE, NOT_APPLICABLE, NOT_APPLICABLE, NOT_APPLICABLE, NOT_APPLICABLE, NOT_APPLICABLE, NOT_APPLICABLE);
+
+    private final long blockedNanos;
+    private final long dnsNanos;
+    private final long connectNanos;
+    private final long sslNanos;
+    private final long sendNanos;
+    private final long waitNanos;
+    private final long receiveNanos;
+    private final long totalNanos;
+
+    private Timings(long blockedNanos, long dnsNanos, long connectNanos, long sslNanos, long sendNanos, long waitNanos, long receiveNanos, long totalNanos) {
+        this.blockedNanos = blockedNanos;
+        this.dnsNanos = dnsNanos;
+        this.connectNanos = connectNanos;
+        this.sslNanos = sslNanos;
+        this.sendNanos = sendNanos;
+        this.waitNanos = waitNanos;
+        this.receiveNanos = receiveNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Returns an instance in which no phase was observed.
+     * @return the instance
+     */
+    public static Timings unknown() {
+        return UNKNOWN;
+    }
+
+    private static long convert(long nanos, TimeUnit unit) {
+        return nanos < 0 ? NOT_APPLICABLE : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the time spent waiting for a connection to the remote server to become available.
+     * The time spent resolving the hostname is excluded; see {@link #getDns(TimeUnit)}.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getBlocked(TimeUnit unit) {
+        return convert(blockedNanos, unit);
+    }
+
+    /**
+     * Gets the time spent resolving the remote server hostname.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getDns(TimeUnit unit) {
+        return convert(dnsNanos, unit);
+    }
+
+    /**
+     * Gets the time spent establishing a connection to the remote server, including the
+     * TLS handshake if there is one.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getConnect(TimeUnit unit) {
+        return convert(connectNanos, unit);
+    }
+
+    /**
+     * Gets the time spent on the TLS handshake with the remote server.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getSsl(TimeUnit unit) {
+        return convert(sslNanos, unit);
+    }
+
+    /**
+     * Gets the time spent sending the request to the remote server.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getSend(TimeUnit unit) {
+        return convert(sendNanos, unit);
+    }
+
+    /**
+     * Gets the time between sending the request and beginning to receive the response.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getWait(TimeUnit unit) {
+        return convert(waitNanos, unit);
+    }
+
+    /**
+     * Gets the time spent receiving the response.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getReceive(TimeUnit unit) {
+        return convert(receiveNanos, unit);
+    }
+
+    /**
+     * Gets the time between receiving the request from the client and completing the interaction.
+     * @param unit the unit
+     * @return the duration, or {@link #NOT_APPLICABLE}
+     */
+    public long getTotal(TimeUnit unit) {
+        return convert(totalNanos, unit);
+    }
+
+    /**
+     * Creates a HAR timing object from this instance. Durations are expressed in milliseconds,
+     * and phases that did not occur are set to -1, as the HAR specification requires.
+     * @return a new HAR timing object
+     */
+    public HarTiming toHarTiming() {
+        HarTiming timing = new HarTiming();
+        timing.setBlocked(toHarMillis(blockedNanos));
+        timing.setDns(toHarMillis(dnsNanos));
+        timing.setConnect(toHarMillis(connectNanos));
+        timing.setSsl(toHarMillis(sslNanos));
+        timing.setSend((int) Math.max(0, getSend(TimeUnit.MILLISECONDS)));
+        timing.setWait((int) Math.max(0, getWait(TimeUnit.MILLISECONDS)));
+        timing.setReceive((int) Math.max(0, getReceive(TimeUnit.MILLISECONDS)));
+        return timing;
+    }
+
+    private static int toHarMillis(long nanos) {
+        return (int) convert(nanos, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        MoreObjects.ToStringHelper h = MoreObjects.toStringHelper(this);
+        h.add("blocked", blockedNanos);
+        h.add("dns", dnsNanos);
+        h.add("connect", connectNanos);
+        h.add("ssl", sslNanos);
+        h.add("send", sendNanos);
+        h.add("wait", waitNanos);
+        h.add("receive", receiveNanos);
+        h.add("total", totalNanos);
+        return h.toString();
+    }
+
+    /**
+     * Enumeration of events that mark the boundaries of interaction phases.
+     */
+    enum Event {
+        REQUEST_RECEIVED,
+        CONNECTION_QUEUED,
+        RESOLUTION_STARTED,
+        RESOLUTION_FINISHED,
+        CONNECTION_STARTED,
+        SSL_HANDSHAKE_STARTED,
+        CONNECTION_SUCCEEDED,
+        REQUEST_SENDING,
+        REQUEST_SENT,
+        RESPONSE_RECEIVING,
+        RESPONSE_RECEIVED
+    }
+
+    /**
+     * Recorder of event timestamps. Only the first occurrence of each event is recorded.
+     * Recording an event costs one {@link System#nanoTime()} call and a compare-and-set,
+     * so events may be recorded from any thread.
+     */
+    static final class Recorder {
+
+        private static final long UNSET = 0;
+
+        private final AtomicLongArray timestamps = new AtomicLongArray(Event.values().length);
+
+        /**
+         * Records the current time for an event if the event has not already been recorded.
+         * @param event the event
+         */
+        public void record(Event event) {
+            int i = event.ordinal();
+            if (timestamps.get(i) == UNSET) {
+                long now = System.nanoTime();
+                timestamps.compareAndSet(i, UNSET, now == UNSET ? 1 : now);
+            }
+        }
+
+        private long between(Event start, Event end) {
+            long t0 = timestamps.get(start.ordinal()), t1 = timestamps.get(end.ordinal());
+            if (t0 == UNSET || t1 == UNSET) {
+                return NOT_APPLICABLE;
+            }
+            return Math.max(0, t1 - t0);
+        }
+
+        /**
+         * Computes timings from the events recorded so far, treating the current time
+         * as the end of the interaction.
+         * @return the timings
+         */
+        public Timings finish() {
+            long total = NOT_APPLICABLE;
+            long started = timestamps.get(Event.REQUEST_RECEIVED.ordinal());
+            if (started != UNSET) {
+                total = Math.max(0, System.nanoTime() - started);
+            }
+            // resolution happens between queueing and connecting, and is reported as dns
+            Event blockedEnd = timestamps.get(Event.RESOLUTION_STARTED.ordinal()) != UNSET
+                    ? Event.RESOLUTION_STARTED : Event.CONNECTION_STARTED;
+            return new Timings(between(Event.CONNECTION_QUEUED, blockedEnd),
+                    between(Event.RESOLUTION_STARTED, Event.RESOLUTION_FINISHED),
+                    between(Event.CONNECTION_STARTED, Event.CONNECTION_SUCCEEDED),
+                    between(Event.SSL_HANDSHAKE_STARTED, Event.CONNECTION_SUCCEEDED),
+                    between(Event.REQUEST_SENDING, Event.REQUEST_SENT),
+                    between(Event.REQUEST_SENT, Event.RESPONSE_RECEIVING),
+                    between(Event.RESPONSE_RECEIVING, Event.RESPONSE_RECEIVED),
+                    total);
+        }
+    }
+}
@@ -3,17 +3,21 @@ package com.github.mike10004.seleniumhelp;
 import com.browserup.bup.BrowserUpProxy;
 import com.browserup.bup.BrowserUpProxyServer;
 import com.browserup.bup.mitm.CertificateAndKeySource;
+import com.browserup.harreader.model.Har;
+import io.github.mike10004.seleniumcapture.HarBodyStore;
 import org.littleshoot.proxy.HttpFiltersSource;
 import org.openqa.selenium.WebDriverException;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Supplier;
 
+import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -67,6 +71,20 @@ public interface TrafficCollector {
      */
     <R> R drive(TrafficGenerator<R> generator) throws IOException, WebDriverException;
 
+    /**
+     * Collects traffic generated by each of the given generators, running up to
+     * {@code parallelism} sessions at once. Each session is an invocation of
+     * {@link #collect(TrafficGenerator)}, so each generator gets its own proxy and
+     * webdriving session. Outcomes are returned in order of completion.
+     * @param generators the generators
+     * @param parallelism maximum number of concurrent sessions
+     * @param <R> type of result the generators return
+     * @return a batch that yields the outcome of each session as it completes; close it to abandon the batch
+     */
+    default <R> BatchCollection<R> collectAll(Collection<? extends TrafficGenerator<R>> generators, int parallelism) {
+        return new BatchCollection<>(this, generators, parallelism);
+    }
+
     /**
      * Returns a new builder instance.
      * @param webDriverFactory the webdriver factory
@@ -88,6 +106,7 @@ public interface TrafficCollector {
         private Supplier<? extends BrowserUpProxy> interceptingProxyInstantiator = BrowserUpProxyServer::new;
         private final List<HarPostProcessor> harPostProcessors = new ArrayList<>();
         private ExceptionReactor exceptionReactor = ExceptionReactor.PROPAGATE;
+        private final TrafficCollectorSettings.Builder settings = TrafficCollectorSettings.builder();
 
         Builder(WebDriverFactory webDriverFactory) {
             this.webDriverFactory = requireNonNull(webDriverFactory);
@@ -203,15 +222,146 @@ public interface TrafficCollector {
             return this;
         }
 
+        /**
+         * Configures the collector to process each HAR entry with the given instance as soon
+         * as the corresponding interaction is completed. Entries are processed concurrently
+         * with traffic generation, before any {@link #harPostProcessor(HarPostProcessor) HAR post-processors}
+         * are applied to the whole HAR. Entry processors require the
+         * {@link HarCaptureMode#PER_ENTRY per-entry} HAR capture mode or
+         * {@link #spillHarEntries(Path) spilling}.
+         * @param harEntryProcessor the entry processor
+         * @return this builder instance
+         */
+        public Builder harEntryProcessor(HarEntryProcessor harEntryProcessor) {
+            settings.harEntryProcessor(harEntryProcessor);
+            return this;
+        }
+
+        /**
+         * Sets the number of threads on which HAR entries are processed. The default is 2.
+         * @param threads the number of threads
+         * @return this builder instance
+         * @see #harEntryProcessor(HarEntryProcessor)
+         */
+        public Builder harEntryProcessorThreads(int threads) {
+            settings.harEntryProcessorThreads(threads);
+            return this;
+        }
+
+        /**
+         * Configures the collector to keep response bodies in a content-addressed store
+         * instead of the HAR. Each distinct body is written once, and HAR responses carry
+         * references to the stored bodies. Use {@link HarBodyStore#resolveLazily(Har)} to
+         * restore content text when reading such a HAR. A body store requires the
+         * {@link HarCaptureMode#PER_ENTRY per-entry} HAR capture mode or
+         * {@link #spillHarEntries(Path) spilling}.
+         * @param bodyStore the body store
+         * @return this builder instance
+         */
+        public Builder bodyStore(HarBodyStore bodyStore) {
+            settings.bodyStore(bodyStore);
+            return this;
+        }
+
+        /**
+         * Configures the cache of impersonating certificates used to capture HTTPS traffic.
+         * By default, the {@link ImpersonationCache#getDefault() process-wide cache} is used,
+         * so collectors that use the same root certificate share impersonating certificates.
+         * @param impersonationCache the cache
+         * @return this builder instance
+         */
+        public Builder impersonationCache(ImpersonationCache impersonationCache) {
+            settings.impersonationCache(impersonationCache);
+            return this;
+        }
+
+        /**
+         * Configures the algorithm of the keys of impersonating certificates used to capture
+         * HTTPS traffic. By default, RSA keys are used. Elliptic-curve keys make impersonation
+         * and handshakes faster; the algorithm of the root certificate key is determined by
+         * the {@link #collectHttps(CertificateAndKeySource) certificate and key source}.
+         * @param keyAlgorithm the key algorithm
+         * @return this builder instance
+         * @see AutoCertificateAndKeySource#AutoCertificateAndKeySource(Path, CertificateKeyAlgorithm)
+         */
+        public Builder impersonationKeyAlgorithm(CertificateKeyAlgorithm keyAlgorithm) {
+            settings.impersonationKeyAlgorithm(keyAlgorithm);
+            return this;
+        }
+
+        /**
+         * Configures the collector to write each HAR entry to a file as soon as the
+         * corresponding request/response interaction is completed, instead of accumulating
+         * the entire HAR in memory. A new file is created in the given directory for each
+         * invocation of {@link TrafficCollector#collect(TrafficGenerator, TrafficMonitor)},
+         * and the returned object is a {@link SpilledHarPlus} that provides lazy access
+         * to the entries. The caller is responsible for deleting the files.
+         *
+         * <p>HAR post-processors are not supported in this mode, because they require the
+         * entire HAR to be in memory. {@link #harEntryProcessor(HarEntryProcessor) HAR entry processors}
+         * are supported.
+         * @param directory the directory in which entries files are to be created
+         * @return this builder instance
+         */
+        public Builder spillHarEntries(Path directory) {
+            settings.spillHarEntries(directory);
+            return this;
+        }
+
+        /**
+         * Configures the collector to lease started proxies from the given pool instead of
+         * starting and stopping a proxy for each collection session. The HAR, capture
+         * filters, and monitor are reset on each lease. Proxies created for the pool are
+         * instantiated with this builder's intercepting proxy instantiator rather than the
+         * pool's. The caller is responsible for closing the pool.
+         * @param proxyPool the pool
+         * @return this builder instance
+         */
+        public Builder proxyPool(BrowserUpProxyPool proxyPool) {
+            settings.proxyPool(proxyPool);
+            return this;
+        }
+
+        /**
+         * Configures the mode that determines which filter assembles captured HARs. By default,
+         * the {@link HarCaptureMode#PROXY proxy's HAR capture filter} is used. Select
+         * {@link HarCaptureMode#PER_ENTRY} to apply the {@link #capturePolicy(CapturePolicy) capture policy}
+         * to the HAR or to use entry processors or a body store; see that constant for the ways
+         * in which the HAR differs. Only the per-entry mode holds entries in compact form, and
+         * it compacts headers only, not content. Spilled HARs are always assembled per entry.
+         * @param harCaptureMode the mode
+         * @return this builder instance
+         */
+        public Builder harCaptureMode(HarCaptureMode harCaptureMode) {
+            settings.harCaptureMode(harCaptureMode);
+            return this;
+        }
+
+        /**
+         * Configures the collector to capture request and response bodies according to the
+         * given policy. The policy applies to monitor notifications; bodies that are not
+         * captured are neither buffered nor decompressed. The policy applies to captured HARs
+         * only in the {@link HarCaptureMode#PER_ENTRY per-entry} HAR capture mode or when
+         * {@link #spillHarEntries(Path) spilling}; otherwise the HAR contains what the
+         * proxy's HAR capture filter captures.
+         * @param capturePolicy the policy
+         * @return this builder instance
+         */
+        public Builder capturePolicy(CapturePolicy capturePolicy) {
+            settings.capturePolicy(capturePolicy);
+            return this;
+        }
+
         /**
          * Builds a collector instance.
          * @return a new collector instance
          */
         public TrafficCollector build() {
+            checkState(!settings.isSpilling() || harPostProcessors.isEmpty(), "HAR post-processors are not supported when spilling HAR entries");
             return new TrafficCollectorImpl(webDriverFactory,
                     certificateAndKeySource, upstreamConfigurator,
                     httpFiltersSources, interceptingProxyInstantiator,
-                    harPostProcessors, exceptionReactor);
+                    harPostProcessors, exceptionReactor, settings.build());
         }
 
     }
@@ -4,6 +4,8 @@ import com.browserup.harreader.model.Har;
 import com.google.common.annotations.Beta;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+import io.github.mike10004.seleniumcapture.HarBodyStore;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpRequest;
 import com.browserup.bup.BrowserUpProxy;
@@ -17,12 +19,17 @@ import org.littleshoot.proxy.MitmManager;
 import org.littleshoot.proxy.impl.ProxyUtils;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriverException;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.file.Path;
 import java.util.EnumSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
@@ -41,6 +48,26 @@ public class TrafficCollectorImpl implements TrafficCollector {
     private final Supplier<? extends BrowserUpProxy> interceptingProxyInstantiator;
     private final ImmutableList<HarPostProcessor> harPostProcessors;
     private final ExceptionReactor exceptionReactor;
+    @Nullable
+    private final Path harEntriesSpillDir;
+    @Nullable
+    private final BrowserUpProxyPool proxyPool;
+    private final HarCaptureMode harCaptureMode;
+    private final CapturePolicy capturePolicy;
+    private final ImmutableList<HarEntryProcessor> harEntryProcessors;
+    private final int harEntryProcessorThreads;
+    @Nullable
+    private final HarBodyStore bodyStore;
+    private final ImpersonationCache impersonationCache;
+    private final CertificateKeyAlgorithm impersonationKeyAlgorithm;
+    /**
+     * Sets of files to which bodies are spilled, by the proxy through which the bodies pass.
+     * Each entry is added when a proxy is started or leased and removed when it is stopped
+     * or returned.
+     */
+    private final Map<BrowserUpProxy, SpilledBodyFiles> spilledBodyFiles = new MapMaker().weakKeys().makeMap();
+
+    private static final int HAR_ENTRY_PROCESSOR_QUEUE_CAPACITY = 256;
 
     /**
      * Constructs an instance of the class. Should only be used by subclasses that know
@@ -61,6 +88,31 @@ public class TrafficCollectorImpl implements TrafficCollector {
                                Supplier<? extends BrowserUpProxy> interceptingProxyInstantiator,
                                Iterable<? extends HarPostProcessor> harPostProcessors,
                                ExceptionReactor exceptionReactor) {
+        this(webDriverFactory, certificateAndKeySource, upstreamConfigurator, httpFiltersSources,
+                interceptingProxyInstantiator, harPostProcessors, exceptionReactor, TrafficCollectorSettings.defaults());
+    }
+
+    /**
+     * Constructs an instance of the class with the given settings. Should only be used by subclasses
+     * that know what they're doing. Otherwise, use {@link TrafficCollector#builder(WebDriverFactory)}
+     * to create an instance.
+     * @param webDriverFactory web driver factory to use
+     * @param certificateAndKeySource credential source
+     * @param upstreamConfigurator upstream proxy configurator
+     * @param httpFiltersSources list of filters sources; this should probably include {@link AnonymizingFiltersSource}
+     * @param interceptingProxyInstantiator supplier that constructs the local proxy instance
+     * @param harPostProcessors list of HAR post-processors
+     * @param exceptionReactor exception reactor
+     * @param settings the other collector options
+     */
+    protected TrafficCollectorImpl(WebDriverFactory webDriverFactory,
+                            @Nullable CertificateAndKeySource certificateAndKeySource,
+                            BmpConfigurator upstreamConfigurator,
+                               Iterable<? extends HttpFiltersSource> httpFiltersSources,
+                               Supplier<? extends BrowserUpProxy> interceptingProxyInstantiator,
+                               Iterable<? extends HarPostProcessor> harPostProcessors,
+                               ExceptionReactor exceptionReactor,
+                               TrafficCollectorSettings settings) {
         this.webDriverFactory = requireNonNull(webDriverFactory);
         this.certificateAndKeySource = certificateAndKeySource;
         this.httpFiltersSources = ImmutableList.copyOf(httpFiltersSources);
@@ -68,6 +120,15 @@ public class TrafficCollectorImpl implements TrafficCollector {
         this.interceptingProxyInstantiator = requireNonNull(interceptingProxyInstantiator);
         this.harPostProcessors = ImmutableList.copyOf(harPostProcessors);
         this.exceptionReactor = requireNonNull(exceptionReactor);
+        this.harEntriesSpillDir = settings.getHarEntriesSpillDir();
+        this.proxyPool = settings.getProxyPool();
+        this.harCaptureMode = settings.getHarCaptureMode();
+        this.capturePolicy = settings.getCapturePolicy();
+        this.harEntryProcessors = settings.getHarEntryProcessors();
+        this.harEntryProcessorThreads = settings.getHarEntryProcessorThreads();
+        this.bodyStore = settings.getBodyStore();
+        this.impersonationCache = settings.getImpersonationCache();
+        this.impersonationKeyAlgorithm = settings.getImpersonationKeyAlgorithm();
     }
 
     protected Set<CaptureType> getCaptureTypes() {
@@ -82,26 +143,93 @@ public class TrafficCollectorImpl implements TrafficCollector {
     @Override
     public <R> HarPlus<R> collect(TrafficGenerator<R> generator, @Nullable TrafficMonitor monitor) throws IOException, WebDriverException {
         requireNonNull(generator, "generator");
-        BrowserUpProxy bmp = instantiateProxy();
-        configureProxy(bmp, certificateAndKeySource, monitor);
-        bmp.enableHarCaptureTypes(getCaptureTypes());
-        bmp.newHar();
-        bmp.start();
+        if (harEntriesSpillDir != null) {
+            return collectSpilled(generator, monitor, harEntriesSpillDir);
+        }
+        if (harCaptureMode == HarCaptureMode.PER_ENTRY) {
+            return collectPerEntry(generator, monitor);
+        }
+        SpilledBodyFiles spilledFiles = createSpilledBodyFiles();
+        ProxyRun run = startProxy(monitor == null ? null : new MonitorFiltersSource(monitor, capturePolicy, spilledFiles), bmp -> configureProxy(bmp, certificateAndKeySource, monitor), true, spilledFiles);
         R result = null;
+        Har har;
         try {
-            result = invokeGenerate(bmp, generator, monitor);
+            result = invokeGenerate(run.proxy, generator, monitor);
         } catch (IOException | RuntimeException e) {
             exceptionReactor.reactTo(e);
         } finally {
-            bmp.stop();
+            har = run.end();
         }
-        Har har = bmp.getHar();
         for (HarPostProcessor harPostProcessor : harPostProcessors) {
             harPostProcessor.process(har);
         }
         return new HarPlus<>(har, result);
     }
 
+    /**
+     * Collects a HAR in memory by assembling entries with our own filter instead of the proxy's
+     * HAR capture filter, which captures content according to global capture types only
+     * and offers no way to process entries as they are completed.
+     * @see HarCaptureMode#PER_ENTRY
+     */
+    private <R> HarPlus<R> collectPerEntry(TrafficGenerator<R> generator, @Nullable TrafficMonitor monitor) throws IOException, WebDriverException {
+        MemoryHarEntrySink memorySink = new MemoryHarEntrySink();
+        HarEntrySink sink = maybeProcessEntries(memorySink);
+        SpilledBodyFiles spilledFiles = createSpilledBodyFiles();
+        SpillingFiltersSource captureFiltersSource = new SpillingFiltersSource(sink, monitor, capturePolicy, bodyStore, spilledFiles);
+        ProxyRun run = startProxy(captureFiltersSource, bmp -> configureInterceptingProxy(bmp, certificateAndKeySource, captureFiltersSource), false, spilledFiles);
+        R result = null;
+        try {
+            result = invokeGenerate(run.proxy, generator, monitor);
+        } catch (IOException | RuntimeException e) {
+            exceptionReactor.reactTo(e);
+        } finally {
+            try {
+                run.end();
+            } finally {
+                sink.close();
+            }
+        }
+        Har har = memorySink.toHar();
+        for (HarPostProcessor harPostProcessor : harPostProcessors) {
+            harPostProcessor.process(har);
+        }
+        return new HarPlus<>(har, result);
+    }
+
+    private <R> SpilledHarPlus<R> collectSpilled(TrafficGenerator<R> generator, @Nullable TrafficMonitor monitor, Path spillDir) throws IOException, WebDriverException {
+        File entriesFile = File.createTempFile("har-entries", ".ndjson", spillDir.toFile());
+        boolean collected = false;
+        R result = null;
+        try {
+            try (HarEntrySink sink = maybeProcessEntries(new NdjsonHarEntrySink(entriesFile))) {
+                SpilledBodyFiles spilledFiles = createSpilledBodyFiles();
+                SpillingFiltersSource spillingFiltersSource = new SpillingFiltersSource(sink, monitor, capturePolicy, bodyStore, spilledFiles);
+                ProxyRun run = startProxy(spillingFiltersSource, bmp -> configureInterceptingProxy(bmp, certificateAndKeySource, spillingFiltersSource), false, spilledFiles);
+                try {
+                    result = invokeGenerate(run.proxy, generator, monitor);
+                } catch (IOException | RuntimeException e) {
+                    exceptionReactor.reactTo(e);
+                } finally {
+                    run.end();
+                }
+            }
+            collected = true;
+        } finally {
+            if (!collected && !entriesFile.delete()) {
+                LoggerFactory.getLogger(getClass()).warn("failed to delete {}", entriesFile);
+            }
+        }
+        return new SpilledHarPlus<>(new SpilledHar(entriesFile), result);
+    }
+
+    private HarEntrySink maybeProcessEntries(HarEntrySink sink) {
+        if (harEntryProcessors.isEmpty()) {
+            return sink;
+        }
+        return new ProcessingHarEntrySink(sink, harEntryProcessors, harEntryProcessorThreads, HAR_ENTRY_PROCESSOR_QUEUE_CAPACITY);
+    }
+
     @Override
     public <R> R monitor(TrafficGenerator<R> generator, TrafficMonitor monitor) throws IOException, WebDriverException {
         requireNonNull(monitor, "monitor");
@@ -115,16 +243,117 @@ public class TrafficCollectorImpl implements TrafficCollector {
 
     private <R> R maybeMonitor(TrafficGenerator<R> generator, @Nullable TrafficMonitor monitor) throws IOException, WebDriverException {
         requireNonNull(generator, "generator");
-        BrowserUpProxy bmp = instantiateProxy();
-        configureProxy(bmp, certificateAndKeySource, monitor);
-        bmp.start();
+        SpilledBodyFiles spilledFiles = createSpilledBodyFiles();
+        ProxyRun run = startProxy(monitor == null ? null : new MonitorFiltersSource(monitor, capturePolicy, spilledFiles), bmp -> configureProxy(bmp, certificateAndKeySource, monitor), false, spilledFiles);
         try {
-            return invokeGenerate(bmp, generator, monitor);
+            return invokeGenerate(run.proxy, generator, monitor);
         } catch (IOException | RuntimeException e){
             exceptionReactor.reactTo(e);
             return null;
         } finally {
-            bmp.stop();
+            run.end();
+        }
+    }
+
+    /**
+     * Starts a proxy for a collection session. If this collector has a proxy pool, a proxy
+     * is leased from the pool and the capture filters source is attached for the duration
+     * of the lease; otherwise a new proxy is instantiated, configured, and started. Proxies
+     * created for the pool are also instantiated by {@link #instantiateProxy()} and configured
+     * by {@link #configureProxy(BrowserUpProxy, CertificateAndKeySource, TrafficMonitor)}. Capture
+     * filters that require aggregation buffers bypass the pool, because buffer sizes
+     * are fixed when the proxy is started. Files added to the given set of spilled body
+     * files are deleted when the run ends.
+     */
+    private ProxyRun startProxy(@Nullable HttpFiltersSource captureFiltersSource, Consumer<BrowserUpProxy> unpooledConfigurator, boolean captureHar, @Nullable SpilledBodyFiles spilledFiles) {
+        if (proxyPool != null && !requiresBuffers(captureFiltersSource)) {
+            BrowserUpProxyPool.Lease lease = proxyPool.lease(this, this::instantiateProxy, bmp -> configureProxy(bmp, certificateAndKeySource, null));
+            BrowserUpProxy bmp = lease.getProxy();
+            try {
+                lease.attach(captureFiltersSource);
+                if (captureHar) {
+                    bmp.setHarCaptureTypes(getCaptureTypes());
+                    bmp.newHar();
+                }
+            } catch (RuntimeException e) {
+                lease.invalidate();
+                lease.close();
+                throw e;
+            }
+            return new ProxyRun(bmp, lease, spilledFiles);
+        }
+        BrowserUpProxy bmp = instantiateProxy();
+        if (spilledFiles != null) {
+            spilledBodyFiles.put(bmp, spilledFiles);
+        }
+        try {
+            unpooledConfigurator.accept(bmp);
+            if (captureHar) {
+                bmp.enableHarCaptureTypes(getCaptureTypes());
+                bmp.newHar();
+            }
+            bmp.start();
+        } catch (RuntimeException e) {
+            spilledBodyFiles.remove(bmp);
+            throw e;
+        }
+        return new ProxyRun(bmp, null, spilledFiles);
+    }
+
+    /**
+     * Creates a set of the files to which bodies are spilled during a collection session.
+     * @return a new set, or null if bodies are not spilled or the files are to be kept
+     */
+    @Nullable
+    private SpilledBodyFiles createSpilledBodyFiles() {
+        BodyCaptureLimits bodyLimits = capturePolicy.getBodyLimits();
+        if (bodyLimits.getScratchDir() == null || bodyLimits.isSpilledFilesKept()) {
+            return null;
+        }
+        return new SpilledBodyFiles();
+    }
+
+    private static boolean requiresBuffers(@Nullable HttpFiltersSource filtersSource) {
+        return filtersSource != null && (filtersSource.getMaximumRequestBufferSizeInBytes() > 0 || filtersSource.getMaximumResponseBufferSizeInBytes() > 0);
+    }
+
+    private class ProxyRun {
+
+        public final BrowserUpProxy proxy;
+        @Nullable
+        private final BrowserUpProxyPool.Lease lease;
+        @Nullable
+        private final SpilledBodyFiles spilledFiles;
+
+        private ProxyRun(BrowserUpProxy proxy, @Nullable BrowserUpProxyPool.Lease lease, @Nullable SpilledBodyFiles spilledFiles) {
+            this.proxy = proxy;
+            this.lease = lease;
+            this.spilledFiles = spilledFiles;
+        }
+
+        /**
+         * Stops the proxy or returns it to the pool, and then deletes the files to which
+         * bodies were spilled.
+         * @return the captured HAR, or null if HAR capture was not enabled
+         */
+        @Nullable
+        public Har end() {
+            try {
+                if (lease == null) {
+                    proxy.stop();
+                    return proxy.getHar();
+                }
+                try {
+                    return proxy.endHar();
+                } finally {
+                    lease.close();
+                }
+            } finally {
+                if (spilledFiles != null) {
+                    spilledBodyFiles.remove(proxy);
+                    spilledFiles.deleteAll();
+                }
+            }
         }
     }
 
@@ -142,9 +371,14 @@ public class TrafficCollectorImpl implements TrafficCollector {
     private static class MonitorFiltersSource extends HttpFiltersSourceAdapter {
 
         private final TrafficMonitor monitor;
+        private final CapturePolicy capturePolicy;
+        @Nullable
+        private final SpilledBodyFiles spilledFiles;
 
-        public MonitorFiltersSource(TrafficMonitor monitor) {
+        public MonitorFiltersSource(TrafficMonitor monitor, CapturePolicy capturePolicy, @Nullable SpilledBodyFiles spilledFiles) {
             this.monitor = requireNonNull(monitor);
+            this.capturePolicy = requireNonNull(capturePolicy);
+            this.spilledFiles = spilledFiles;
         }
 
         @Override
@@ -159,7 +393,7 @@ public class TrafficCollectorImpl implements TrafficCollector {
 
         private HttpFilters doFilterRequest(HttpRequest originalRequest, @Nullable ChannelHandlerContext ctx) {
             if (!ProxyUtils.isCONNECT(originalRequest)) {
-                return new TrafficMonitorFilter(originalRequest, ctx, monitor);
+                return new TrafficMonitorFilter(originalRequest, ctx, monitor, capturePolicy, spilledFiles);
             } else {
                 return null;
             }
@@ -176,11 +410,56 @@ public class TrafficCollectorImpl implements TrafficCollector {
         }
     }
 
+    private static class SpillingFiltersSource extends HttpFiltersSourceAdapter {
+
+        private final HarEntrySink sink;
+        @Nullable
+        private final TrafficMonitor monitor;
+        private final CapturePolicy capturePolicy;
+        @Nullable
+        private final HarBodyStore bodyStore;
+        @Nullable
+        private final SpilledBodyFiles spilledFiles;
+
+        public SpillingFiltersSource(HarEntrySink sink, @Nullable TrafficMonitor monitor, CapturePolicy capturePolicy, @Nullable HarBodyStore bodyStore, @Nullable SpilledBodyFiles spilledFiles) {
+            this.sink = requireNonNull(sink);
+            this.monitor = monitor;
+            this.capturePolicy = requireNonNull(capturePolicy);
+            this.bodyStore = bodyStore;
+            this.spilledFiles = spilledFiles;
+        }
+
+        @Override
+        public HttpFilters filterRequest(HttpRequest originalRequest) {
+            return doFilterRequest(originalRequest, null);
+        }
+
+        @Override
+        public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+            return doFilterRequest(originalRequest, ctx);
+        }
+
+        private HttpFilters doFilterRequest(HttpRequest originalRequest, @Nullable ChannelHandlerContext ctx) {
+            if (!ProxyUtils.isCONNECT(originalRequest)) {
+                return new HarEntrySpillingFilter(originalRequest, ctx, sink, monitor, capturePolicy, bodyStore, spilledFiles);
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public int getMaximumRequestBufferSizeInBytes() {
+            return monitor == null ? 0 : monitor.getMaximumRequestBufferSizeInBytes();
+        }
+
+        @Override
+        public int getMaximumResponseBufferSizeInBytes() {
+            return monitor == null ? 0 : monitor.getMaximumResponseBufferSizeInBytes();
+        }
+    }
+
     protected MitmManager createMitmManager(@SuppressWarnings("unused") BrowserUpProxy proxy, CertificateAndKeySource certificateAndKeySource) {
-        MitmManager mitmManager = ImpersonatingMitmManager.builder()
-                .rootCertificateSource(certificateAndKeySource)
-                .build();
-        return mitmManager;
+        return new CachingImpersonatingMitmManager(certificateAndKeySource, impersonationCache, impersonationKeyAlgorithm);
     }
 
     protected BrowserUpProxy instantiateProxy() {
@@ -188,12 +467,16 @@ public class TrafficCollectorImpl implements TrafficCollector {
     }
 
     protected void configureProxy(BrowserUpProxy bmp, CertificateAndKeySource certificateAndKeySource, @Nullable TrafficMonitor trafficMonitor) {
+        configureInterceptingProxy(bmp, certificateAndKeySource, trafficMonitor == null ? null : new MonitorFiltersSource(trafficMonitor, capturePolicy, spilledBodyFiles.get(bmp)));
+    }
+
+    private void configureInterceptingProxy(BrowserUpProxy bmp, CertificateAndKeySource certificateAndKeySource, @Nullable HttpFiltersSource captureFiltersSource) {
         if (certificateAndKeySource != null) {
             MitmManager mitmManager = createMitmManager(bmp, certificateAndKeySource);
             bmp.setMitmManager(mitmManager);
         }
-        if (trafficMonitor != null) {
-            bmp.addLastHttpFilterFactory(new MonitorFiltersSource(trafficMonitor));
+        if (captureFiltersSource != null) {
+            bmp.addLastHttpFilterFactory(captureFiltersSource);
         }
         httpFiltersSources.forEach(bmp::addLastHttpFilterFactory);
         upstreamConfigurator.configureUpstream(bmp);
@@ -213,6 +496,9 @@ public class TrafficCollectorImpl implements TrafficCollector {
         }
         if (harPostProcessors != null) h.add("harPostProcessors.size", harPostProcessors.size());
         if (exceptionReactor != null) h.add("exceptionReactor", exceptionReactor);
+        if (harEntriesSpillDir != null) h.add("harEntriesSpillDir", harEntriesSpillDir);
+        if (proxyPool != null) h.add("proxyPool", proxyPool);
+        if (!capturePolicy.isCaptureAll()) h.add("capturePolicy", capturePolicy);
         return h.toString();
     }
 }
@@ -0,0 +1,250 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import io.github.mike10004.seleniumcapture.HarBodyStore;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Value class that holds the options of a traffic collector other than those accepted by the
+ * original {@link TrafficCollectorImpl} constructor. Instances are normally created by
+ * {@link TrafficCollector.Builder}, whose methods describe each option in detail; subclasses
+ * of {@link TrafficCollectorImpl} may create them with {@link #builder()}.
+ */
+public final class TrafficCollectorSettings {
+
+    private static final TrafficCollectorSettings DEFAULTS = builder().build();
+
+    @Nullable
+    private final Path harEntriesSpillDir;
+    @Nullable
+    private final BrowserUpProxyPool proxyPool;
+    private final HarCaptureMode harCaptureMode;
+    private final CapturePolicy capturePolicy;
+    private final ImmutableList<HarEntryProcessor> harEntryProcessors;
+    private final int harEntryProcessorThreads;
+    @Nullable
+    private final HarBodyStore bodyStore;
+    private final ImpersonationCache impersonationCache;
+    private final CertificateKeyAlgorithm impersonationKeyAlgorithm;
+
+    private TrafficCollectorSettings(Builder builder) {
+        harEntriesSpillDir = builder.harEntriesSpillDir;
+        proxyPool = builder.proxyPool;
+        harCaptureMode = builder.harCaptureMode;
+        capturePolicy = builder.capturePolicy;
+        harEntryProcessors = ImmutableList.copyOf(builder.harEntryProcessors);
+        harEntryProcessorThreads = builder.harEntryProcessorThreads;
+        bodyStore = builder.bodyStore;
+        impersonationCache = builder.impersonationCache;
+        impersonationKeyAlgorithm = builder.impersonationKeyAlgorithm;
+    }
+
+    /**
+     * Returns an instance with the default value of each option.
+     * @return the default settings
+     */
+    public static TrafficCollectorSettings defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the directory in which HAR entries files are created.
+     * @return the directory, or null to capture HARs in memory
+     * @see TrafficCollector.Builder#spillHarEntries(Path)
+     */
+    @Nullable
+    public Path getHarEntriesSpillDir() {
+        return harEntriesSpillDir;
+    }
+
+    /**
+     * Gets the pool from which started proxies are leased.
+     * @return the pool, or null to start a new proxy for each session
+     * @see TrafficCollector.Builder#proxyPool(BrowserUpProxyPool)
+     */
+    @Nullable
+    public BrowserUpProxyPool getProxyPool() {
+        return proxyPool;
+    }
+
+    /**
+     * Gets the mode that determines which filter assembles captured HARs.
+     * @return the HAR capture mode
+     * @see TrafficCollector.Builder#harCaptureMode(HarCaptureMode)
+     */
+    public HarCaptureMode getHarCaptureMode() {
+        return harCaptureMode;
+    }
+
+    /**
+     * Gets the policy that determines which bodies are captured.
+     * @return the capture policy
+     * @see TrafficCollector.Builder#capturePolicy(CapturePolicy)
+     */
+    public CapturePolicy getCapturePolicy() {
+        return capturePolicy;
+    }
+
+    /**
+     * Gets the processors applied to each HAR entry as it is completed.
+     * @return the list of entry processors
+     * @see TrafficCollector.Builder#harEntryProcessor(HarEntryProcessor)
+     */
+    public ImmutableList<HarEntryProcessor> getHarEntryProcessors() {
+        return harEntryProcessors;
+    }
+
+    public int getHarEntryProcessorThreads() {
+        return harEntryProcessorThreads;
+    }
+
+    /**
+     * Gets the store in which response bodies are kept instead of the HAR.
+     * @return the body store, or null
+     * @see TrafficCollector.Builder#bodyStore(HarBodyStore)
+     */
+    @Nullable
+    public HarBodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    public ImpersonationCache getImpersonationCache() {
+        return impersonationCache;
+    }
+
+    public CertificateKeyAlgorithm getImpersonationKeyAlgorithm() {
+        return impersonationKeyAlgorithm;
+    }
+
+    @Override
+    public String toString() {
+        MoreObjects.ToStringHelper h = MoreObjects.toStringHelper(this).omitNullValues();
+        h.add("harEntriesSpillDir", harEntriesSpillDir);
+        h.add("proxyPool", proxyPool);
+        h.add("harCaptureMode", harCaptureMode);
+        if (!capturePolicy.isCaptureAll()) h.add("capturePolicy", capturePolicy);
+        if (!harEntryProcessors.isEmpty()) {
+            h.add("harEntryProcessors.size", harEntryProcessors.size());
+            h.add("harEntryProcessorThreads", harEntryProcessorThreads);
+        }
+        h.add("bodyStore", bodyStore);
+        h.add("impersonationKeyAlgorithm", impersonationKeyAlgorithm);
+        return h.toString();
+    }
+
+    /**
+     * Builder of settings instances.
+     */
+    public static final class Builder {
+
+        private Path harEntriesSpillDir = null;
+        private BrowserUpProxyPool proxyPool = null;
+        private HarCaptureMode harCaptureMode = HarCaptureMode.PROXY;
+        private CapturePolicy capturePolicy = CapturePolicy.captureAll();
+        private final List<HarEntryProcessor> harEntryProcessors = new ArrayList<>();
+        private int harEntryProcessorThreads = 2;
+        private HarBodyStore bodyStore = null;
+        private ImpersonationCache impersonationCache = ImpersonationCache.getDefault();
+        private CertificateKeyAlgorithm impersonationKeyAlgorithm = CertificateKeyAlgorithm.RSA;
+
+        private Builder() {
+        }
+
+        /**
+         * @see TrafficCollector.Builder#spillHarEntries(Path)
+         */
+        public Builder spillHarEntries(Path directory) {
+            this.harEntriesSpillDir = requireNonNull(directory, "directory");
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#proxyPool(BrowserUpProxyPool)
+         */
+        public Builder proxyPool(BrowserUpProxyPool proxyPool) {
+            this.proxyPool = requireNonNull(proxyPool, "proxyPool");
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#harCaptureMode(HarCaptureMode)
+         */
+        public Builder harCaptureMode(HarCaptureMode harCaptureMode) {
+            this.harCaptureMode = requireNonNull(harCaptureMode, "harCaptureMode");
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#capturePolicy(CapturePolicy)
+         */
+        public Builder capturePolicy(CapturePolicy capturePolicy) {
+            this.capturePolicy = requireNonNull(capturePolicy, "capturePolicy");
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#harEntryProcessor(HarEntryProcessor)
+         */
+        public Builder harEntryProcessor(HarEntryProcessor harEntryProcessor) {
+            harEntryProcessors.add(requireNonNull(harEntryProcessor, "harEntryProcessor"));
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#harEntryProcessorThreads(int)
+         */
+        public Builder harEntryProcessorThreads(int threads) {
+            checkArgument(threads > 0, "threads must be positive: %s", threads);
+            this.harEntryProcessorThreads = threads;
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#bodyStore(HarBodyStore)
+         */
+        public Builder bodyStore(HarBodyStore bodyStore) {
+            this.bodyStore = requireNonNull(bodyStore, "bodyStore");
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#impersonationCache(ImpersonationCache)
+         */
+        public Builder impersonationCache(ImpersonationCache impersonationCache) {
+            this.impersonationCache = requireNonNull(impersonationCache, "impersonationCache");
+            return this;
+        }
+
+        /**
+         * @see TrafficCollector.Builder#impersonationKeyAlgorithm(CertificateKeyAlgorithm)
+         */
+        public Builder impersonationKeyAlgorithm(CertificateKeyAlgorithm keyAlgorithm) {
+            this.impersonationKeyAlgorithm = requireNonNull(keyAlgorithm, "keyAlgorithm");
+            return this;
+        }
+
+        boolean isSpilling() {
+            return harEntriesSpillDir != null;
+        }
+
+        public TrafficCollectorSettings build() {
+            boolean perEntry = isSpilling() || harCaptureMode == HarCaptureMode.PER_ENTRY;
+            checkState(perEntry || harEntryProcessors.isEmpty(), "HAR entry processors require HarCaptureMode.PER_ENTRY or spilling HAR entries");
+            checkState(perEntry || bodyStore == null, "body store requires HarCaptureMode.PER_ENTRY or spilling HAR entries");
+            return new TrafficCollectorSettings(this);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.littleshoot.proxy.HttpFiltersSource;
 import org.openqa.selenium.WebDriver;
 
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 
 /**
  * Interface for classes that passively listen to HTTP requests and responses generated during
@@ -23,6 +24,79 @@ public interface TrafficMonitor {
      */
     void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse);
 
+    /**
+     * Callback invoked when a response from the remote server is received by the capturing proxy,
+     * with the timings of the interaction phases. The default implementation ignores the timings
+     * and invokes {@link #responseReceived(ImmutableHttpRequest, ImmutableHttpResponse)}.
+     * @param httpRequest the HTTP request
+     * @param httpResponse the HTTP response
+     * @param timings the timings of the interaction phases
+     */
+    default void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse, Timings timings) {
+        responseReceived(httpRequest, httpResponse);
+    }
+
+    /**
+     * Callback invoked when the request has been sent to the remote server.
+     * @param httpRequest the HTTP request
+     */
+    default void requestSent(ImmutableHttpRequest httpRequest) {
+        // no op
+    }
+
+    /**
+     * Callback invoked when the status and headers of a response have been received,
+     * before any content. The response passed to this method has no content. This method
+     * is invoked only if {@link #isResponseHeadersNotified()} returns true.
+     * @param httpRequest the HTTP request
+     * @param httpResponse the HTTP response, without content
+     */
+    default void responseHeadersReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+        // no op
+    }
+
+    /**
+     * Determines whether {@link #responseHeadersReceived(ImmutableHttpRequest, ImmutableHttpResponse)}
+     * is to be invoked. Monitors that override that method must override this one to return true.
+     * @return true if response headers are to be delivered before the content; the default is false
+     */
+    default boolean isResponseHeadersNotified() {
+        return false;
+    }
+
+    /**
+     * Callback invoked for each chunk of response content as it is received from the remote
+     * server. The chunk is content-encoded as sent by the server; for example, it is gzipped
+     * if the response has a {@code Content-Encoding: gzip} header. The buffer is valid only
+     * for the duration of the call. This method is invoked only if
+     * {@link #isResponseContentStreamed()} returns true.
+     * @param httpRequest the HTTP request
+     * @param chunk a read-only buffer containing the chunk
+     */
+    default void responseContentChunk(ImmutableHttpRequest httpRequest, ByteBuffer chunk) {
+        // no op
+    }
+
+    /**
+     * Determines whether {@link #responseContentChunk(ImmutableHttpRequest, ByteBuffer)} is to be
+     * invoked. Monitors that override that method must override this one to return true.
+     * @return true if response content chunks are to be delivered; the default is false
+     */
+    default boolean isResponseContentStreamed() {
+        return false;
+    }
+
+    /**
+     * Determines whether response content is to be aggregated and delivered with the
+     * response in {@link #responseReceived(ImmutableHttpRequest, ImmutableHttpResponse)}.
+     * Monitors that process content incrementally may return false, in which case
+     * response content is not buffered and the completed response has no content.
+     * @return true if response content is to be aggregated; the default is true
+     */
+    default boolean isResponseContentAggregated() {
+        return true;
+    }
+
     /**
      * Gets teh max request buffer size.
      * @return max request buffer size in bytes
@@ -15,6 +15,7 @@
  */
 package com.github.mike10004.seleniumhelp;
 
+import com.browserup.bup.exception.DecompressionException;
 import com.browserup.bup.exception.UnsupportedCharsetException;
 import com.browserup.bup.filters.ClientRequestCaptureFilter;
 import com.browserup.bup.filters.HttpsAwareFiltersAdapter;
@@ -26,10 +27,14 @@ import com.browserup.harreader.model.HarPostData;
 import com.browserup.harreader.model.HarPostDataParam;
 import com.browserup.harreader.model.HarRequest;
 import com.browserup.harreader.model.HarResponse;
+import com.github.mike10004.seleniumhelp.ImmutableHttpMessage.HttpContentSource;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.MapMaker;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteSource;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -43,14 +48,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -82,8 +89,19 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(TrafficMonitorFilter.class);
 
     private final TrafficMonitor trafficMonitor;
-    private transient final Object notificationLock = new Object();
-    private volatile boolean notifiedResponse;
+    private final CapturePolicy capturePolicy;
+
+    /**
+     * Full URL of the request, resolved only if the capture policy needs to match on it.
+     */
+    @Nullable
+    private final String requestUrl;
+    private final AtomicBoolean notifiedResponse = new AtomicBoolean(false);
+    private final Timings.Recorder timings = new Timings.Recorder();
+    private final boolean responseContentStreamed;
+    private final boolean responseHeadersNotified;
+    @Nullable
+    private volatile ImmutableHttpRequest frozenRequest;
     private final HarRequest harRequest = new HarRequest();
     private final HarResponse normalHarResponse = _createDefaultResponse();
 
@@ -92,27 +110,54 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
      * delegates to it when the clientToProxyRequest() callback is invoked. If this request does not need content capture, the
      * ClientRequestCaptureFilter filter will not be instantiated and will not capture content.
      */
+    @Nullable
     private final ClientRequestCaptureFilter requestCaptureFilter;
 
     /**
      * Like requestCaptureFilter above, HarCaptureFilter delegates to responseCaptureFilter to capture response contents. If content capture
      * is not required for this request, the filter will not be instantiated or invoked.
      */
+    @Nullable
     private final ServerResponseCaptureFilter responseCaptureFilter;
 
+    /**
+     * True if the capture policy calls for the content of the response to be captured. This is
+     * determined when the response headers are received.
+     */
+    private volatile boolean responseContentCaptured;
+
     /**
      * The "real" original request, as captured by the {@link #clientToProxyRequest(io.netty.handler.codec.http.HttpObject)} method.
      */
     private volatile HttpRequest capturedOriginalRequest;
 
+    /**
+     * Copy of the method, URI, version, and headers of the request as sent by the client, retained
+     * if the HAR request details are not captured. The proxy modifies the original request in place
+     * after {@link #clientToProxyRequest(HttpObject)} returns, so the request is frozen from this copy.
+     */
+    @Nullable
+    private volatile HttpRequest requestSnapshot;
+
+    /**
+     * Trailing headers of the request, retained if the HAR request details are not captured.
+     */
+    @Nullable
+    private volatile HttpHeaders requestTrailingHeaders;
+
+    /**
+     * Raw request content, retained if the HAR request details are not captured or if
+     * the content was accumulated subject to body capture limits.
+     */
+    private volatile HttpContentSource requestContent = HttpContentSource.empty();
+
     /**
      * True if this filter instance processed a {@link #proxyToServerResolutionSucceeded(String, java.net.InetSocketAddress)} call, indicating
      * that the hostname was resolved and populated in the HAR (if this is not a CONNECT).
      */
     private volatile boolean addressResolved = false;
 
-    @SuppressWarnings("unused")
-    private String serverIpAddress;
+    private volatile String serverIpAddress;
 
     /**
      * Create a new instance of the HarCaptureFilter that will capture request and response information. If no har is specified in the
@@ -130,25 +175,137 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
      * @throws IllegalArgumentException if request method is {@code CONNECT}
      */
     public TrafficMonitorFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, TrafficMonitor trafficMonitor) {
+        this(originalRequest, ctx, trafficMonitor, CapturePolicy.captureAll());
+    }
+
+    /**
+     * Creates a new instance that captures bodies according to a policy. If the policy calls
+     * for headers only, no content is buffered.
+     * @param originalRequest the original HttpRequest from the HttpFiltersSource factory
+     * @param ctx channel handler context
+     * @param trafficMonitor traffic monitor (subscriber to notifications from this filter)
+     * @param capturePolicy capture policy
+     * @throws IllegalArgumentException if request method is {@code CONNECT}
+     */
+    public TrafficMonitorFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, TrafficMonitor trafficMonitor, CapturePolicy capturePolicy) {
+        this(originalRequest, ctx, trafficMonitor, capturePolicy, null);
+    }
+
+    /**
+     * Creates a new instance that records the files to which bodies are spilled, so that
+     * they can be deleted when the collection session ends.
+     * @param spilledFiles the set of spilled files, or null
+     */
+    TrafficMonitorFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, TrafficMonitor trafficMonitor, CapturePolicy capturePolicy, @Nullable SpilledBodyFiles spilledFiles) {
         super(originalRequest, ctx);
         if (ProxyUtils.isCONNECT(originalRequest)) {
             throw new IllegalArgumentException("Attempted traffic listener capture for HTTP CONNECT request");
         }
-        requestCaptureFilter = new ClientRequestCaptureFilter(originalRequest);
-        responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, true);
         this.trafficMonitor = checkNotNull(trafficMonitor);
+        this.capturePolicy = checkNotNull(capturePolicy);
+        responseContentStreamed = trafficMonitor.isResponseContentStreamed();
+        responseHeadersNotified = trafficMonitor.isResponseHeadersNotified();
+        requestUrl = capturePolicy.isCaptureAll() ? null : getFullUrl(originalRequest);
+        String method = originalRequest.method().name();
+        boolean requestContentCaptured = requestUrl == null
+                || capturePolicy.isRequestContentCaptured(requestUrl, method, originalRequest.headers().get(HttpHeaderNames.CONTENT_TYPE));
+        boolean bodiesCaptured = requestUrl == null
+                || capturePolicy.getMaximumLevel(requestUrl, method) != CapturePolicy.Level.HEADERS_ONLY;
+        BodyCaptureLimits bodyLimits = capturePolicy.getBodyLimits();
+        if (!bodiesCaptured) {
+            requestCaptureFilter = null;
+            responseCaptureFilter = null;
+        } else if (bodyLimits.isBounded()) {
+            requestCaptureFilter = requestContentCaptured ? new BoundedCaptureFilters.RequestFilter(originalRequest, ctx, bodyLimits, spilledFiles) : null;
+            responseCaptureFilter = new BoundedCaptureFilters.ResponseFilter(originalRequest, ctx, bodyLimits, spilledFiles);
+        } else {
+            requestCaptureFilter = requestContentCaptured ? new ClientRequestCaptureFilter(originalRequest) : null;
+            responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, true);
+        }
+    }
+
+    private void sendResponseNotification(HarResponse harResponse, HttpContentSource responseContent) {
+        if (!notifiedResponse.compareAndSet(false, true)) {
+            log.warn("already sent response notification; this will be suppressed: {}", harResponse);
+            return;
+        }
+        interactionCompleted(harRequest, harResponse, responseContent, timings.finish());
     }
 
-    private void sendResponseNotification(HarResponse harResponse) {
-        synchronized (notificationLock) {
-            if (notifiedResponse) {
-                log.warn("already sent response notification; this will be suppressed: {}", harResponse);
-                return;
+    /**
+     * Callback invoked exactly once per interaction, when the response has been received
+     * or the interaction has failed. The default implementation notifies the traffic monitor.
+     * @param harRequest the captured request, including query parameters, headers, and content
+     * @param harResponse the captured response, or a failure response
+     * @param responseContent the response content
+     * @param timings the timings of the interaction phases
+     */
+    protected void interactionCompleted(HarRequest harRequest, HarResponse harResponse, HttpContentSource responseContent, Timings timings) {
+        trafficMonitor.responseReceived(getFrozenRequest(), HarInteractions.freeze(harResponse, responseContent), timings);
+    }
+
+    /**
+     * Gets the immutable form of the captured request. The request is frozen once, when it
+     * is first needed, and the same instance is passed to each monitor callback.
+     * @return the frozen request
+     */
+    private ImmutableHttpRequest getFrozenRequest() {
+        ImmutableHttpRequest request = frozenRequest;
+        if (request == null) {
+            if (isHarRequestDetailCaptured()) {
+                request = requestCaptureFilter instanceof BoundedCaptureFilters.RequestFilter
+                        ? HarInteractions.freeze(harRequest, requestContent)
+                        : HarInteractions.freeze(harRequest);
+            } else {
+                HttpRequest httpRequest = requestSnapshot == null ? originalRequest : requestSnapshot;
+                String url = harRequest.getUrl() == null ? getFullUrl(httpRequest) : harRequest.getUrl();
+                request = HarInteractions.freeze(httpRequest, url, requestTrailingHeaders, requestContent);
             }
-            ImmutableHttpRequest frozenRequest = HarInteractions.freeze(harRequest);
-            trafficMonitor.responseReceived(frozenRequest, HarInteractions.freeze(harResponse));
-            notifiedResponse = true;
+            frozenRequest = request;
         }
+        return request;
+    }
+
+    /**
+     * Determines whether the response content is to be aggregated, so that the monitor
+     * receives it on completion. By default, the monitor decides.
+     * @return true if the response content is to be aggregated
+     * @see TrafficMonitor#isResponseContentAggregated()
+     */
+    protected boolean isResponseContentAggregated() {
+        return trafficMonitor.isResponseContentAggregated();
+    }
+
+    /**
+     * Determines whether response content is to be copied into the {@code text} field of the
+     * HAR response content object. The monitor receives the response content directly from
+     * the captured bytes, so by default the HAR content text is not populated.
+     * @return true if the HAR response content text is to be populated
+     */
+    protected boolean isHarResponseContentCaptured() {
+        return false;
+    }
+
+    /**
+     * Determines whether the request passed to the monitor is frozen from the HAR request.
+     * By default, the monitor receives a request built from the raw request, whose parameters
+     * and content text are decoded only on demand.
+     * @return true if the monitor is to receive the HAR request
+     */
+    protected boolean isHarRequestDetailCaptured() {
+        return false;
+    }
+
+    /**
+     * Determines whether the query parameters, headers, and content of the request are to be
+     * copied into the HAR request. They are if the monitor receives the HAR request or if this
+     * is an instance of a subclass, which receives the HAR request in
+     * {@link #interactionCompleted(HarRequest, HarResponse, HttpContentSource, Timings)}.
+     * Otherwise, the HAR request is not exposed, and only its method, URL, and HTTP version
+     * are populated.
+     */
+    private boolean isHarRequestPopulated() {
+        return isHarRequestDetailCaptured() || getClass() != TrafficMonitorFilter.class;
     }
 
     private static HarResponse _createDefaultResponse() {
@@ -161,20 +318,44 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
     public HttpResponse clientToProxyRequest(HttpObject httpObject) {
         // if a ServerResponseCaptureFilter is configured, delegate to it to collect the client request. if it is not
         // configured, we still need to capture basic information (timings, possibly client headers, etc.), just not content.
-        requestCaptureFilter.clientToProxyRequest(httpObject);
+        if (requestCaptureFilter != null) {
+            requestCaptureFilter.clientToProxyRequest(httpObject);
+        }
         if (httpObject instanceof HttpRequest) {
+            timings.record(Timings.Event.REQUEST_RECEIVED);
             HttpRequest httpRequest = (HttpRequest) httpObject;
             this.capturedOriginalRequest = httpRequest;
             // associate this request's HarRequest object with the har entry
             populateHarRequestFromHttpRequest(httpRequest, harRequest);
-            captureQueryParameters(httpRequest, harRequest);
-            captureRequestHeaders(httpRequest, harRequest);
+            if (isHarRequestPopulated()) {
+                captureQueryParameters(httpRequest, harRequest);
+                captureRequestHeaders(httpRequest, harRequest);
+            }
+            if (!isHarRequestDetailCaptured()) {
+                requestSnapshot = new DefaultHttpRequest(httpRequest.protocolVersion(), httpRequest.method(), httpRequest.uri(), httpRequest.headers().copy());
+            }
         }
 
         if (httpObject instanceof LastHttpContent) {
             LastHttpContent lastHttpContent = (LastHttpContent) httpObject;
-            captureTrailingHeaders(lastHttpContent, harRequest);
-            captureRequestContent(requestCaptureFilter.getHttpRequest(), requestCaptureFilter.getFullRequestContents(), harRequest);
+            boolean harRequestPopulated = isHarRequestPopulated();
+            if (harRequestPopulated) {
+                captureTrailingHeaders(lastHttpContent, harRequest);
+            }
+            if (!isHarRequestDetailCaptured()) {
+                HttpHeaders trailingHeaders = lastHttpContent.trailingHeaders();
+                requestTrailingHeaders = trailingHeaders.isEmpty() ? null : trailingHeaders.copy();
+            }
+            if (requestCaptureFilter instanceof BoundedCaptureFilters.RequestFilter) {
+                requestContent = captureBoundedRequestContent((BoundedCaptureFilters.RequestFilter) requestCaptureFilter, harRequestPopulated ? harRequest : null);
+            } else if (requestCaptureFilter != null) {
+                if (harRequestPopulated) {
+                    captureRequestContent(requestCaptureFilter.getHttpRequest(), requestCaptureFilter.getFullRequestContents(), harRequest);
+                }
+                if (!isHarRequestDetailCaptured()) {
+                    requestContent = toRequestContentSource(requestCaptureFilter.getHttpRequest(), requestCaptureFilter.getFullRequestContents());
+                }
+            }
         }
         return null;
     }
@@ -185,20 +366,14 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
         return super.proxyToClientResponse(httpObject);
     }
 
-    private final Set<HttpObject> responseObjectsAccumulated = createResponseObjectsSet();
-    private transient final Object responseObjectsLock = new Object();
-
     /**
-     * Creates a set that keeps track of which response object have already been seen and accumulated.
-     * We avoid creating a hash map because the object hash may change over its life (because they are mutable).
-     * We use weak keys just to be safe, even though this filter object should be garbage-collected after the
-     * response is sent.
-     * @return a set appropriate for tracking response objects
+     * The response object most recently accumulated. Each response object is passed to
+     * {@link #serverToProxyResponse(HttpObject)} and then to {@link #proxyToClientResponse(HttpObject)}
+     * before the next object arrives, all on the channel's event loop thread, so comparing against
+     * the last object by identity is enough to accumulate each object once.
      */
-    private static Set<HttpObject> createResponseObjectsSet() {
-        Map<HttpObject, Boolean> map = new MapMaker().weakKeys().makeMap();
-        return Collections.newSetFromMap(map);
-    }
+    @Nullable
+    private volatile HttpObject lastResponseObjectAccumulated;
 
     static String getSimpleClassName(@Nullable Object object) {
         if (object == null) {
@@ -217,32 +392,50 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
     }
 
     private void accumulateResponse(HttpObject httpObject) {
-        synchronized (responseObjectsLock) {
-            if (responseObjectsAccumulated.contains(httpObject)) {
-                /*
-                 * TODO figure out whether we should ignore all but the last instead of all but the first appearance of the response object
-                 * Currently the response object is only be captured by the accumulator the
-                 * first time the object is passed to this method. It's possible that what
-                 * we want is for the object to be captured the **last** time it is passed
-                 * to this method, to make sure we capture it final state. If we observe
-                 * data not being captured, we should come back to this and re-evaluate.
-                 */
-                return;
+        if (lastResponseObjectAccumulated == httpObject) {
+            /*
+             * TODO figure out whether we should ignore all but the last instead of all but the first appearance of the response object
+             * Currently the response object is only be captured by the accumulator the
+             * first time the object is passed to this method. It's possible that what
+             * we want is for the object to be captured the **last** time it is passed
+             * to this method, to make sure we capture it final state. If we observe
+             * data not being captured, we should come back to this and re-evaluate.
+             */
+            return;
+        }
+        lastResponseObjectAccumulated = httpObject;
+        if (httpObject instanceof HttpResponse) {
+            timings.record(Timings.Event.RESPONSE_RECEIVING);
+            HttpResponse httpResponse = (HttpResponse) httpObject;
+            captureResponse(httpResponse, normalHarResponse);
+            if (responseHeadersNotified && capturedOriginalRequest != null) {
+                trafficMonitor.responseHeadersReceived(getFrozenRequest(), HarInteractions.freeze(normalHarResponse, HttpContentSource.empty()));
             }
-            responseObjectsAccumulated.add(httpObject);
-            // if a ServerResponseCaptureFilter is configured, delegate to it to collect the server's response. if it is not
-            // configured, we still need to capture basic information (timings, HTTP status, etc.), just not content.
-            responseCaptureFilter.serverToProxyResponse(httpObject);
-            if (httpObject instanceof HttpResponse) {
-                HttpResponse httpResponse = (HttpResponse) httpObject;
-                captureResponse(httpResponse, normalHarResponse);
+            responseContentCaptured = responseCaptureFilter != null && isResponseContentAggregated() && (requestUrl == null
+                    || capturePolicy.isResponseContentCaptured(requestUrl, originalRequest.method().name(), httpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE)));
+        }
+        if (responseContentStreamed && httpObject instanceof HttpContent && capturedOriginalRequest != null) {
+            ByteBuf chunk = ((HttpContent) httpObject).content();
+            if (chunk.isReadable()) {
+                trafficMonitor.responseContentChunk(getFrozenRequest(), chunk.nioBuffer().asReadOnlyBuffer());
             }
-            if (httpObject instanceof LastHttpContent) {
-                captureResponseContent(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents(), normalHarResponse);
-                sendResponseNotification(normalHarResponse);
+        }
+        // if the response content is to be captured, delegate to the ServerResponseCaptureFilter to collect the server's response. if it is not
+        // captured, we still need to capture basic information (timings, HTTP status, etc.), just not content.
+        if (responseContentCaptured) {
+            responseCaptureFilter.serverToProxyResponse(httpObject);
+        }
+        if (httpObject instanceof LastHttpContent) {
+            timings.record(Timings.Event.RESPONSE_RECEIVED);
+            HttpContentSource responseContent = HttpContentSource.empty();
+            if (responseCaptureFilter instanceof BoundedCaptureFilters.ResponseFilter) {
+                if (responseContentCaptured) {
+                    responseContent = captureBoundedResponseContent((BoundedCaptureFilters.ResponseFilter) responseCaptureFilter, normalHarResponse);
+                }
+            } else if (responseContentCaptured) {
+                responseContent = captureResponseContentSource(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents(), normalHarResponse);
             }
-
-
+            sendResponseNotification(normalHarResponse, responseContent);
         }
     }
 
@@ -300,6 +493,68 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
         }
     }
 
+    /**
+     * Creates a content source that wraps the raw request content. The content is decoded
+     * with the charset in the content type header only if it is read as characters.
+     */
+    private HttpContentSource toRequestContentSource(HttpRequest httpRequest, byte[] fullMessage) {
+        return toRequestContentSource(httpRequest, ByteSource.wrap(fullMessage), fullMessage.length);
+    }
+
+    private HttpContentSource toRequestContentSource(HttpRequest httpRequest, ByteSource content, long size) {
+        if (size == 0) {
+            return HttpContentSource.empty();
+        }
+        String contentType = httpRequest.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        Charset charset = null;
+        if (contentType != null) {
+            try {
+                charset = BrowserUpHttpUtil.readCharsetInContentTypeHeader(contentType);
+            } catch (UnsupportedCharsetException e) {
+                log.warn("Found unsupported character set in Content-Type header '{}' in HTTP request to {}. Content will be treated as binary.", contentType, httpRequest.uri(), e);
+                return HttpContentSource.fromBytes(content);
+            }
+        }
+        return HttpContentSource.fromText(content, charset == null ? BrowserUpHttpUtil.DEFAULT_HTTP_CHARSET : charset);
+    }
+
+    /**
+     * Captures request content that was accumulated subject to body capture limits. Content held
+     * in memory is captured in the HAR request, if one is given, as by {@link #captureRequestContent(HttpRequest, byte[], HarRequest)}.
+     * For content held in a file, the HAR post data contains only the MIME type, and the file
+     * pathname is stored in a {@code _contentFile} field of the HAR request.
+     * @param harRequest the HAR request, or null if the HAR request details are not captured
+     */
+    private HttpContentSource captureBoundedRequestContent(BoundedCaptureFilters.RequestFilter filter, @Nullable HarRequest harRequest) {
+        BodyAccumulator body = filter.getBody();
+        body.finish();
+        HttpRequest httpRequest = filter.getHttpRequest();
+        byte[] inMemory = body.toByteArrayIfInMemory();
+        HttpContentSource content;
+        if (inMemory != null) {
+            if (harRequest != null) {
+                captureRequestContent(httpRequest, inMemory, harRequest);
+            }
+            content = toRequestContentSource(httpRequest, inMemory);
+        } else {
+            if (harRequest != null) {
+                String contentType = httpRequest.headers().get(HttpHeaderNames.CONTENT_TYPE);
+                HarPostData postData = new HarPostData();
+                postData.setMimeType(contentType == null ? BrowserUpHttpUtil.UNKNOWN_CONTENT_TYPE : contentType);
+                harRequest.setPostData(postData);
+                harRequest.setAdditionalField("_contentFile", String.valueOf(body.getFile()));
+            }
+            content = toRequestContentSource(httpRequest, body.toByteSource(), body.size());
+        }
+        if (body.isTruncated()) {
+            if (harRequest != null) {
+                harRequest.setAdditionalField("_contentTruncated", true);
+            }
+            content = HttpContentSource.truncated(content);
+        }
+        return content;
+    }
+
     protected void captureRequestContent(HttpRequest httpRequest, byte[] fullMessage, HarRequest harRequest) {
         if (fullMessage.length == 0) {
             return;
@@ -355,19 +610,142 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
         }
     }
 
-    protected void captureResponseContent(HttpResponse httpResponse, byte[] fullMessage, HarResponse harResponse) {
+    /**
+     * Captures response content. The HAR response is populated by
+     * {@link #captureResponseContent(HttpResponse, byte[], HarResponse)}, and the returned
+     * content source wraps the given byte array without copying or transcoding it.
+     * @param httpResponse the response
+     * @param fullMessage the full (decompressed, if possible) response content
+     * @param harResponse the HAR response
+     * @return a content source
+     */
+    protected HttpContentSource captureResponseContentSource(HttpResponse httpResponse, byte[] fullMessage, HarResponse harResponse) {
         // force binary if the content encoding is not supported
-        boolean forceBinary = false;
+        boolean forceBinary = isDecompressionFailed();
+        if (forceBinary) {
+            log.warn("Unable to decompress content with encoding: {}. Contents will be encoded as base64 binary data.", responseCaptureFilter.getContentEncoding());
+        }
+        captureResponseContent(httpResponse, fullMessage, harResponse);
+        return captureResponseContentSource(httpResponse, ByteSource.wrap(fullMessage), fullMessage.length, null, harResponse, forceBinary);
+    }
 
+    /**
+     * Captures response content in the HAR response. Invoked for each response whose content
+     * is held in memory without body capture limits. The default implementation populates
+     * the content text only if {@link #isHarResponseContentCaptured()} returns true.
+     * @param httpResponse the response
+     * @param fullMessage the full (decompressed, if possible) response content
+     * @param harResponse the HAR response
+     */
+    protected void captureResponseContent(HttpResponse httpResponse, byte[] fullMessage, HarResponse harResponse) {
+        if (!isHarResponseContentCaptured()) {
+            return;
+        }
         String contentType = httpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE);
         if (contentType == null) {
-            log.warn("No content type specified in response from {}. Content will be treated as {}", originalRequest.uri(), BrowserUpHttpUtil.UNKNOWN_CONTENT_TYPE);
             contentType = BrowserUpHttpUtil.UNKNOWN_CONTENT_TYPE;
         }
+        Charset charset;
+        try {
+            charset = BrowserUpHttpUtil.readCharsetInContentTypeHeader(contentType);
+        } catch (UnsupportedCharsetException e) {
+            return;
+        }
+        if (charset == null) {
+            charset = BrowserUpHttpUtil.DEFAULT_HTTP_CHARSET;
+        }
+        boolean textual = !isDecompressionFailed() && BrowserUpHttpUtil.hasTextualContent(contentType);
+        populateHarResponseContent(harResponse, fullMessage, textual ? charset : null);
+    }
 
-        if (responseCaptureFilter.isResponseCompressed() && !responseCaptureFilter.isDecompressionSuccessful()) {
-            log.warn("Unable to decompress content with encoding: {}. Contents will be encoded as base64 binary data.", responseCaptureFilter.getContentEncoding());
-            forceBinary = true;
+    /**
+     * Checks whether the response content is compressed with an unsupported encoding,
+     * in which case it is treated as binary.
+     */
+    private boolean isDecompressionFailed() {
+        return responseCaptureFilter != null && responseCaptureFilter.isResponseCompressed() && !responseCaptureFilter.isDecompressionSuccessful();
+    }
+
+    /**
+     * Captures response content that was accumulated subject to body capture limits. Content
+     * held in memory is decompressed eagerly, as by {@link #captureResponseContentSource(HttpResponse, byte[], HarResponse)}.
+     * Content held in a file is decompressed lazily if it is gzipped, and is otherwise treated
+     * as binary if it is encoded. The HAR content text is not populated for content held in a file;
+     * instead the file pathname is stored in a {@code _contentFile} field of the HAR response.
+     */
+    private HttpContentSource captureBoundedResponseContent(BoundedCaptureFilters.ResponseFilter filter, HarResponse harResponse) {
+        BodyAccumulator body = filter.getBody();
+        String encoding = filter.getContentEncoding();
+        if (encoding != null && "identity".equalsIgnoreCase(encoding.trim())) {
+            encoding = null;
+        }
+        byte[] inMemory = body.toByteArrayIfInMemory();
+        HttpContentSource content;
+        if (inMemory != null) {
+            boolean forceBinary = false;
+            if (encoding != null) {
+                if (body.isTruncated()) {
+                    forceBinary = true;
+                } else {
+                    try {
+                        inMemory = decompress(inMemory, encoding);
+                    } catch (DecompressionException e) {
+                        log.warn("Unable to decompress content with encoding: {}. Contents will be encoded as base64 binary data.", encoding);
+                        forceBinary = true;
+                    }
+                }
+            }
+            content = captureResponseContentSource(filter.getHttpResponse(), ByteSource.wrap(inMemory), inMemory.length, inMemory, harResponse, forceBinary);
+        } else {
+            ByteSource raw = body.toByteSource();
+            ByteSource decoded = raw;
+            boolean forceBinary = false;
+            if (encoding != null) {
+                if (!body.isTruncated() && "gzip".equalsIgnoreCase(encoding.trim())) {
+                    decoded = gunzipping(raw);
+                } else {
+                    forceBinary = true;
+                }
+            }
+            harResponse.setAdditionalField("_contentFile", String.valueOf(body.getFile()));
+            content = captureResponseContentSource(filter.getHttpResponse(), decoded, body.size(), null, harResponse, forceBinary);
+        }
+        if (body.isTruncated()) {
+            harResponse.setAdditionalField("_contentTruncated", true);
+            content = HttpContentSource.truncated(content);
+        }
+        return content;
+    }
+
+    private static byte[] decompress(byte[] content, String encoding) throws DecompressionException {
+        switch (encoding.trim().toLowerCase()) {
+            case "gzip":
+                return BrowserUpHttpUtil.decompressGZIPContents(content);
+            case "br":
+                return BrowserUpHttpUtil.decompressBrotliContents(content);
+            default:
+                throw new DecompressionException("unsupported encoding: " + encoding);
+        }
+    }
+
+    private static ByteSource gunzipping(ByteSource compressed) {
+        return new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return new GZIPInputStream(compressed.openStream());
+            }
+        };
+    }
+
+    /**
+     * Captures response content from a byte source.
+     * @param contentBytes the content as an array, if it is held in memory, or null
+     */
+    private HttpContentSource captureResponseContentSource(HttpResponse httpResponse, ByteSource content, long size, @Nullable byte[] contentBytes, HarResponse harResponse, boolean forceBinary) {
+        String contentType = httpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        if (contentType == null) {
+            log.warn("No content type specified in response from {}. Content will be treated as {}", originalRequest.uri(), BrowserUpHttpUtil.UNKNOWN_CONTENT_TYPE);
+            contentType = BrowserUpHttpUtil.UNKNOWN_CONTENT_TYPE;
         }
 
         Charset charset;
@@ -375,7 +753,7 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
             charset = BrowserUpHttpUtil.readCharsetInContentTypeHeader(contentType);
         } catch (UnsupportedCharsetException e) {
             log.warn("Found unsupported character set in Content-Type header '{}' in HTTP response from {}. Content will not be captured in HAR.", contentType, originalRequest.uri(), e);
-            return;
+            return HttpContentSource.empty();
         }
 
         if (charset == null) {
@@ -384,15 +762,31 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
             log.debug("No charset specified; using charset {} to decode contents from {}", charset, originalRequest.uri());
         }
 
-        if (!forceBinary && BrowserUpHttpUtil.hasTextualContent(contentType)) {
-            String text = BrowserUpHttpUtil.getContentAsString(fullMessage, charset);
-            harResponse.getContent().setText(text);
+        harResponse.getContent().setSize(size);
+        boolean textual = !forceBinary && BrowserUpHttpUtil.hasTextualContent(contentType);
+        if (isHarResponseContentCaptured() && contentBytes != null) {
+            populateHarResponseContent(harResponse, contentBytes, textual ? charset : null);
+        }
+        if (size == 0) {
+            return HttpContentSource.empty();
+        }
+        return textual ? HttpContentSource.fromText(content, charset) : HttpContentSource.fromBytes(content);
+    }
+
+    /**
+     * Populates the content text of a HAR response. Invoked only if {@link #isHarResponseContentCaptured()}
+     * returns true and the content is held in memory.
+     * @param harResponse the HAR response
+     * @param content the decoded response content
+     * @param charset the charset of textual content, or null if the content is binary
+     */
+    protected void populateHarResponseContent(HarResponse harResponse, byte[] content, @Nullable Charset charset) {
+        if (charset != null) {
+            harResponse.getContent().setText(BrowserUpHttpUtil.getContentAsString(content, charset));
         } else {
-            harResponse.getContent().setText(BaseEncoding.base64().encode(fullMessage));
+            harResponse.getContent().setText(BaseEncoding.base64().encode(content));
             harResponse.getContent().setEncoding("base64");
         }
-
-        harResponse.getContent().setSize(Long.valueOf(fullMessage.length));
     }
 
     protected void captureResponse(HttpResponse httpResponse, HarResponse harResponse) {
@@ -464,8 +858,62 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
         }
     }
 
+    /**
+     * Gets the IP address of the remote server, if it is known.
+     * @return the server IP address, or null
+     */
+    @Nullable
+    protected String getServerIpAddress() {
+        return serverIpAddress;
+    }
+
+    @Override
+    public void proxyToServerConnectionQueued() {
+        timings.record(Timings.Event.CONNECTION_QUEUED);
+    }
+
+    @Override
+    public InetSocketAddress proxyToServerResolutionStarted(String resolvingServerHostAndPort) {
+        timings.record(Timings.Event.RESOLUTION_STARTED);
+        return super.proxyToServerResolutionStarted(resolvingServerHostAndPort);
+    }
+
+    @Override
+    public void proxyToServerConnectionStarted() {
+        timings.record(Timings.Event.CONNECTION_STARTED);
+    }
+
+    @Override
+    public void proxyToServerConnectionSSLHandshakeStarted() {
+        timings.record(Timings.Event.SSL_HANDSHAKE_STARTED);
+    }
+
+    @Override
+    public void proxyToServerConnectionSucceeded(ChannelHandlerContext serverCtx) {
+        timings.record(Timings.Event.CONNECTION_SUCCEEDED);
+    }
+
+    @Override
+    public void proxyToServerRequestSent() {
+        timings.record(Timings.Event.REQUEST_SENT);
+        if (capturedOriginalRequest != null) {
+            trafficMonitor.requestSent(getFrozenRequest());
+        }
+    }
+
+    @Override
+    public void serverToProxyResponseReceiving() {
+        timings.record(Timings.Event.RESPONSE_RECEIVING);
+    }
+
+    @Override
+    public void serverToProxyResponseReceived() {
+        timings.record(Timings.Event.RESPONSE_RECEIVED);
+    }
+
     @Override
     public void proxyToServerResolutionSucceeded(String serverHostAndPort, InetSocketAddress resolvedRemoteAddress) {
+        timings.record(Timings.Event.RESOLUTION_FINISHED);
         // the address *should* always be resolved at this point
         InetAddress resolvedAddress = resolvedRemoteAddress.getAddress();
         if (resolvedAddress != null) {
@@ -476,6 +924,7 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
 
     @Override
     public void proxyToServerRequestSending() {
+        timings.record(Timings.Event.REQUEST_SENDING);
         // if the hostname was not resolved (and thus the IP address populated in the har) during this request, populate the IP address from the cache
         if (!addressResolved) {
             populateAddressFromCache(capturedOriginalRequest);
@@ -484,9 +933,10 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
 
     @Override
     public void proxyToServerResolutionFailed(String hostAndPort) {
+        timings.record(Timings.Event.RESOLUTION_FINISHED);
         HarResponse response = HarCaptureUtil.createHarResponseForFailure();
         BrowserMobs.setHarResponseError(response, HarCaptureUtil.getResolutionFailedErrorMessage(hostAndPort));
-        sendResponseNotification(response);
+        sendResponseNotification(response, HttpContentSource.empty());
     }
 
 
@@ -494,7 +944,7 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
     public void proxyToServerConnectionFailed() {
         HarResponse response = HarCaptureUtil.createHarResponseForFailure();
         BrowserMobs.setHarResponseError(response, HarCaptureUtil.getConnectionFailedErrorMessage());
-        sendResponseNotification(response);
+        sendResponseNotification(response, HttpContentSource.empty());
     }
 
     @Override
@@ -502,7 +952,7 @@ public class TrafficMonitorFilter extends HttpsAwareFiltersAdapter {
         // replace any existing HarResponse that was created if the server sent a partial response
         HarResponse response = HarCaptureUtil.createHarResponseForFailure();
         BrowserMobs.setHarResponseError(response, HarCaptureUtil.getResponseTimedOutErrorMessage());
-        sendResponseNotification(response);
+        sendResponseNotification(response, HttpContentSource.empty());
     }
 
 }
@@ -10,14 +10,13 @@ import com.browserup.harreader.model.HarResponse;
 import com.google.common.base.MoreObjects;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.function.BiConsumer;
 
@@ -37,18 +36,23 @@ public class BrowserUpHars {
      * @throws IOException on I/O error
      */
     public static void writeHar(Har har, Writer writer) throws IOException {
-        new com.browserup.harreader.jackson.DefaultMapperFactory().instance(HarReaderMode.STRICT).writeValue(writer, har);
+        HarCodec.getInstance(HarReaderMode.STRICT).getHarWriter().writeValue(writer, har);
     }
 
     /**
-     * Serializes a HAR to a file.
+     * Serializes a HAR to a file. The file is compressed if its extension indicates
+     * compression, as described by {@link HarCodec.Compression#forFile(File)}.
      * @param har har
      * @throws IOException on I/O error
      * @param file destination file
      * @param charset charset to encode text
      */
     public static void writeHar(Har har, File file, Charset charset) throws IOException {
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), charset)) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            HarCodec.getInstance(HarReaderMode.STRICT).write(har, file);
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(HarCodec.openOutputStream(file), charset)) {
             writeHar(har, writer);
         }
     }
@@ -73,11 +77,12 @@ public class BrowserUpHars {
      * @throws IOException on I/O error
      */
     public static Har readHar(Reader reader, HarReaderMode mode) throws IOException {
-        return new com.browserup.harreader.jackson.DefaultMapperFactory().instance(mode).readValue(reader, Har.class);
+        return HarCodec.getInstance(mode).getHarReader().readValue(reader);
     }
 
     /**
-     * Deserializes a HAR from a file.
+     * Deserializes a HAR from a file. The file is decompressed if its extension indicates
+     * compression, as described by {@link HarCodec.Compression#forFile(File)}.
      * @param harFile the HAR file
      * @param harCharset the character encoding
      * @param mode reader mode
@@ -85,11 +90,29 @@ public class BrowserUpHars {
      * @throws IOException
      */
     public static Har readHar(File harFile, Charset harCharset, HarReaderMode mode) throws IOException {
-        try (Reader reader = new InputStreamReader(new FileInputStream(harFile), harCharset)) {
+        if (StandardCharsets.UTF_8.equals(harCharset)) {
+            return HarCodec.getInstance(mode).read(harFile);
+        }
+        try (Reader reader = new InputStreamReader(HarCodec.openInputStream(harFile), harCharset)) {
             return readHar(reader, mode);
         }
     }
 
+    /**
+     * Deserializes a HAR from a file and resolves response bodies that reference a body store.
+     * Body content is read from the store when the content text is first requested.
+     * @param harFile the HAR file
+     * @param harCharset the character encoding
+     * @param mode reader mode
+     * @param bodyStore the store of response bodies
+     * @return deserialized HAR
+     * @throws IOException on I/O error
+     * @see HarBodyStore#resolveLazily(Har)
+     */
+    public static Har readHar(File harFile, Charset harCharset, HarReaderMode mode, HarBodyStore bodyStore) throws IOException {
+        return bodyStore.resolveLazily(readHar(harFile, harCharset, mode));
+    }
+
     /**
      * Returns a short description of a HAR.
      * @param har har
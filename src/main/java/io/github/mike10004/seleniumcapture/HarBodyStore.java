@@ -0,0 +1,192 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarContent;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarResponse;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Content-addressed store of HAR response bodies. Each body is stored once, in a file
+ * named by the SHA-256 hash of its content, so identical bodies captured in any number
+ * of HARs share one file. A HAR response whose body is in the store has no content text;
+ * instead it has a {@value #HASH_FIELD} field containing the hash and a {@value #FILE_FIELD}
+ * field containing the pathname of the file relative to the store directory. Textual
+ * bodies also have a {@value #CHARSET_FIELD} field, and binary bodies have content encoding
+ * {@code base64}, so that the content text can be reconstructed exactly.
+ *
+ * <p>Instances are safe for use by multiple threads and by multiple processes sharing
+ * a directory.
+ */
+public final class HarBodyStore {
+
+    public static final String HASH_FIELD = "_contentHash";
+    public static final String FILE_FIELD = "_file";
+    public static final String CHARSET_FIELD = "_contentCharset";
+
+    private static final String BASE64 = "base64";
+
+    private final Path directory;
+
+    /**
+     * Constructs an instance that stores bodies in the given directory.
+     * @param directory the directory; created if it does not exist
+     */
+    public HarBodyStore(Path directory) {
+        this.directory = requireNonNull(directory, "directory");
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stores content if it is not already stored.
+     * @param content the content
+     * @return the hex-encoded SHA-256 hash of the content
+     * @throws IOException on I/O error
+     */
+    public String put(byte[] content) throws IOException {
+        String hash = Hashing.sha256().hashBytes(content).toString();
+        Path file = getFile(hash);
+        if (Files.exists(file)) {
+            return hash;
+        }
+        Path parent = file.getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, hash, ".tmp");
+        try {
+            Files.write(tempFile, content);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file);
+            }
+        } catch (FileAlreadyExistsException ignore) {
+            // another thread or process stored the same content
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the file in which content with a given hash is or would be stored.
+     * @param hash the hex-encoded SHA-256 hash
+     * @return the file pathname
+     */
+    public Path getFile(String hash) {
+        return directory.resolve(getRelativePath(hash));
+    }
+
+    private static String getRelativePath(String hash) {
+        checkArgument(hash.length() == 64 && BaseEncoding.base16().lowerCase().canDecode(hash), "not a SHA-256 hash: %s", hash);
+        return hash.substring(0, 2) + "/" + hash;
+    }
+
+    /**
+     * Checks whether content with a given hash is stored.
+     * @param hash the hex-encoded SHA-256 hash
+     * @return true if the content is stored
+     */
+    public boolean contains(String hash) {
+        return Files.isRegularFile(getFile(hash));
+    }
+
+    /**
+     * Gets the stored content with a given hash.
+     * @param hash the hex-encoded SHA-256 hash
+     * @return a byte source that reads the file each time it is opened
+     */
+    public ByteSource get(String hash) {
+        return MoreFiles.asByteSource(getFile(hash));
+    }
+
+    /**
+     * Stores the body of a HAR response and replaces the content text with references to
+     * the stored body.
+     * @param harResponse the HAR response
+     * @param content the body
+     * @param charset the charset of textual content, or null if the content is binary
+     * @throws IOException on I/O error
+     */
+    public void storeContent(HarResponse harResponse, byte[] content, @Nullable Charset charset) throws IOException {
+        String hash = put(content);
+        HarContent harContent = harResponse.getContent();
+        harContent.setText(null);
+        if (charset == null) {
+            harContent.setEncoding(BASE64);
+        } else {
+            harResponse.setAdditionalField(CHARSET_FIELD, charset.name());
+        }
+        harResponse.setAdditionalField(HASH_FIELD, hash);
+        harResponse.setAdditionalField(FILE_FIELD, getRelativePath(hash));
+    }
+
+    /**
+     * Replaces the content of each response in a HAR that references a stored body with
+     * content whose text is read from the store when it is first requested.
+     * @param har the HAR
+     * @return the argument HAR
+     */
+    public Har resolveLazily(Har har) {
+        List<HarEntry> entries = har.getLog().getEntries();
+        if (entries != null) {
+            entries.forEach(this::resolveLazily);
+        }
+        return har;
+    }
+
+    /**
+     * Replaces the content of the entry's response with content whose text is read from
+     * the store when it is first requested, if the response references a stored body.
+     * @param entry the entry
+     * @return the argument entry
+     */
+    public HarEntry resolveLazily(HarEntry entry) {
+        HarResponse response = entry.getResponse();
+        if (response == null || response.getContent() == null) {
+            return entry;
+        }
+        Map<String, Object> additional = response.getAdditional();
+        Object hash = additional.get(HASH_FIELD);
+        HarContent content = response.getContent();
+        // text is absent or, depending on the reader, empty when the body is stored
+        if (hash instanceof String && Strings.isNullOrEmpty(content.getText()) && !(content instanceof LazyHarContent)) {
+            Object charsetName = additional.get(CHARSET_FIELD);
+            Charset charset = charsetName instanceof String ? Charset.forName((String) charsetName) : null;
+            ByteSource body = get((String) hash);
+            response.setContent(new LazyHarContent(content, () -> {
+                byte[] bytes = body.read();
+                return charset == null ? BaseEncoding.base64().encode(bytes) : new String(bytes, charset);
+            }));
+        }
+        return entry;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("directory", directory)
+                .toString();
+    }
+}
@@ -0,0 +1,414 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.HarReaderMode;
+import com.browserup.harreader.jackson.DefaultMapperFactory;
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarLog;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.base.MoreObjects;
+import com.google.common.io.Files;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reader and writer of HAR JSON. Instances hold the object readers and writers for a
+ * reader mode, so the cost of configuring a mapper is paid once per mode rather than once
+ * per read or write. JSON is read and written as UTF-8 bytes. Methods that accept a file
+ * apply the compression indicated by the file extension; see {@link Compression#forFile(File)}.
+ * Instances are immutable and safe for use by multiple threads.
+ */
+public final class HarCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<HarReaderMode, HarCodec> instances;
+
+    static {
+        Map<HarReaderMode, HarCodec> map = new EnumMap<>(HarReaderMode.class);
+        for (HarReaderMode mode : HarReaderMode.values()) {
+            map.put(mode, new HarCodec(mode));
+        }
+        instances = map;
+    }
+
+    private final HarReaderMode mode;
+    private final ObjectMapper mapper;
+    private final ObjectReader harReader;
+    private final ObjectReader entryReader;
+    private final ObjectWriter harWriter;
+    private final ObjectWriter entryWriter;
+
+    private HarCodec(HarReaderMode mode) {
+        this.mode = requireNonNull(mode);
+        mapper = new DefaultMapperFactory().instance(mode);
+        harReader = mapper.readerFor(Har.class).without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        entryReader = mapper.readerFor(HarEntry.class);
+        harWriter = mapper.writerFor(Har.class);
+        entryWriter = mapper.writerFor(HarEntry.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Gets the codec for a reader mode.
+     * @param mode the mode
+     * @return the codec
+     */
+    public static HarCodec getInstance(HarReaderMode mode) {
+        return instances.get(requireNonNull(mode, "mode"));
+    }
+
+    public HarReaderMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the object reader for HAR objects.
+     * @return the reader
+     */
+    public ObjectReader getHarReader() {
+        return harReader;
+    }
+
+    /**
+     * Gets the object reader for HAR entries.
+     * @return the reader
+     */
+    public ObjectReader getEntryReader() {
+        return entryReader;
+    }
+
+    /**
+     * Gets the object writer for HAR objects.
+     * @return the writer
+     */
+    public ObjectWriter getHarWriter() {
+        return harWriter;
+    }
+
+    /**
+     * Gets the object writer for HAR entries.
+     * @return the writer
+     */
+    public ObjectWriter getEntryWriter() {
+        return entryWriter;
+    }
+
+    /**
+     * Deserializes a HAR from a stream of UTF-8 JSON.
+     * The stream is not closed.
+     * @param in the input stream
+     * @return the HAR
+     * @throws IOException on I/O error
+     */
+    public Har read(InputStream in) throws IOException {
+        return harReader.readValue(in);
+    }
+
+    /**
+     * Deserializes a HAR from a file, decompressing it if the file extension
+     * indicates compression.
+     * @param file the file
+     * @return the HAR
+     * @throws IOException on I/O error
+     */
+    public Har read(File file) throws IOException {
+        try (InputStream in = openInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Serializes a HAR to a stream as UTF-8 JSON. The stream is not closed.
+     * @param har the HAR
+     * @param out the output stream
+     * @throws IOException on I/O error
+     */
+    public void write(Har har, OutputStream out) throws IOException {
+        try (JsonGenerator generator = createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            harWriter.writeValue(generator, har);
+        }
+    }
+
+    /**
+     * Serializes a HAR to a file, compressing it if the file extension
+     * indicates compression.
+     * @param har the HAR
+     * @param file the file
+     * @throws IOException on I/O error
+     */
+    public void write(Har har, File file) throws IOException {
+        try (OutputStream out = openOutputStream(file)) {
+            write(har, out);
+        }
+    }
+
+    /**
+     * Opens a writer that serializes a HAR to a stream one entry at a time. The log fields
+     * other than entries are written immediately; the entries of the argument log are ignored.
+     * Closing the writer closes the stream.
+     * @param out the output stream
+     * @param log log whose fields other than entries are written
+     * @return a new streaming writer
+     * @throws IOException on I/O error
+     */
+    public HarStreamWriter openStreamWriter(OutputStream out, HarLog log) throws IOException {
+        ObjectNode logNode = mapper.valueToTree(log);
+        logNode.remove("entries");
+        JsonGenerator generator = createGenerator(out);
+        try {
+            return new HarStreamWriter(generator, entryWriter, logNode);
+        } catch (IOException | RuntimeException e) {
+            generator.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a writer that serializes a HAR to a file one entry at a time, compressing
+     * it if the file extension indicates compression.
+     * @param file the file
+     * @param log log whose fields other than entries are written
+     * @return a new streaming writer
+     * @throws IOException on I/O error
+     * @see #openStreamWriter(OutputStream, HarLog)
+     */
+    public HarStreamWriter openStreamWriter(File file, HarLog log) throws IOException {
+        OutputStream out = openOutputStream(file);
+        try {
+            return openStreamWriter(out, log);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a reader that deserializes HAR entries from a stream one at a time.
+     * Closing the reader closes the stream.
+     * @param in the input stream of UTF-8 JSON
+     * @param contentText how to handle response content text; must not be {@link HarStreamReader.ContentText#LAZY}
+     * @return a new streaming reader
+     * @throws IOException on I/O error or if the HAR log cannot be read
+     */
+    public HarStreamReader openStreamReader(InputStream in, HarStreamReader.ContentText contentText) throws IOException {
+        checkArgument(contentText != HarStreamReader.ContentText.LAZY, "lazy content text requires a file");
+        return openStreamReader(mapper.getFactory().createParser(in), contentText, null);
+    }
+
+    /**
+     * Opens a reader that deserializes HAR entries from a file one at a time, decompressing
+     * the file if the file extension indicates compression.
+     * @param file the file
+     * @param contentText how to handle response content text; {@link HarStreamReader.ContentText#LAZY}
+     *                    requires that the file not be compressed
+     * @return a new streaming reader
+     * @throws IOException on I/O error or if the HAR log cannot be read
+     */
+    public HarStreamReader openStreamReader(File file, HarStreamReader.ContentText contentText) throws IOException {
+        checkArgument(contentText != HarStreamReader.ContentText.LAZY || Compression.forFile(file) == Compression.NONE,
+                "lazy content text requires an uncompressed file: %s", file);
+        return openStreamReader(mapper.getFactory().createParser(openInputStream(file)), contentText, file);
+    }
+
+    private HarStreamReader openStreamReader(JsonParser parser, HarStreamReader.ContentText contentText, @Nullable File file) throws IOException {
+        try {
+            return new HarStreamReader(parser, mapper, entryReader, contentText, file);
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Deserializes the entry at a byte offset in an uncompressed HAR file. The file is mapped
+     * into memory, so only the pages that contain the entry are read.
+     * @param file the file
+     * @param offset the offset, as returned by {@link HarStreamReader#getLastEntryOffset()}
+     * @return the entry
+     * @throws IOException on I/O error or if there is no entry at the offset
+     */
+    public HarEntry readEntryAt(File file, long offset) throws IOException {
+        checkArgument(Compression.forFile(file) == Compression.NONE, "file must not be compressed: %s", file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = Math.min(channel.size() - offset, Integer.MAX_VALUE);
+            checkArgument(offset >= 0 && length > 0, "offset %s out of bounds", offset);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            try (JsonParser parser = mapper.getFactory().createParser(new ByteBufferBackedInputStream(region))) {
+                return entryReader.readValue(parser);
+            }
+        }
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    /**
+     * Opens a buffered stream that reads a file, decompressing it if the file extension
+     * indicates compression.
+     * @param file the file
+     * @return a new input stream
+     * @throws IOException on I/O error
+     */
+    public static InputStream openInputStream(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            return Compression.forFile(file).decode(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a buffered stream that writes a file, compressing it if the file extension
+     * indicates compression.
+     * @param file the file
+     * @return a new output stream
+     * @throws IOException on I/O error
+     */
+    public static OutputStream openOutputStream(File file) throws IOException {
+        Compression compression = Compression.forFile(file);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            if (compression == Compression.NONE) {
+                return new BufferedOutputStream(out, BUFFER_SIZE);
+            }
+            return compression.encode(out);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("mode", mode)
+                .toString();
+    }
+
+    /**
+     * Enumeration of compression formats for HAR files.
+     */
+    public enum Compression {
+
+        /**
+         * No compression.
+         */
+        NONE,
+
+        /**
+         * Gzip format; file extensions {@code .gz} and {@code .gzip}.
+         */
+        GZIP,
+
+        /**
+         * Zlib format; file extensions {@code .zz} and {@code .deflate}.
+         */
+        DEFLATE;
+
+        /**
+         * Gets the compression indicated by a file extension.
+         * @param file the file
+         * @return the compression
+         */
+        public static Compression forFile(File file) {
+            String extension = Files.getFileExtension(file.getName()).toLowerCase(Locale.ROOT);
+            switch (extension) {
+                case "gz":
+                case "gzip":
+                    return GZIP;
+                case "zz":
+                case "deflate":
+                    return DEFLATE;
+                default:
+                    return NONE;
+            }
+        }
+
+        /**
+         * Wraps a stream so that data written to it is compressed.
+         * @param out the stream that receives compressed data
+         * @return the compressing stream
+         * @throws IOException on I/O error
+         */
+        public OutputStream encode(OutputStream out) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPOutputStream(out, BUFFER_SIZE);
+                case DEFLATE:
+                    return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                def.end();
+                            }
+                        }
+                    };
+                default:
+                    return out;
+            }
+        }
+
+        /**
+         * Wraps a stream so that data read from it is decompressed.
+         * @param in the stream that supplies compressed data
+         * @return the decompressing stream
+         * @throws IOException on I/O error
+         */
+        public InputStream decode(InputStream in) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPInputStream(in, BUFFER_SIZE);
+                case DEFLATE:
+                    return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                inf.end();
+                            }
+                        }
+                    };
+                default:
+                    return in;
+            }
+        }
+    }
+}
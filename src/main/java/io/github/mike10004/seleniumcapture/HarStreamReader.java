@@ -0,0 +1,356 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.model.HarContent;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarLog;
+import com.browserup.harreader.model.HarResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reader that deserializes HAR entries one at a time, so that memory use does not depend
+ * on the number of entries. The log fields that precede the entries array, such as the
+ * creator and pages, are read when the reader is opened; log fields that follow the
+ * entries array are added to the log returned by {@link #getLog()} when the last entry
+ * has been read. Entries may be read only once, and only by one thread at a time.
+ * @see HarCodec#openStreamReader(File, ContentText)
+ */
+public final class HarStreamReader implements Closeable, Iterable<HarEntry> {
+
+    /**
+     * Enumeration of ways to handle the text of response content.
+     */
+    public enum ContentText {
+
+        /**
+         * Content text is deserialized with the entry.
+         */
+        INCLUDE,
+
+        /**
+         * Content text is skipped without being decoded and is null in deserialized entries.
+         */
+        SKIP,
+
+        /**
+         * Content text is skipped without being decoded, and its position in the file is recorded.
+         * The text is read from the file when it is first requested. This requires an uncompressed
+         * file, which must not be modified while entries that were read from it are in use.
+         */
+        LAZY
+    }
+
+    private static final String[] CONTENT_TEXT_PATH = {null, "response", "content", "text"};
+
+    private final JsonParser parser;
+    private final ObjectMapper mapper;
+    private final ObjectReader entryReader;
+    private final ContentText contentText;
+    @Nullable
+    private final File file;
+    private final HarLog log;
+    private boolean entriesRemaining;
+    private long lastEntryOffset = -1;
+
+    HarStreamReader(JsonParser parser, ObjectMapper mapper, ObjectReader entryReader, ContentText contentText, @Nullable File file) throws IOException {
+        this.parser = requireNonNull(parser);
+        this.mapper = requireNonNull(mapper);
+        this.entryReader = requireNonNull(entryReader);
+        this.contentText = requireNonNull(contentText);
+        checkState(contentText != ContentText.LAZY || file != null, "lazy content text requires a file");
+        this.file = file;
+        log = readHeader();
+    }
+
+    private HarLog readHeader() throws IOException {
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if ("log".equals(name)) {
+                expect(valueToken, JsonToken.START_OBJECT);
+                ObjectNode logNode = mapper.createObjectNode();
+                entriesRemaining = readLogFields(logNode);
+                HarLog log = mapper.treeToValue(logNode, HarLog.class);
+                log.setEntries(new ArrayList<>());
+                return log;
+            }
+            parser.skipChildren();
+        }
+        throw new JsonParseException(parser, "HAR has no log");
+    }
+
+    /**
+     * Reads log fields into a node until the start of the entries array or the end of the log.
+     * @return true if positioned at the start of the entries array
+     */
+    private boolean readLogFields(ObjectNode logNode) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if ("entries".equals(name)) {
+                if (valueToken == JsonToken.START_ARRAY) {
+                    return true;
+                }
+                expect(valueToken, JsonToken.VALUE_NULL);
+            } else {
+                logNode.set(name, parser.readValueAsTree());
+            }
+        }
+        return false;
+    }
+
+    private void expect(@Nullable JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * Gets the log, which has no entries.
+     * @return the log
+     */
+    public HarLog getLog() {
+        return log;
+    }
+
+    /**
+     * Reads the next entry.
+     * @return the entry, or null if there are no more entries
+     * @throws IOException on I/O error or if the HAR is malformed
+     */
+    @Nullable
+    public HarEntry readEntry() throws IOException {
+        if (!entriesRemaining) {
+            return null;
+        }
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            entriesRemaining = false;
+            readTrailer();
+            return null;
+        }
+        expect(token, JsonToken.START_OBJECT);
+        lastEntryOffset = parser.getTokenLocation().getByteOffset();
+        if (contentText == ContentText.INCLUDE) {
+            return entryReader.readValue(parser);
+        }
+        return readEntryWithoutContentText();
+    }
+
+    private void readTrailer() throws IOException {
+        ObjectNode trailer = mapper.createObjectNode();
+        readLogFields(trailer);
+        if (trailer.size() > 0) {
+            mapper.readerForUpdating(log).readValue(trailer);
+        }
+    }
+
+    /*
+     * Copies the entry tokens to a buffer, except the value of response.content.text,
+     * which the parser skips without decoding.
+     */
+    private HarEntry readEntryWithoutContentText() throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser, null);
+        buffer.copyCurrentEvent(parser);
+        String[] names = new String[CONTENT_TEXT_PATH.length];
+        long textOffset = -1, textLength = -1;
+        int depth = 1;
+        while (depth > 0) {
+            JsonToken token = parser.nextToken();
+            if (textOffset >= 0 && textLength < 0) {
+                textLength = parser.getTokenLocation().getByteOffset() - textOffset;
+            }
+            if (token == null) {
+                throw new JsonParseException(parser, "unexpected end of input in entry");
+            }
+            switch (token) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                    String name = parser.getCurrentName();
+                    if (depth < names.length) {
+                        names[depth] = name;
+                    }
+                    if (isContentTextField(names, depth)) {
+                        token = parser.nextToken();
+                        if (token == JsonToken.VALUE_STRING) {
+                            textOffset = parser.getTokenLocation().getByteOffset();
+                            continue;
+                        }
+                        buffer.writeFieldName(name);
+                        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                            depth++;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+            buffer.copyCurrentEvent(parser);
+        }
+        HarEntry entry = entryReader.readValue(buffer.asParser(parser.getCodec()));
+        if (textOffset >= 0) {
+            HarResponse response = entry.getResponse();
+            HarContent content = response.getContent();
+            if (contentText == ContentText.LAZY) {
+                response.setContent(new LazyHarContent(content, new MappedTextLoader(file, mapper.getFactory(), textOffset, textLength)));
+            } else {
+                // the mapper may substitute an empty string for the absent text
+                content.setText(null);
+            }
+        }
+        return entry;
+    }
+
+    private static boolean isContentTextField(String[] names, int depth) {
+        if (depth != CONTENT_TEXT_PATH.length - 1) {
+            return false;
+        }
+        for (int i = 1; i < CONTENT_TEXT_PATH.length; i++) {
+            if (!CONTENT_TEXT_PATH[i].equals(names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the byte offset in the input of the start of the entry most recently read.
+     * With uncompressed input, the entry can be read again with
+     * {@link HarCodec#readEntryAt(File, long)}.
+     * @return the offset, or -1 if no entry has been read
+     */
+    public long getLastEntryOffset() {
+        return lastEntryOffset;
+    }
+
+    /**
+     * Returns an iterator over the entries not yet read. I/O errors are thrown as
+     * {@link UncheckedIOException}.
+     * @return an iterator
+     */
+    @Override
+    public Iterator<HarEntry> iterator() {
+        return new Iterator<HarEntry>() {
+
+            private HarEntry next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = readEntry();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public HarEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                HarEntry entry = next;
+                next = null;
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Returns a sequential stream of the entries not yet read. Closing the stream closes this reader.
+     * @return a stream
+     */
+    public Stream<HarEntry> streamEntries() {
+        Spliterator<HarEntry> spliterator = Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("contentText", contentText)
+                .add("file", file)
+                .add("entriesRemaining", entriesRemaining)
+                .toString();
+    }
+
+    /**
+     * Loader of a JSON string value from a region of a file that is mapped into memory.
+     */
+    static final class MappedTextLoader implements LazyHarContent.TextLoader {
+
+        private final File file;
+        private final JsonFactory jsonFactory;
+        private final long offset;
+        private final long length;
+
+        MappedTextLoader(File file, JsonFactory jsonFactory, long offset, long length) {
+            this.file = requireNonNull(file);
+            this.jsonFactory = requireNonNull(jsonFactory);
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public String load() throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                try (JsonParser textParser = jsonFactory.createParser(new ByteBufferBackedInputStream(region))) {
+                    JsonToken token = textParser.nextToken();
+                    if (token != JsonToken.VALUE_STRING) {
+                        throw new JsonParseException(textParser, "expected content text at offset " + offset + " in " + file);
+                    }
+                    return textParser.getText();
+                }
+            }
+        }
+    }
+}
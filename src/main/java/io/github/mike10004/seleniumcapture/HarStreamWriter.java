@@ -0,0 +1,102 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.model.HarEntry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.MoreObjects;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writer that serializes a HAR one entry at a time, so that memory use does not depend
+ * on the number of entries. The HAR is complete only after the writer is closed.
+ * Instances are safe for use by multiple threads; entries are written in the order
+ * in which {@link #writeEntry(HarEntry)} is invoked.
+ * @see HarCodec#openStreamWriter(java.io.File, com.browserup.harreader.model.HarLog)
+ */
+public final class HarStreamWriter implements Closeable {
+
+    private final JsonGenerator generator;
+    private final ObjectWriter entryWriter;
+    private final Object lock = new Object();
+    private boolean closed;
+    private int entryCount;
+
+    HarStreamWriter(JsonGenerator generator, ObjectWriter entryWriter, ObjectNode logFields) throws IOException {
+        this.generator = requireNonNull(generator);
+        this.entryWriter = requireNonNull(entryWriter);
+        generator.writeStartObject();
+        generator.writeFieldName("log");
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = logFields.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            generator.writeTree(field.getValue());
+        }
+        generator.writeArrayFieldStart("entries");
+    }
+
+    /**
+     * Appends an entry to the entries array.
+     * @param entry the entry
+     * @throws IOException on I/O error
+     */
+    public void writeEntry(HarEntry entry) throws IOException {
+        requireNonNull(entry, "entry");
+        synchronized (lock) {
+            checkState(!closed, "writer is closed");
+            entryWriter.writeValue(generator, entry);
+            entryCount++;
+        }
+    }
+
+    /**
+     * Gets the number of entries written so far.
+     * @return the entry count
+     */
+    public int getEntryCount() {
+        synchronized (lock) {
+            return entryCount;
+        }
+    }
+
+    /**
+     * Ends the entries array and the HAR object and closes the underlying stream.
+     * @throws IOException on I/O error
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndObject();
+            } finally {
+                generator.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return MoreObjects.toStringHelper(this)
+                    .add("entryCount", entryCount)
+                    .add("closed", closed)
+                    .toString();
+        }
+    }
+}
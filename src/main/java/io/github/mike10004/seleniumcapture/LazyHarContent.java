@@ -0,0 +1,84 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.model.HarContent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * HAR content whose text is loaded when it is first requested. An I/O error while
+ * loading the text is thrown as an {@link UncheckedIOException} from {@link #getText()}.
+ */
+class LazyHarContent extends HarContent {
+
+    /**
+     * Interface of a service that loads content text.
+     */
+    interface TextLoader {
+        String load() throws IOException;
+    }
+
+    private final TextLoader loader;
+    private volatile boolean loaded;
+
+    /**
+     * Constructs an instance that copies the fields of another content object
+     * other than its text.
+     * @param original the content object to copy
+     * @param loader the text loader
+     */
+    public LazyHarContent(HarContent original, TextLoader loader) {
+        this.loader = requireNonNull(loader);
+        setSize(original.getSize());
+        setCompression(original.getCompression());
+        setMimeType(original.getMimeType());
+        setEncoding(original.getEncoding());
+        setComment(original.getComment());
+    }
+
+    @Override
+    public String getText() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    try {
+                        super.setText(loader.load());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    loaded = true;
+                }
+            }
+        }
+        return super.getText();
+    }
+
+    @Override
+    public void setText(String text) {
+        synchronized (this) {
+            super.setText(text);
+            loaded = true;
+        }
+    }
+
+    /**
+     * Compares this content with another, loading the text of both first, because
+     * the inherited implementation compares the text fields directly.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof LazyHarContent) {
+            getText();
+            ((LazyHarContent) o).getText();
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        getText();
+        return super.hashCode();
+    }
+}
@@ -0,0 +1,274 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.github.mike10004.seleniumhelp.AsyncTrafficMonitor.OverflowPolicy;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncTrafficMonitorTest {
+
+    @Test
+    public void dispatchesToDelegate() throws Exception {
+        List<HttpInteraction> interactions = Collections.synchronizedList(new ArrayList<>());
+        AsyncTrafficMonitor monitor = AsyncTrafficMonitor.builder(new RecordingMonitor(interactions))
+                .workerThreads(2)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            send(monitor, "/" + i);
+        }
+        monitor.close();
+        assertEquals("interactions", 10, interactions.size());
+        assertEquals("received", 10, monitor.getReceivedCount());
+        assertEquals("dispatched", 10, monitor.getDispatchedCount());
+        assertEquals("dropped", 0, monitor.getDroppedCount());
+        assertEquals("queue depth", 0, monitor.getQueueDepth());
+    }
+
+    @Test
+    public void delegatesStreamingCallbacks() throws Exception {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        TrafficMonitor streamingMonitor = new TrafficMonitor() {
+            @Override
+            public void requestSent(ImmutableHttpRequest httpRequest) {
+                events.add("request " + httpRequest.url.getPath());
+            }
+
+            @Override
+            public void responseHeadersReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+                events.add("headers " + httpResponse.status);
+            }
+
+            @Override
+            public void responseContentChunk(ImmutableHttpRequest httpRequest, ByteBuffer chunk) {
+                events.add("chunk " + StandardCharsets.US_ASCII.decode(chunk));
+            }
+
+            @Override
+            public void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+                events.add("response " + httpRequest.url.getPath());
+            }
+
+            @Override
+            public boolean isResponseHeadersNotified() {
+                return true;
+            }
+
+            @Override
+            public boolean isResponseContentStreamed() {
+                return true;
+            }
+
+            @Override
+            public boolean isResponseContentAggregated() {
+                return false;
+            }
+        };
+        AsyncTrafficMonitor monitor = AsyncTrafficMonitor.builder(streamingMonitor).build();
+        assertTrue("headers notified", monitor.isResponseHeadersNotified());
+        assertTrue("streamed", monitor.isResponseContentStreamed());
+        assertFalse("aggregated", monitor.isResponseContentAggregated());
+        ImmutableHttpRequest request = ImmutableHttpRequest.builder(URI.create("http://www.example.com/a")).build();
+        monitor.requestSent(request);
+        monitor.responseHeadersReceived(request, ImmutableHttpResponse.builder(200).build());
+        ByteBuffer chunk = ByteBuffer.wrap("hello".getBytes(StandardCharsets.US_ASCII));
+        monitor.responseContentChunk(request, chunk);
+        chunk.put(0, (byte) 'j');
+        send(monitor, "/a");
+        monitor.close();
+        assertEquals(Arrays.asList("request /a", "headers 200", "chunk hello", "response /a"), events);
+    }
+
+    @Test
+    public void streamingCallbacksInOrderWithWorkers() throws Exception {
+        int numRequests = 8, numChunks = 50;
+        Map<String, List<String>> events = new ConcurrentHashMap<>();
+        TrafficMonitor streamingMonitor = new TrafficMonitor() {
+            @Override
+            public void responseContentChunk(ImmutableHttpRequest httpRequest, ByteBuffer chunk) {
+                record(httpRequest, StandardCharsets.US_ASCII.decode(chunk).toString());
+                LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(100_000));
+            }
+
+            @Override
+            public void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+                record(httpRequest, "response");
+            }
+
+            private void record(ImmutableHttpRequest httpRequest, String event) {
+                events.computeIfAbsent(httpRequest.url.getPath(), k -> Collections.synchronizedList(new ArrayList<>())).add(event);
+            }
+
+            @Override
+            public boolean isResponseContentStreamed() {
+                return true;
+            }
+        };
+        AsyncTrafficMonitor monitor = AsyncTrafficMonitor.builder(streamingMonitor)
+                .workerThreads(4)
+                .queueCapacity(2)
+                .overflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .build();
+        List<ImmutableHttpRequest> requests = new ArrayList<>();
+        for (int r = 0; r < numRequests; r++) {
+            requests.add(ImmutableHttpRequest.builder(URI.create("http://www.example.com/" + r)).build());
+        }
+        List<String> expected = new ArrayList<>();
+        for (int c = 0; c < numChunks; c++) {
+            expected.add(String.valueOf(c));
+            for (ImmutableHttpRequest request : requests) {
+                monitor.responseContentChunk(request, ByteBuffer.wrap(String.valueOf(c).getBytes(StandardCharsets.US_ASCII)));
+            }
+        }
+        expected.add("response");
+        for (ImmutableHttpRequest request : requests) {
+            monitor.responseReceived(request, ImmutableHttpResponse.builder(200).build());
+        }
+        monitor.close();
+        assertEquals("dropped", 0, monitor.getDroppedCount());
+        for (ImmutableHttpRequest request : requests) {
+            assertEquals("events for " + request.url, expected, events.get(request.url.getPath()));
+        }
+    }
+
+    @Test
+    public void capabilitiesWithoutDelegate() throws Exception {
+        try (AsyncTrafficMonitor monitor = AsyncTrafficMonitor.builder().build()) {
+            assertFalse("headers notified", monitor.isResponseHeadersNotified());
+            assertFalse("streamed", monitor.isResponseContentStreamed());
+            assertTrue("aggregated", monitor.isResponseContentAggregated());
+        }
+    }
+
+    @Test
+    public void dropNewest() throws Exception {
+        assertEquals(Arrays.asList("/0", "/1"), exerciseOverflow(OverflowPolicy.DROP_NEWEST));
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        assertEquals(Arrays.asList("/0", "/2"), exerciseOverflow(OverflowPolicy.DROP_OLDEST));
+    }
+
+    private List<String> exerciseOverflow(OverflowPolicy policy) throws Exception {
+        CountDownLatch entered = new CountDownLatch(1), release = new CountDownLatch(1);
+        List<HttpInteraction> interactions = Collections.synchronizedList(new ArrayList<>());
+        TrafficMonitor slowMonitor = (httpRequest, httpResponse) -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            interactions.add(new HttpInteraction(httpRequest, httpResponse));
+        };
+        AsyncTrafficMonitor monitor = AsyncTrafficMonitor.builder(slowMonitor)
+                .queueCapacity(1)
+                .overflowPolicy(policy)
+                .build();
+        send(monitor, "/0");
+        assertTrue("worker received first interaction", entered.await(5, TimeUnit.SECONDS));
+        send(monitor, "/1");
+        send(monitor, "/2");
+        assertEquals("queue depth", 1, monitor.getQueueDepth());
+        assertEquals("dropped", 1, monitor.getDroppedCount());
+        release.countDown();
+        monitor.close();
+        assertEquals("dispatched", 2, monitor.getDispatchedCount());
+        return interactions.stream().map(i -> i.request.url.getPath()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void publisher() throws Exception {
+        AsyncTrafficMonitor monitor = AsyncTrafficMonitor.builder().build();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        monitor.asPublisher().subscribe(subscriber);
+        assertNotNull("subscription", subscriber.subscription);
+        subscriber.subscription.request(1);
+        for (int i = 0; i < 3; i++) {
+            send(monitor, "/" + i);
+        }
+        assertTrue("first", subscriber.awaitCount(1));
+        Thread.sleep(50);
+        assertEquals("delivered before further demand", 1, subscriber.received.size());
+        subscriber.subscription.request(2);
+        assertTrue("rest", subscriber.awaitCount(3));
+        monitor.close();
+        assertTrue("completed", subscriber.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("/0", "/1", "/2"), subscriber.received.stream().map(i -> i.request.url.getPath()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void publisher_nonPositiveRequest() throws Exception {
+        try (AsyncTrafficMonitor monitor = AsyncTrafficMonitor.builder().build()) {
+            CollectingSubscriber subscriber = new CollectingSubscriber();
+            monitor.asPublisher().subscribe(subscriber);
+            subscriber.subscription.request(0);
+            assertTrue("error", subscriber.error instanceof IllegalArgumentException);
+        }
+    }
+
+    private static void send(TrafficMonitor monitor, String path) {
+        ImmutableHttpRequest request = ImmutableHttpRequest.builder(URI.create("http://www.example.com" + path)).build();
+        ImmutableHttpResponse response = ImmutableHttpResponse.builder(200).build();
+        monitor.responseReceived(request, response);
+    }
+
+    private static class CollectingSubscriber implements Subscriber<HttpInteraction> {
+
+        public final List<HttpInteraction> received = Collections.synchronizedList(new ArrayList<>());
+        public final CountDownLatch completed = new CountDownLatch(1);
+        public volatile Subscription subscription;
+        public volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(HttpInteraction interaction) {
+            received.add(interaction);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        public boolean awaitCount(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() < count) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return true;
+        }
+    }
+}
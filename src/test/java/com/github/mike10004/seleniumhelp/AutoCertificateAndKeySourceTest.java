@@ -15,10 +15,14 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Base64;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class AutoCertificateAndKeySourceTest {
 
@@ -41,6 +45,23 @@ public class AutoCertificateAndKeySourceTest {
         }
     }
 
+    @Test
+    public void prewarm() throws Exception {
+        Path scratchDir = temporaryFolder.getRoot().toPath();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (CountingAutoCertificateAndKeySource certificateAndKeySource = new CountingAutoCertificateAndKeySource(scratchDir, random)) {
+            certificateAndKeySource.prewarm(executor);
+            executor.shutdown();
+            assertTrue("generated in background", executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals("num generate invocations after prewarm", 1, certificateAndKeySource.generateInvocations.get());
+            assertNotNull("certificate", certificateAndKeySource.load().getCertificate());
+            assertEquals("num generate invocations after load", 1, certificateAndKeySource.generateInvocations.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("no files in scratch dir", 0, scratchDir.toFile().list().length);
+    }
+
     private static Random random = new Random(AutoCertificateAndKeySourceTest.class.getName().hashCode());
 
     private File createTempPathname(Path scratchDir, String suffix) throws IOException {
@@ -0,0 +1,94 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarLog;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchCollectionTest {
+
+    @Test
+    public void collectAll() throws Exception {
+        AtomicInteger active = new AtomicInteger(), maxActive = new AtomicInteger();
+        List<TrafficGenerator<Integer>> generators = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            generators.add(driver -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } finally {
+                    active.decrementAndGet();
+                }
+                if (value == 3) {
+                    throw new IOException("failed on purpose");
+                }
+                return value;
+            });
+        }
+        Set<Integer> results = new HashSet<>();
+        int failures = 0;
+        try (BatchCollection<Integer> batch = new StubCollector().collectAll(generators, 3)) {
+            while (batch.hasNext()) {
+                BatchCollection.Outcome<Integer> outcome = batch.next();
+                if (outcome.isSuccess()) {
+                    assertEquals("result matches index", outcome.index, outcome.get().result.intValue());
+                    results.add(outcome.get().result);
+                } else {
+                    failures++;
+                    assertEquals("failed index", 3, outcome.index);
+                    assertTrue(outcome.getException() instanceof IOException);
+                }
+            }
+        }
+        assertEquals("results", 9, results.size());
+        assertEquals("failures", 1, failures);
+        assertTrue("parallelism bounded", maxActive.get() <= 3);
+    }
+
+    @Test
+    public void empty() throws Exception {
+        try (BatchCollection<Object> batch = new StubCollector().collectAll(new ArrayList<TrafficGenerator<Object>>(), 2)) {
+            assertFalse(batch.hasNext());
+        }
+    }
+
+    private static class StubCollector implements TrafficCollector {
+
+        @Override
+        public <R> HarPlus<R> collect(TrafficGenerator<R> generator) throws IOException {
+            return collect(generator, null);
+        }
+
+        @Override
+        public <R> HarPlus<R> collect(TrafficGenerator<R> generator, @Nullable TrafficMonitor monitor) throws IOException {
+            R result = generator.generate(null);
+            Har har = new Har();
+            har.setLog(new HarLog());
+            return new HarPlus<>(har, result);
+        }
+
+        @Override
+        public <R> R monitor(TrafficGenerator<R> generator, TrafficMonitor monitor) throws IOException {
+            return generator.generate(null);
+        }
+
+        @Override
+        public <R> R drive(TrafficGenerator<R> generator) throws IOException {
+            return generator.generate(null);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.mike10004.seleniumhelp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BodyAccumulatorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void belowThreshold() throws Exception {
+        BodyAccumulator body = new BodyAccumulator(BodyCaptureLimits.builder().memoryThreshold(8).build());
+        body.append(Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+        body.append(Unpooled.wrappedBuffer(new byte[]{4, 5}));
+        body.finish();
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, body.toByteArrayIfInMemory());
+        assertNull("file", body.getFile());
+        assertFalse("truncated", body.isTruncated());
+    }
+
+    @Test
+    public void spill() throws Exception {
+        BodyCaptureLimits limits = BodyCaptureLimits.builder()
+                .memoryThreshold(4)
+                .spillTo(temporaryFolder.getRoot().toPath())
+                .build();
+        BodyAccumulator body = new BodyAccumulator(limits);
+        body.append(Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+        body.append(Unpooled.wrappedBuffer(new byte[]{4, 5, 6}));
+        body.finish();
+        File file = body.getFile();
+        assertNotNull("file", file);
+        assertEquals("parent", temporaryFolder.getRoot(), file.getParentFile());
+        assertNull("in memory", body.toByteArrayIfInMemory());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, body.toByteSource().read());
+        assertEquals("size", 6, body.size());
+        assertFalse("truncated", body.isTruncated());
+    }
+
+    @Test
+    public void truncateAtThresholdWithoutScratchDir() throws Exception {
+        BodyAccumulator body = new BodyAccumulator(BodyCaptureLimits.builder().memoryThreshold(4).build());
+        body.append(Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+        body.append(Unpooled.wrappedBuffer(new byte[]{4, 5, 6}));
+        body.finish();
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, body.toByteArrayIfInMemory());
+        assertTrue("truncated", body.isTruncated());
+    }
+
+    @Test
+    public void truncateAtMaxBodySize() throws Exception {
+        BodyCaptureLimits limits = BodyCaptureLimits.builder()
+                .memoryThreshold(2)
+                .spillTo(temporaryFolder.getRoot().toPath())
+                .truncateAt(5)
+                .build();
+        BodyAccumulator body = new BodyAccumulator(limits);
+        byte[] bytes = new byte[16];
+        Arrays.fill(bytes, (byte) 7);
+        body.append(Unpooled.wrappedBuffer(bytes));
+        body.finish();
+        assertEquals("size", 5, body.size());
+        assertEquals("file length", 5, body.toByteSource().size());
+        assertTrue("truncated", body.isTruncated());
+    }
+
+    @Test
+    public void append_readerIndexUnchanged() {
+        BodyAccumulator body = new BodyAccumulator(BodyCaptureLimits.builder().memoryThreshold(8).build());
+        ByteBuf buffer = Unpooled.wrappedBuffer(new byte[]{1, 2, 3});
+        body.append(buffer);
+        assertEquals("reader index", 0, buffer.readerIndex());
+    }
+}
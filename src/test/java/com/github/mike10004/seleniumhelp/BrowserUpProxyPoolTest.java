@@ -0,0 +1,92 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.BrowserUpProxy;
+import com.browserup.bup.BrowserUpProxyServer;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BrowserUpProxyPoolTest {
+
+    @Test
+    public void reuseWithEqualKey() throws Exception {
+        AtomicInteger initializations = new AtomicInteger();
+        try (BrowserUpProxyPool pool = BrowserUpProxyPool.builder().maxSize(2).build()) {
+            BrowserUpProxy first;
+            try (BrowserUpProxyPool.Lease lease = pool.lease("a", proxy -> initializations.incrementAndGet())) {
+                first = lease.getProxy();
+                assertTrue("started", first.isStarted());
+                assertEquals("leased", 1, pool.getLeasedCount());
+            }
+            assertEquals("idle", 1, pool.getIdleCount());
+            try (BrowserUpProxyPool.Lease lease = pool.lease("a", proxy -> initializations.incrementAndGet())) {
+                assertSame("reused", first, lease.getProxy());
+            }
+            assertEquals("initializations", 1, initializations.get());
+        }
+    }
+
+    @Test
+    public void leaseWithInstantiator() throws Exception {
+        AtomicInteger poolInstantiations = new AtomicInteger(), leaseInstantiations = new AtomicInteger();
+        try (BrowserUpProxyPool pool = BrowserUpProxyPool.builder()
+                .proxyInstantiator(() -> {
+                    poolInstantiations.incrementAndGet();
+                    return new BrowserUpProxyServer();
+                }).build()) {
+            try (BrowserUpProxyPool.Lease ignore = pool.lease("a", () -> {
+                leaseInstantiations.incrementAndGet();
+                return new BrowserUpProxyServer();
+            }, proxy -> {})) {
+                assertEquals("lease instantiations", 1, leaseInstantiations.get());
+            }
+            assertEquals("pool instantiations", 0, poolInstantiations.get());
+        }
+    }
+
+    @Test
+    public void evictOtherKeyAtCapacity() throws Exception {
+        try (BrowserUpProxyPool pool = BrowserUpProxyPool.builder().maxSize(1).build()) {
+            BrowserUpProxy first;
+            try (BrowserUpProxyPool.Lease lease = pool.lease("a", proxy -> {})) {
+                first = lease.getProxy();
+            }
+            try (BrowserUpProxyPool.Lease lease = pool.lease("b", proxy -> {})) {
+                assertNotSame("new proxy", first, lease.getProxy());
+                assertFalse("evicted proxy stopped", BrowserUpProxyPool.isRunning(first));
+            }
+            assertEquals("idle", 1, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void discardUnhealthy() throws Exception {
+        try (BrowserUpProxyPool pool = BrowserUpProxyPool.builder().build()) {
+            BrowserUpProxy first;
+            try (BrowserUpProxyPool.Lease lease = pool.lease("a", proxy -> {})) {
+                first = lease.getProxy();
+                lease.invalidate();
+            }
+            assertEquals("idle", 0, pool.getIdleCount());
+            assertTrue("stopped", ((BrowserUpProxyServer) first).isStopped());
+            try (BrowserUpProxyPool.Lease lease = pool.lease("a", proxy -> {})) {
+                assertNotSame("new proxy", first, lease.getProxy());
+            }
+        }
+    }
+
+    @Test(expected = BrowserUpProxyPool.ProxyPoolException.class)
+    public void leaseTimeout() throws Exception {
+        try (BrowserUpProxyPool pool = BrowserUpProxyPool.builder().maxSize(1).leaseTimeout(Duration.ofMillis(10)).build();
+             BrowserUpProxyPool.Lease ignore = pool.lease("a", proxy -> {})) {
+            pool.lease("a", proxy -> {});
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.mitm.CertificateAndKey;
+import com.browserup.bup.mitm.CertificateAndKeySource;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.TrustManagerFactory;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingImpersonatingMitmManagerTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sharedAcrossManagers() throws Exception {
+        CertificateAndKeySource rootSource = TestCertificateAndKeySource.create();
+        ImpersonationCache cache = ImpersonationCache.builder().maximumSize(2).build();
+        new CachingImpersonatingMitmManager(rootSource, cache).clientSslEngineFor(connect("www.example.com"), null);
+        new CachingImpersonatingMitmManager(rootSource, cache).clientSslEngineFor(connect("WWW.EXAMPLE.COM"), null);
+        assertEquals("size", 1, cache.size());
+        assertEquals("misses", 1, cache.stats().missCount());
+        assertEquals("hits", 1, cache.stats().hitCount());
+        CachingImpersonatingMitmManager manager = new CachingImpersonatingMitmManager(rootSource, cache);
+        manager.clientSslEngineFor(connect("a.example.com"), null);
+        manager.clientSslEngineFor(connect("b.example.com"), null);
+        assertEquals("size bounded", 2, cache.size());
+    }
+
+    @Test
+    public void keyAlgorithmsCachedSeparately() throws Exception {
+        CertificateAndKeySource rootSource = TestCertificateAndKeySource.create();
+        ImpersonationCache cache = ImpersonationCache.builder().build();
+        new CachingImpersonatingMitmManager(rootSource, cache, CertificateKeyAlgorithm.RSA).clientSslEngineFor(connect("www.example.com"), null);
+        new CachingImpersonatingMitmManager(rootSource, cache, CertificateKeyAlgorithm.EC_P256).clientSslEngineFor(connect("www.example.com"), null);
+        assertEquals("size", 2, cache.size());
+    }
+
+    @Test
+    public void handshake() throws Exception {
+        X509Certificate leaf = handshake(TestCertificateAndKeySource.create(), CertificateKeyAlgorithm.RSA);
+        assertEquals("leaf key algorithm", "RSA", leaf.getPublicKey().getAlgorithm());
+    }
+
+    @Test
+    public void handshake_ellipticCurve() throws Exception {
+        try (AutoCertificateAndKeySource rootSource = new AutoCertificateAndKeySource(temporaryFolder.getRoot().toPath(), CertificateKeyAlgorithm.EC_P256)) {
+            assertEquals("root key algorithm", "EC", rootSource.load().getCertificate().getPublicKey().getAlgorithm());
+            X509Certificate leaf = handshake(rootSource, CertificateKeyAlgorithm.EC_P256);
+            assertEquals("leaf key algorithm", "EC", leaf.getPublicKey().getAlgorithm());
+        }
+    }
+
+    private static X509Certificate handshake(CertificateAndKeySource rootSource, CertificateKeyAlgorithm keyAlgorithm) throws Exception {
+        CachingImpersonatingMitmManager manager = new CachingImpersonatingMitmManager(rootSource, ImpersonationCache.builder().build(), keyAlgorithm);
+        SSLEngine server = manager.clientSslEngineFor(connect("www.example.com"), null);
+        server.setUseClientMode(false);
+        SSLEngine client = trustingContext(rootSource.load()).createSSLEngine("www.example.com", 443);
+        client.setUseClientMode(true);
+        handshake(client, server);
+        X509Certificate leaf = (X509Certificate) client.getSession().getPeerCertificates()[0];
+        assertTrue("subject " + leaf.getSubjectX500Principal(), leaf.getSubjectX500Principal().getName().contains("CN=www.example.com"));
+        return leaf;
+    }
+
+    private static HttpRequest connect(String host) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, host + ":443");
+        request.headers().set(HttpHeaderNames.HOST, host + ":443");
+        return request;
+    }
+
+    private static SSLContext trustingContext(CertificateAndKey root) throws Exception {
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("root", root.getCertificate());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(trustStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server) throws Exception {
+        int packetSize = Math.max(client.getSession().getPacketBufferSize(), server.getSession().getPacketBufferSize());
+        int appSize = Math.max(client.getSession().getApplicationBufferSize(), server.getSession().getApplicationBufferSize());
+        ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4), serverToClient = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer empty = ByteBuffer.allocate(0), sink = ByteBuffer.allocate(appSize * 2);
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int i = 0; i < 1000 && !(isFinished(client) && isFinished(server)); i++) {
+            step(client, empty, clientToServer, serverToClient, sink);
+            step(server, empty, serverToClient, clientToServer, sink);
+        }
+        assertTrue("handshake finished", isFinished(client) && isFinished(server));
+    }
+
+    private static boolean isFinished(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || status == SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    private static void step(SSLEngine engine, ByteBuffer empty, ByteBuffer outbound, ByteBuffer inbound, ByteBuffer sink) throws Exception {
+        switch (engine.getHandshakeStatus()) {
+            case NEED_WRAP:
+                engine.wrap(empty, outbound);
+                break;
+            case NEED_UNWRAP:
+                inbound.flip();
+                engine.unwrap(inbound, sink);
+                inbound.compact();
+                sink.clear();
+                break;
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.github.mike10004.seleniumhelp.CapturePolicy.Level;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CapturePolicyTest {
+
+    private final CapturePolicy policy = CapturePolicy.builder()
+            .rule(Pattern.compile("/api/"), "POST", null, Level.FULL)
+            .contentType(Pattern.compile("^(image|font|video)/"), Level.HEADERS_ONLY)
+            .url(Pattern.compile("\\.woff2?$"), Level.HEADERS_ONLY)
+            .defaultLevel(Level.TEXT_BODIES)
+            .build();
+
+    @Test
+    public void getLevel() {
+        assertEquals(Level.FULL, policy.getLevel("http://example.com/api/x", "post", "image/png"));
+        assertEquals(Level.HEADERS_ONLY, policy.getLevel("http://example.com/a.png", "GET", "image/png"));
+        assertEquals(Level.HEADERS_ONLY, policy.getLevel("http://example.com/a.woff", "GET", null));
+        assertEquals(Level.TEXT_BODIES, policy.getLevel("http://example.com/", "GET", "text/html"));
+    }
+
+    @Test
+    public void getMaximumLevel() {
+        assertEquals(Level.FULL, policy.getMaximumLevel("http://example.com/api/x", "POST"));
+        assertEquals(Level.HEADERS_ONLY, policy.getMaximumLevel("http://example.com/a.woff2", "GET"));
+        assertEquals(Level.TEXT_BODIES, policy.getMaximumLevel("http://example.com/", "GET"));
+    }
+
+    @Test
+    public void isResponseContentCaptured() {
+        assertTrue(policy.isResponseContentCaptured("http://example.com/", "GET", "text/html; charset=UTF-8"));
+        assertFalse(policy.isResponseContentCaptured("http://example.com/", "GET", "application/octet-stream"));
+        assertFalse(policy.isResponseContentCaptured("http://example.com/x.png", "GET", "image/png"));
+    }
+
+    @Test
+    public void isRequestContentCaptured() {
+        assertTrue(policy.isRequestContentCaptured("http://example.com/api/x", "POST", "application/octet-stream"));
+        assertTrue(policy.isRequestContentCaptured("http://example.com/form", "POST", "application/x-www-form-urlencoded"));
+        assertFalse(policy.isRequestContentCaptured("http://example.com/upload", "POST", "application/octet-stream"));
+        assertFalse(policy.isRequestContentCaptured("http://example.com/upload", "POST", null));
+        assertFalse(policy.isRequestContentCaptured("http://example.com/a.woff", "PUT", "text/plain"));
+    }
+
+    @Test
+    public void isCaptureAll() {
+        assertTrue(CapturePolicy.captureAll().isCaptureAll());
+        assertFalse(policy.isCaptureAll());
+    }
+}
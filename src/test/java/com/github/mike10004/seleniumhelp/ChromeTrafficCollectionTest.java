@@ -44,6 +44,16 @@ public class ChromeTrafficCollectionTest {
             testTrafficCollectorOnExampleDotCom(webDriverFactory);
         }
 
+        @Test
+        public void http_headless_pooledSessions() throws Exception {
+            Assume.assumeFalse("headless tests disabled", UnitTests.isHeadlessChromeTestsDisabled());
+            WebDriverFactory webDriverFactory = ChromeWebDriverFactory.builder()
+                    .configure(UnitTests.createChromeOptions())
+                    .configure(o -> o.setHeadless(true))
+                    .build();
+            testPooledSessionsCaptureCachedResource(webDriverFactory);
+        }
+
         @Test
         public void http_headless_brotli() throws Exception {
             Assume.assumeFalse("headless tests disabled", UnitTests.isHeadlessChromeTestsDisabled());
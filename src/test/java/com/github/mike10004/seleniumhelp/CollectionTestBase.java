@@ -5,6 +5,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HostAndPort;
+import com.google.common.net.HttpHeaders;
 import com.google.common.net.MediaType;
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
@@ -12,6 +13,9 @@ import com.browserup.harreader.model.HarContent;
 import com.browserup.harreader.model.HarEntry;
 import com.browserup.harreader.model.HarResponse;
 import com.browserup.bup.mitm.CertificateAndKeySource;
+import io.github.mike10004.nanochamp.server.NanoControl;
+import io.github.mike10004.nanochamp.server.NanoResponse;
+import io.github.mike10004.nanochamp.server.NanoServer;
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.validator.routines.InetAddressValidator;
 import org.apache.http.client.utils.URIBuilder;
@@ -33,11 +37,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static org.junit.Assert.assertEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class CollectionTestBase {
@@ -151,6 +158,41 @@ public class CollectionTestBase {
         return content;
     }
 
+    /**
+     * Collects traffic from a page with a cacheable script in two consecutive sessions
+     * leased from a pooled webdriver factory, and checks that the script is captured both times.
+     * @param webDriverFactory the factory that launches the browser to be pooled
+     */
+    protected void testPooledSessionsCaptureCachedResource(WebDriverFactory webDriverFactory) throws IOException {
+        NanoServer server = NanoServer.builder()
+                .getPath("/", session -> NanoResponse.status(200)
+                        .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                        .htmlUtf8("<html><body><script src=\"/cached.js\"></script></body></html>"))
+                .getPath("/cached.js", session -> NanoResponse.status(200)
+                        .header(HttpHeaders.CACHE_CONTROL, "max-age=3600")
+                        .javascript("var cached = true;", UTF_8))
+                .build();
+        try (NanoControl ctrl = server.startServer();
+             BrowserUpProxyPool proxyPool = BrowserUpProxyPool.builder().maxSize(1).build();
+             PooledWebDriverFactory pooledFactory = PooledWebDriverFactory.builder(webDriverFactory).maxSessions(1).build()) {
+            String pageUrl = ctrl.baseUri().toString(), scriptUrl = ctrl.baseUri().resolve("/cached.js").toString();
+            TrafficCollector collector = TrafficCollector.builder(pooledFactory)
+                    .proxyPool(proxyPool)
+                    .build();
+            for (int lease = 1; lease <= 2; lease++) {
+                HarPlus<Void> collection = collector.collect(driver -> {
+                    driver.get(pageUrl);
+                    return null;
+                });
+                List<String> requestUrls = collection.har.getLog().getEntries().stream()
+                        .map(entry -> entry.getRequest().getUrl())
+                        .collect(Collectors.toList());
+                assertTrue("lease " + lease + " captured " + scriptUrl + " in " + requestUrls, requestUrls.contains(scriptUrl));
+            }
+            assertEquals("reused browser", 1, pooledFactory.getMetrics().getHitCount());
+        }
+    }
+
     @SuppressWarnings("UnusedReturnValue")
     protected HarContent testTrafficCollectorOnHttpbin(WebDriverFactory webDriverFactory) throws IOException {
         int port = getPort();
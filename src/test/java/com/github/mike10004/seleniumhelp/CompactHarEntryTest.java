@@ -0,0 +1,64 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarHeader;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CompactHarEntryTest {
+
+    @Test
+    public void compactAndRestore() {
+        HeaderDictionary dictionary = new HeaderDictionary();
+        CompactHarEntry a = CompactHarEntry.compact(entry("a"), dictionary);
+        CompactHarEntry b = CompactHarEntry.compact(entry("b"), dictionary);
+        HarEntry restoredA = a.toHarEntry(), restoredB = b.toHarEntry();
+        List<HarHeader> headersA = restoredA.getResponse().getHeaders(), headersB = restoredB.getResponse().getHeaders();
+        assertEquals("num headers", 2, headersA.size());
+        assertEquals("name", "Content-Type", headersA.get(0).getName());
+        assertEquals("value", "text/html", headersA.get(0).getValue());
+        assertEquals("distinct value", "b", headersB.get(1).getValue());
+        assertSame("interned name", headersA.get(0).getName(), headersB.get(0).getName());
+        assertSame("interned value", headersA.get(0).getValue(), headersB.get(0).getValue());
+        assertEquals("request header", "User-Agent", restoredA.getRequest().getHeaders().get(0).getName());
+        assertEquals("url", "http://www.example.com/a", restoredA.getRequest().getUrl());
+    }
+
+    @Test
+    public void headerWithComment() {
+        HarEntry entry = entry("a");
+        entry.getResponse().getHeaders().get(0).setComment("note");
+        HarEntry restored = CompactHarEntry.compact(entry, new HeaderDictionary()).toHarEntry();
+        assertEquals("comment", "note", restored.getResponse().getHeaders().get(0).getComment());
+        assertEquals("request headers", 1, restored.getRequest().getHeaders().size());
+    }
+
+    @Test
+    public void compactHeaders_empty() {
+        assertSame(CompactHeaders.EMPTY, CompactHeaders.of(null, new HeaderDictionary()));
+        assertNotSame(CompactHeaders.EMPTY.toHarHeaders(), CompactHeaders.EMPTY.toHarHeaders());
+    }
+
+    private static HarEntry entry(String id) {
+        HarEntry entry = new HarEntry();
+        entry.setStartedDateTime(new Date());
+        HarRequest request = new HarRequest();
+        request.setUrl("http://www.example.com/" + id);
+        request.getHeaders().add(BrowserMobs.newHarHeader(new String("User-Agent"), "Mozilla/5.0 " + id));
+        entry.setRequest(request);
+        HarResponse response = new HarResponse();
+        response.setStatus(200);
+        response.getHeaders().add(BrowserMobs.newHarHeader(new String("Content-Type"), new String("text/html")));
+        response.getHeaders().add(BrowserMobs.newHarHeader("X-Id", id));
+        entry.setResponse(response);
+        return entry;
+    }
+}
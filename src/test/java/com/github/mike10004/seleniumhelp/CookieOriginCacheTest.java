@@ -0,0 +1,33 @@
+package com.github.mike10004.seleniumhelp;
+
+import org.apache.http.cookie.CookieOrigin;
+import org.junit.Test;
+
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CookieOriginCacheTest {
+
+    @Test
+    public void get() throws Exception {
+        CookieOriginCache cache = new CookieOriginCache();
+        String url = "https://www.example.com:8443/a/b?c=d#e";
+        CookieOrigin origin = cache.get(url);
+        CookieOrigin expected = CookieUtility.getInstance().buildCookieOrigin(new URL(url)).origin;
+        assertEquals("host", expected.getHost(), origin.getHost());
+        assertEquals("port", expected.getPort(), origin.getPort());
+        assertEquals("path", expected.getPath(), origin.getPath());
+        assertEquals("secure", expected.isSecure(), origin.isSecure());
+        assertSame("cached", origin, cache.get("https://www.example.com:8443/a/b?x=y"));
+        assertEquals("size", 1, cache.size());
+    }
+
+    @Test
+    public void stripQueryAndFragment() {
+        assertEquals("http://x/y", CookieOriginCache.stripQueryAndFragment("http://x/y?z#w"));
+        assertEquals("http://x/y", CookieOriginCache.stripQueryAndFragment("http://x/y#w?z"));
+        assertEquals("http://x/y", CookieOriginCache.stripQueryAndFragment("http://x/y"));
+    }
+}
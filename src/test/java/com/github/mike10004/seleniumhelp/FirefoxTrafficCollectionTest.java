@@ -60,6 +60,16 @@ public class FirefoxTrafficCollectionTest {
             testTrafficCollectorOnExampleDotCom(webDriverFactory);
         }
 
+        @Test
+        public void http_headless_pooledSessions() throws Exception {
+            WebDriverFactory webDriverFactory = FirefoxWebDriverFactory.builder()
+                    .binary(UnitTests.createFirefoxBinarySupplier())
+                    .configure(o -> o.setHeadless(true))
+                    .disableCache()
+                    .build();
+            testPooledSessionsCaptureCachedResource(webDriverFactory);
+        }
+
     }
 
     public static class HttpsTest extends CollectionTestBase {
@@ -1,5 +1,7 @@
 package com.github.mike10004.seleniumhelp;
 
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarLog;
 import com.browserup.harreader.model.HarTiming;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HttpHeaders;
@@ -12,9 +14,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -50,6 +54,30 @@ public class HarAnalysisTest {
         assertEquals("cookies", cookie1, cookie2);
     }
 
+    @Test
+    public void findCookies_parallel() throws Exception {
+        List<HarEntry> entries = new ArrayList<>();
+        Date start = new Date(1500000000000L);
+        for (int i = 0; i < 500; i++) {
+            HarEntry entry = createHarEntry(new Date(start.getTime() + i * 1000L), 10, ImmutableMap.of("c" + (i % 37), "v" + i));
+            entry.getRequest().setUrl(String.format("https://host%d.example.com/path%d/page?q=%d", i % 7, i % 3, i));
+            entries.add(entry);
+            entries.add(createHarEntry(start, 10, ImmutableMap.of()));
+        }
+        Har har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(entries);
+        List<DeserializableCookie> expected = HarAnalysis.of(har).findCookies().makeUltimateCookieList();
+        checkState(expected.size() > 37, "expected many distinct cookies but found %s", expected.size());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<DeserializableCookie> actual = HarAnalysis.of(har).findCookies(pool).makeUltimateCookieList();
+            assertEquals("cookies", expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     private boolean isEqual(HarEntry entry1, HarEntry entry2) {
         Gson gson = new Gson();
         String json1 = gson.toJson(entry1);
@@ -0,0 +1,155 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+import com.google.common.base.Strings;
+import io.github.mike10004.seleniumcapture.HarBodyStore;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class HarEntrySpillingFilterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void spillEntry() throws Exception {
+        List<HarEntry> entries = Collections.synchronizedList(new ArrayList<>());
+        HarEntrySink sink = new HarEntrySink() {
+            @Override
+            public void entryCompleted(HarEntry entry) {
+                entries.add(entry);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/foo?bar=baz");
+        HarEntrySpillingFilter filter = new HarEntrySpillingFilter(request, null, sink, monitor, CapturePolicy.captureAll());
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        assertEquals("entries", 1, entries.size());
+        HarEntry entry = entries.get(0);
+        assertEquals("url", "http://www.example.com/foo?bar=baz", entry.getRequest().getUrl());
+        assertEquals("query params", 1, entry.getRequest().getQueryString().size());
+        assertEquals("status", 200, entry.getResponse().getStatus());
+        assertEquals("text", "hello", entry.getResponse().getContent().getText());
+        assertEquals("monitor notifications", 1, monitor.interactions.size());
+    }
+
+    @Test
+    public void monitorReceivesHeadersWhenSinkCompactsEntry() throws Exception {
+        MemoryHarEntrySink sink = new MemoryHarEntrySink();
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+        request.headers().set(HttpHeaderNames.ACCEPT, "text/plain");
+        HarEntrySpillingFilter filter = new HarEntrySpillingFilter(request, null, sink, monitor, CapturePolicy.captureAll());
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "no-cache");
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        assertEquals("monitor notifications", 1, monitor.interactions.size());
+        HttpInteraction interaction = monitor.interactions.get(0);
+        assertEquals("monitor request headers", 1, interaction.request.headers.size());
+        assertEquals("monitor response headers", 2, interaction.response.headers.size());
+        HarEntry entry = sink.toHar().getLog().getEntries().get(0);
+        assertEquals("HAR response headers", 2, entry.getResponse().getHeaders().size());
+    }
+
+    @Test
+    public void monitorNotifiedBeforeEntryProcessors() throws Exception {
+        MemoryHarEntrySink memorySink = new MemoryHarEntrySink();
+        HarEntryProcessor redactor = entry -> entry.getResponse().getHeaders().clear();
+        RecordingMonitor monitor = new RecordingMonitor();
+        try (ProcessingHarEntrySink sink = new ProcessingHarEntrySink(memorySink, Collections.singletonList(redactor), 1, 1)) {
+            DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+            HarEntrySpillingFilter filter = new HarEntrySpillingFilter(request, null, sink, monitor, CapturePolicy.captureAll());
+            filter.clientToProxyRequest(request);
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+            response.headers().set(HttpHeaderNames.CACHE_CONTROL, "no-cache");
+            filter.serverToProxyResponse(response);
+            filter.proxyToClientResponse(response);
+        }
+        assertEquals("monitor response headers", 1, monitor.interactions.get(0).response.headers.size());
+        assertEquals("HAR response headers", 0, memorySink.toHar().getLog().getEntries().get(0).getResponse().getHeaders().size());
+    }
+
+    @Test
+    public void spillRequestBody() throws Exception {
+        BodyCaptureLimits limits = BodyCaptureLimits.builder()
+                .memoryThreshold(16)
+                .spillTo(temporaryFolder.getRoot().toPath())
+                .build();
+        CapturePolicy policy = CapturePolicy.builder().bodyLimits(limits).build();
+        MemoryHarEntrySink sink = new MemoryHarEntrySink();
+        RecordingMonitor monitor = new RecordingMonitor();
+        String text = Strings.repeat("hello, world\n", 100);
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://www.example.com/upload", Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        HarEntrySpillingFilter filter = new HarEntrySpillingFilter(request, null, sink, monitor, policy);
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        HarEntry entry = sink.toHar().getLog().getEntries().get(0);
+        Object contentFile = entry.getRequest().getAdditional().get("_contentFile");
+        assertNotNull("content file", contentFile);
+        assertEquals("file content", text, new String(Files.readAllBytes(new File(contentFile.toString()).toPath()), StandardCharsets.UTF_8));
+        assertEquals("mime type", "text/plain; charset=UTF-8", entry.getRequest().getPostData().getMimeType());
+        assertEquals("monitor request text", text, monitor.interactions.get(0).request.getContentAsChars().read());
+    }
+
+    @Test
+    public void bodyStore() throws Exception {
+        HarBodyStore bodyStore = new HarBodyStore(temporaryFolder.getRoot().toPath());
+        MemoryHarEntrySink sink = new MemoryHarEntrySink();
+        for (int i = 0; i < 2; i++) {
+            DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/bundle.js?v=" + i);
+            HarEntrySpillingFilter filter = new HarEntrySpillingFilter(request, null, sink, null, CapturePolicy.captureAll(), bodyStore);
+            filter.clientToProxyRequest(request);
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.copiedBuffer("var x = 1;", StandardCharsets.UTF_8));
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/javascript; charset=UTF-8");
+            filter.serverToProxyResponse(response);
+            filter.proxyToClientResponse(response);
+        }
+        Har har = sink.toHar();
+        assertEquals("entries", 2, har.getLog().getEntries().size());
+        for (HarEntry entry : har.getLog().getEntries()) {
+            assertNull("text", entry.getResponse().getContent().getText());
+            assertNotNull("hash", entry.getResponse().getAdditional().get(HarBodyStore.HASH_FIELD));
+        }
+        File[] shards = temporaryFolder.getRoot().listFiles();
+        assertEquals("num shards", 1, shards.length);
+        assertEquals("num files", 1, shards[0].listFiles().length);
+        bodyStore.resolveLazily(har);
+        assertEquals("resolved text", "var x = 1;", har.getLog().getEntries().get(1).getResponse().getContent().getText());
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarHeader;
+import com.browserup.harreader.model.HarLog;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HarIndexTest {
+
+    @Test
+    public void parseHost() {
+        assertEquals("www.example.com", HarIndex.parseHost("https://www.example.com/a?b=c"));
+        assertEquals("www.example.com", HarIndex.parseHost("http://WWW.Example.com:8080"));
+        assertEquals("example.com", HarIndex.parseHost("http://user:pw@example.com:81/x@y"));
+        assertEquals("[::1]", HarIndex.parseHost("http://[::1]:8080/"));
+        assertEquals("localhost", HarIndex.parseHost("http://localhost?q#f"));
+        assertNull(HarIndex.parseHost("data:text/plain,hello"));
+    }
+
+    @Test
+    public void queries() {
+        List<HarEntry> entries = Arrays.asList(
+                entry("https://www.example.com/", 200, "Content-Type", "Set-Cookie", "set-cookie"),
+                entry("https://www.example.com/api/v1/things", 302, "Location"),
+                entry("https://cdn.example.com/app.js", 404),
+                entry("https://WWW.EXAMPLE.COM/api/v1/other", 500, "SET-COOKIE"),
+                entry("https://www.example.com/api/v1/things", 200),
+                entry("https://www.example.com/apiary", null));
+        HarIndex index = HarIndex.build(entries);
+        assertEquals("hosts", ImmutableSet.of("www.example.com", "cdn.example.com"), index.getHosts());
+        assertEquals("by host", positions(entries, 0, 1, 3, 4, 5), index.findByHost("www.Example.com"));
+        assertEquals("by status", positions(entries, 0, 4), index.findByStatus(200));
+        assertEquals("no response", positions(entries, 5), index.findByStatus(HarIndex.NO_RESPONSE_STATUS));
+        assertEquals("by status range", positions(entries, 2, 3), index.findByStatus(400, 599));
+        assertEquals("by status range across statuses", positions(entries, 0, 1, 4), index.findByStatus(200, 399));
+        assertEquals("by status absent", positions(entries), index.findByStatus(418));
+        assertEquals("by url", positions(entries, 1, 4), index.findByUrl("https://www.example.com/api/v1/things"));
+        assertEquals("by url prefix", positions(entries, 1, 4, 5), index.findByUrlPrefix("https://www.example.com/api"));
+        assertEquals("by url prefix slash", positions(entries, 1, 4), index.findByUrlPrefix("https://www.example.com/api/"));
+        assertEquals("set-cookie", positions(entries, 0, 3), index.findWithResponseHeader("Set-Cookie"));
+        assertEquals("request header", positions(entries, 0, 1, 2, 3, 4, 5), index.findWithRequestHeader("user-agent"));
+    }
+
+    @Test
+    public void harAnalysis() {
+        List<HarEntry> entries = Arrays.asList(
+                entry("https://www.example.com/", 301, "Location"),
+                entry("https://www.example.com/a", 304),
+                entry("https://www.example.com/b", 503),
+                entry("https://www.example.com/c", 200, "Location"),
+                entry("https://www.example.com/d", 302, "Location"),
+                entry("https://www.example.com/e", 307));
+        // compacted entries have no header lists
+        entries.get(5).getResponse().setHeaders(null);
+        Har har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(new ArrayList<>(entries));
+        HarAnalysis analysis = HarAnalysis.of(har);
+        assertEquals("redirects", positions(entries, 0, 4), analysis.findRedirects());
+        assertEquals("errors", positions(entries, 2), analysis.findErrorResponses());
+        assertEquals("by host", entries, analysis.findEntriesByHost("www.example.com"));
+        assertEquals("by url prefix", positions(entries, 1), analysis.findEntriesByUrlPrefix("https://www.example.com/a"));
+        assertEquals("by status", positions(entries, 1), analysis.findEntriesByStatus(304));
+    }
+
+    private static List<HarEntry> positions(List<HarEntry> entries, int... positions) {
+        return Arrays.stream(positions).mapToObj(entries::get).collect(Collectors.toList());
+    }
+
+    private static HarEntry entry(String url, Integer status, String... responseHeaderNames) {
+        HarEntry entry = new HarEntry();
+        entry.setStartedDateTime(new Date());
+        HarRequest request = new HarRequest();
+        request.setUrl(url);
+        request.getHeaders().add(header("User-Agent"));
+        entry.setRequest(request);
+        if (status != null) {
+            HarResponse response = new HarResponse();
+            response.setStatus(status);
+            for (String name : responseHeaderNames) {
+                response.getHeaders().add(header(name));
+            }
+            entry.setResponse(response);
+        } else {
+            entry.setResponse(null);
+        }
+        return entry;
+    }
+
+    private static HarHeader header(String name) {
+        HarHeader header = new HarHeader();
+        header.setName(name);
+        header.setValue("x");
+        return header;
+    }
+}
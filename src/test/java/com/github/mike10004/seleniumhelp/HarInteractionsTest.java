@@ -32,6 +32,15 @@ public class HarInteractionsTest {
         assertEquals("userInfo", null, uri.getUserInfo());
     }
 
+    @Test
+    public void parseUri_validAndEncoded() throws Exception {
+        URI valid = HarInteractions.parseUri("http://user@www.example.com:8080/a/b?c=d#e");
+        assertEquals("valid", URI.create("http://user@www.example.com:8080/a/b?c=d#e"), valid);
+        URI encoded = HarInteractions.parseUri("http://www.example.com/a%20b?c=%3D");
+        assertEquals("encoded path", "/a%20b", encoded.getPath());
+        assertEquals("encoded query", "c=%3D", encoded.getQuery());
+    }
+
     private static String toString(URI uri) {
         return MoreObjects.toStringHelper(uri)
                 .add("scheme", uri.getScheme())
@@ -0,0 +1,29 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HeaderDictionaryTest {
+
+    @Test
+    public void intern() {
+        HeaderDictionary dictionary = new HeaderDictionary(2, 16);
+        String first = new String("text/html");
+        assertSame("first", first, dictionary.intern(first));
+        assertSame("equal", first, dictionary.intern(new String("text/html")));
+        assertNull("null", dictionary.intern(null));
+        String tooLong = Strings.repeat("x", 17);
+        dictionary.intern(tooLong);
+        assertEquals("size after too long", 1, dictionary.size());
+        dictionary.intern("gzip");
+        String absent = new String("nginx");
+        assertSame("full", absent, dictionary.intern(absent));
+        assertNotSame("not added when full", absent, dictionary.intern(new String("nginx")));
+        assertEquals("size", 2, dictionary.size());
+    }
+}
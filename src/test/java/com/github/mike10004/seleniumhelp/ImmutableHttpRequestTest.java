@@ -1,6 +1,7 @@
 package com.github.mike10004.seleniumhelp;
 
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.io.CharSource;
 import org.junit.Test;
 
 import java.net.URI;
@@ -16,4 +17,25 @@ public class ImmutableHttpRequestTest {
         assertEquals(ImmutableMultimap.of("foo", "bar"), request.parseQueryParams());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void parseFormParams() throws Exception {
+        URI uri = URI.create("http://example.com/submit");
+        ImmutableHttpRequest request = ImmutableHttpRequest.builder(uri)
+                .method("POST")
+                .addHeaders(ImmutableMultimap.of("Content-Type", "application/x-www-form-urlencoded").entries())
+                .content(CharSource.wrap("foo=bar&baz=gaw+gaw"))
+                .build();
+        assertEquals(ImmutableMultimap.of("foo", "bar", "baz", "gaw gaw"), request.parseFormParams());
+        assertSame("memoized", request.parseFormParams(), request.parseFormParams());
+    }
+
+    @Test
+    public void parseFormParams_notForm() throws Exception {
+        ImmutableHttpRequest request = ImmutableHttpRequest.builder(URI.create("http://example.com/submit"))
+                .addHeaders(ImmutableMultimap.of("Content-Type", "text/plain").entries())
+                .content(CharSource.wrap("foo=bar"))
+                .build();
+        assertEquals(ImmutableMultimap.of(), request.parseFormParams());
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.github.mike10004.seleniumhelp;
+
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.openssl.PEMParser;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class JcaKeystoreFileCreatorTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Random random;
+    private KeystoreInput keystoreInput;
+    private JcaKeystoreFileCreator keystoreFileCreator;
+
+    @Before
+    public void setUp() throws Exception {
+        random = new Random(getClass().getName().hashCode());
+        String password = "shibboleth";
+        keystoreInput = KeystoreInput.wrap(AutoCertificateAndKeySource.generateKeystoreBytes(password), password);
+        keystoreFileCreator = new JcaKeystoreFileCreator();
+    }
+
+    @Test
+    public void createPKCS12File() throws Exception {
+        File p12File = KeystoreFileCreator.createUniquePathname(temporaryFolder.getRoot(), ".p12", random);
+        keystoreFileCreator.createPKCS12File(keystoreInput, p12File);
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(p12File)) {
+            keyStore.load(in, keystoreInput.getPassword().toCharArray());
+        }
+        Key key = keyStore.getKey(AutoCertificateAndKeySource.KEYSTORE_PRIVATE_KEY_ALIAS, keystoreInput.getPassword().toCharArray());
+        assertNotNull("private key", key);
+        assertNotNull("certificate", keyStore.getCertificate(AutoCertificateAndKeySource.KEYSTORE_PRIVATE_KEY_ALIAS));
+    }
+
+    @Test
+    public void createPemFile() throws Exception {
+        File p12File = KeystoreFileCreator.createUniquePathname(temporaryFolder.getRoot(), ".p12", random);
+        keystoreFileCreator.createPKCS12File(keystoreInput, p12File);
+        File pemFile = KeystoreFileCreator.createUniquePathname(temporaryFolder.getRoot(), ".pem", random);
+        keystoreFileCreator.createPemFile(p12File, keystoreInput.getPassword(), pemFile);
+        String pem = new String(Files.readAllBytes(pemFile.toPath()), StandardCharsets.US_ASCII);
+        checkPem(pem);
+    }
+
+    @Test
+    public void toPem_jksInput() throws Exception {
+        char[] password = keystoreInput.getPassword().toCharArray();
+        KeyStore pkcs12 = KeyStore.getInstance("PKCS12");
+        try (InputStream in = keystoreInput.getBytes().openStream()) {
+            pkcs12.load(in, password);
+        }
+        String alias = AutoCertificateAndKeySource.KEYSTORE_PRIVATE_KEY_ALIAS;
+        KeyStore jks = KeyStore.getInstance("JKS");
+        jks.load(null, null);
+        jks.setKeyEntry(alias, pkcs12.getKey(alias, password), password, pkcs12.getCertificateChain(alias));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jks.store(out, password);
+        String pem = keystoreFileCreator.toPem(KeystoreInput.wrap(out.toByteArray(), keystoreInput.getPassword()));
+        checkPem(pem);
+    }
+
+    @Test
+    public void toPem_parallel() throws Exception {
+        String expected = keystoreFileCreator.toPem(keystoreInput);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> keystoreFileCreator.toPem(keystoreInput)));
+            }
+            for (Future<String> future : futures) {
+                assertEquals("pem", expected, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void checkPem(String pem) throws Exception {
+        List<Object> objects = new ArrayList<>();
+        try (Reader reader = new StringReader(pem);
+             PEMParser parser = new PEMParser(reader)) {
+            Object object;
+            while ((object = parser.readObject()) != null) {
+                objects.add(object);
+            }
+        }
+        assertEquals("num objects", 2, objects.size());
+        assertTrue("certificate first", objects.get(0) instanceof X509CertificateHolder);
+        assertTrue("unencrypted private key", objects.get(1) instanceof PrivateKeyInfo);
+        X509CertificateHolder certificate = (X509CertificateHolder) objects.get(0);
+        Certificate expected = loadCertificate();
+        assertArrayEquals("certificate", expected.getEncoded(), certificate.getEncoded());
+    }
+
+    private Certificate loadCertificate() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(new ByteArrayInputStream(keystoreInput.getBytes().read()), keystoreInput.getPassword().toCharArray());
+        return keyStore.getCertificate(AutoCertificateAndKeySource.KEYSTORE_PRIVATE_KEY_ALIAS);
+    }
+}
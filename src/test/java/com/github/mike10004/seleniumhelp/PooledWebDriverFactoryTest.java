@@ -0,0 +1,121 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.google.common.net.HostAndPort;
+import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PooledWebDriverFactoryTest {
+
+    @Test
+    public void reuseSession() throws Exception {
+        FakeWebDriverFactory delegate = new FakeWebDriverFactory();
+        AtomicInteger resets = new AtomicInteger();
+        try (PooledWebDriverFactory factory = PooledWebDriverFactory.builder(delegate)
+                .resetAction(driver -> resets.incrementAndGet())
+                .build()) {
+            WebDriver first;
+            try (WebdrivingSession session = factory.startWebdriving(WebdrivingConfig.nonCapturing())) {
+                first = session.getWebDriver();
+            }
+            try (WebdrivingSession session = factory.startWebdriving(WebdrivingConfig.nonCapturing())) {
+                assertSame("reused", first, session.getWebDriver());
+            }
+            assertEquals("launched", 1, delegate.drivers.size());
+            assertEquals("resets", 2, resets.get());
+            PooledWebDriverFactory.Metrics metrics = factory.getMetrics();
+            assertEquals("leases", 2, metrics.getLeaseCount());
+            assertEquals("hit rate", 0.5, metrics.getHitRate(), 1e-6);
+            assertEquals("idle", 1, metrics.getIdleCount());
+        }
+        assertEquals("quit on close", 1, delegate.quitCount.get());
+    }
+
+    @Test
+    public void recycleAfterMaxUses() throws Exception {
+        FakeWebDriverFactory delegate = new FakeWebDriverFactory();
+        try (PooledWebDriverFactory factory = PooledWebDriverFactory.builder(delegate)
+                .resetAction(driver -> {})
+                .maxUses(2)
+                .build()) {
+            for (int i = 0; i < 3; i++) {
+                factory.startWebdriving(WebdrivingConfig.nonCapturing()).close();
+            }
+            assertEquals("launched", 2, delegate.drivers.size());
+            assertEquals("recycled", 1, factory.getMetrics().getRecycleCount());
+            assertEquals("quit", 1, delegate.quitCount.get());
+        }
+    }
+
+    @Test
+    public void differentProxyNotShared() throws Exception {
+        FakeWebDriverFactory delegate = new FakeWebDriverFactory();
+        try (PooledWebDriverFactory factory = PooledWebDriverFactory.builder(delegate)
+                .resetAction(driver -> {})
+                .build()) {
+            WebDriver first;
+            try (WebdrivingSession session = factory.startWebdriving(proxied(1234))) {
+                first = session.getWebDriver();
+            }
+            try (WebdrivingSession session = factory.startWebdriving(proxied(5678))) {
+                assertNotSame("different proxy", first, session.getWebDriver());
+            }
+            try (WebdrivingSession session = factory.startWebdriving(proxied(1234))) {
+                assertSame("same proxy", first, session.getWebDriver());
+            }
+        }
+    }
+
+    @Test
+    public void discardOnResetFailure() throws Exception {
+        FakeWebDriverFactory delegate = new FakeWebDriverFactory();
+        try (PooledWebDriverFactory factory = PooledWebDriverFactory.builder(delegate)
+                .resetAction(driver -> {
+                    throw new IllegalStateException("browser crashed");
+                })
+                .build()) {
+            factory.startWebdriving(WebdrivingConfig.nonCapturing()).close();
+            assertEquals("idle", 0, factory.getMetrics().getIdleCount());
+            assertEquals("quit", 1, delegate.quitCount.get());
+        }
+    }
+
+    private static WebdrivingConfig proxied(int port) {
+        return WebdrivingConfig.builder().proxy(HostAndPort.fromParts("127.0.0.1", port)).build();
+    }
+
+    private static class FakeWebDriverFactory implements WebDriverFactory {
+
+        public final List<WebDriver> drivers = new ArrayList<>();
+        public final AtomicInteger quitCount = new AtomicInteger();
+
+        @Override
+        public WebdrivingSession startWebdriving(WebdrivingConfig config) {
+            WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{WebDriver.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "quit":
+                        quitCount.incrementAndGet();
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "FakeWebDriver@" + System.identityHashCode(proxy);
+                    default:
+                        return null;
+                }
+            });
+            drivers.add(driver);
+            return new SimpleWebdrivingSession(driver);
+        }
+    }
+}
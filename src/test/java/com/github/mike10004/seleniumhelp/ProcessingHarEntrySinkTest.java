@@ -0,0 +1,51 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarRequest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingHarEntrySinkTest {
+
+    @Test
+    public void processAndForward() throws Exception {
+        Set<String> processingThreads = ConcurrentHashMap.newKeySet();
+        HarEntryProcessor redactor = entry -> {
+            processingThreads.add(Thread.currentThread().getName());
+            entry.setComment("redacted");
+        };
+        HarEntryProcessor failing = entry -> {
+            throw new IllegalStateException("purposeful");
+        };
+        MemoryHarEntrySink memorySink = new MemoryHarEntrySink();
+        int numEntries = 100;
+        try (ProcessingHarEntrySink sink = new ProcessingHarEntrySink(memorySink, Arrays.asList(failing, redactor), 3, 4)) {
+            for (int i = 0; i < numEntries; i++) {
+                sink.entryCompleted(createEntry(i));
+            }
+        }
+        Har har = memorySink.toHar();
+        assertEquals("num entries", numEntries, har.getLog().getEntries().size());
+        assertEquals("comments", Collections.singleton("redacted"), har.getLog().getEntries().stream().map(HarEntry::getComment).collect(Collectors.toSet()));
+        assertTrue("processed off the caller thread: " + processingThreads, processingThreads.stream().anyMatch(name -> name.startsWith("har-entry-processor-")));
+    }
+
+    private static HarEntry createEntry(int i) {
+        HarEntry entry = new HarEntry();
+        entry.setStartedDateTime(new Date(i * 1000L));
+        HarRequest request = new HarRequest();
+        request.setUrl("http://www.example.com/" + i);
+        entry.setRequest(request);
+        return entry;
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.bup.mitm.CertificateAndKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class RootCertificateCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void reuseAndRotate() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("cache");
+        Instant now = Instant.parse("2019-06-01T12:00:00Z");
+        RootCertificateCache cache = new RootCertificateCache(directory, Clock.fixed(now, ZoneOffset.UTC));
+        RootCertificateCache.CachedRoot first = cache.acquire();
+        assertSame("same instance", first, cache.acquire());
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("directory permissions", "rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory)));
+            assertEquals("keystore permissions", "rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.resolve("root-ca.p12"))));
+        }
+        Instant later = now.plus(Duration.ofDays(10));
+        RootCertificateCache otherProcess = new RootCertificateCache(directory, Clock.fixed(later, ZoneOffset.UTC));
+        RootCertificateCache.CachedRoot reused = otherProcess.acquire();
+        assertArrayEquals("reused keystore", first.getKeystoreBytes(), reused.getKeystoreBytes());
+        assertEquals("reused password", first.getPassword(), reused.getPassword());
+        assertEquals("created", now, reused.getCreated());
+        RootCertificateCache.CachedRoot rotated = otherProcess.acquire(Duration.ofDays(7));
+        assertEquals("rotated created", later, rotated.getCreated());
+        assertFalse("rotated password", first.getPassword().equals(rotated.getPassword()));
+    }
+
+    @Test
+    public void regenerateWhenKeystoreDoesNotMatchPassword() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("cache");
+        Instant now = Instant.parse("2019-06-01T12:00:00Z");
+        RootCertificateCache.CachedRoot first = new RootCertificateCache(directory, Clock.fixed(now, ZoneOffset.UTC)).acquire();
+        // simulate a crash after the keystore was replaced but before the password was
+        Files.write(directory.resolve("root-ca.p12"), AutoCertificateAndKeySource.generateKeystoreBytes("other password"));
+        Instant later = now.plus(Duration.ofDays(1));
+        RootCertificateCache.CachedRoot regenerated = new RootCertificateCache(directory, Clock.fixed(later, ZoneOffset.UTC)).acquire();
+        assertEquals("created", later, regenerated.getCreated());
+        assertFalse("new password", first.getPassword().equals(regenerated.getPassword()));
+    }
+
+    @Test
+    public void instancesSharingDirectory() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("cache");
+        Clock clock = Clock.fixed(Instant.parse("2019-06-01T12:00:00Z"), ZoneOffset.UTC);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<RootCertificateCache.CachedRoot>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                RootCertificateCache cache = new RootCertificateCache(directory, clock);
+                futures.add(executor.submit(() -> cache.acquire()));
+            }
+            String password = futures.get(0).get().getPassword();
+            for (Future<RootCertificateCache.CachedRoot> future : futures) {
+                assertEquals("password", password, future.get().getPassword());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void keyAlgorithms() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("cache");
+        RootCertificateCache cache = new RootCertificateCache(directory, Clock.fixed(Instant.parse("2019-06-01T12:00:00Z"), ZoneOffset.UTC));
+        RootCertificateCache.CachedRoot rsa = cache.acquire();
+        RootCertificateCache.CachedRoot ec = cache.acquire(RootCertificateCache.DEFAULT_MAX_AGE, CertificateKeyAlgorithm.EC_P256);
+        assertEquals("rsa algorithm", CertificateKeyAlgorithm.RSA, rsa.getKeyAlgorithm());
+        assertEquals("ec algorithm", CertificateKeyAlgorithm.EC_P256, ec.getKeyAlgorithm());
+        assertFalse("separate roots", rsa.getPassword().equals(ec.getPassword()));
+        assertSame("rsa retained", rsa, cache.acquire());
+        try (AutoCertificateAndKeySource source = cache.createCertificateAndKeySource(RootCertificateCache.DEFAULT_MAX_AGE, CertificateKeyAlgorithm.EC_P256)) {
+            assertEquals("key algorithm", "EC", source.load().getPrivateKey().getAlgorithm());
+            assertEquals("password", ec.getPassword(), source.acquireKeystoreInput().getPassword());
+        }
+    }
+
+    @Test
+    public void createCertificateAndKeySource() throws Exception {
+        RootCertificateCache cache = RootCertificateCache.getInstance(temporaryFolder.getRoot().toPath());
+        assertSame("singleton", cache, RootCertificateCache.getInstance(temporaryFolder.getRoot().toPath().resolve(".")));
+        try (AutoCertificateAndKeySource source = cache.createCertificateAndKeySource()) {
+            CertificateAndKey certificateAndKey = source.load();
+            assertNotNull("certificate", certificateAndKey.getCertificate());
+            assertEquals("password", cache.acquire().getPassword(), source.acquireKeystoreInput().getPassword());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import com.browserup.harreader.model.HttpMethod;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpilledHarTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writeAndRead() throws Exception {
+        File entriesFile = temporaryFolder.newFile("entries.ndjson");
+        try (NdjsonHarEntrySink sink = new NdjsonHarEntrySink(entriesFile)) {
+            sink.entryCompleted(createEntry("http://www.example.com/one", 200, "hello\nworld"));
+            sink.entryCompleted(createEntry("http://www.example.com/two", 404, "not found"));
+            assertEquals("entry count", 2, sink.getEntryCount());
+        }
+        SpilledHar spilled = new SpilledHar(entriesFile);
+        List<String> urls;
+        try (Stream<HarEntry> entries = spilled.streamEntries()) {
+            urls = entries.map(HarEntry::getRequest).map(HarRequest::getUrl).collect(Collectors.toList());
+        }
+        assertEquals("urls", java.util.Arrays.asList("http://www.example.com/one", "http://www.example.com/two"), urls);
+        Har har = spilled.toHar();
+        assertEquals("entries", 2, har.getLog().getEntries().size());
+        HarResponse response = har.getLog().getEntries().get(0).getResponse();
+        assertEquals("text", "hello\nworld", response.getContent().getText());
+    }
+
+    @Test
+    public void spilledHarPlus() throws Exception {
+        File entriesFile = temporaryFolder.newFile("entries.ndjson");
+        try (NdjsonHarEntrySink sink = new NdjsonHarEntrySink(entriesFile)) {
+            sink.entryCompleted(createEntry("http://www.example.com/", 200, "hello"));
+        }
+        HarPlus<String> harPlus = new SpilledHarPlus<>(new SpilledHar(entriesFile), "foo");
+        assertTrue("skeleton has no entries", harPlus.har.getLog().getEntries().isEmpty());
+        long count;
+        try (Stream<HarEntry> entries = harPlus.streamEntries()) {
+            count = entries.count();
+        }
+        assertEquals("count", 1, count);
+    }
+
+    private static HarEntry createEntry(String url, int status, String text) {
+        HarEntry entry = new HarEntry();
+        entry.setStartedDateTime(new Date());
+        HarRequest request = new HarRequest();
+        request.setMethod(HttpMethod.GET);
+        request.setUrl(url);
+        entry.setRequest(request);
+        HarResponse response = new HarResponse();
+        response.setStatus(status);
+        response.getContent().setText(text);
+        entry.setResponse(response);
+        return entry;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.mike10004.seleniumhelp;
+
+import com.browserup.harreader.model.HarTiming;
+import com.github.mike10004.seleniumhelp.Timings.Event;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimingsTest {
+
+    @Test
+    public void recorder_reusedConnection() throws Exception {
+        Timings.Recorder recorder = new Timings.Recorder();
+        recorder.record(Event.REQUEST_RECEIVED);
+        recorder.record(Event.REQUEST_SENDING);
+        recorder.record(Event.REQUEST_SENT);
+        Thread.sleep(5);
+        recorder.record(Event.RESPONSE_RECEIVING);
+        recorder.record(Event.RESPONSE_RECEIVED);
+        Timings timings = recorder.finish();
+        assertEquals("dns", Timings.NOT_APPLICABLE, timings.getDns(TimeUnit.NANOSECONDS));
+        assertEquals("connect", Timings.NOT_APPLICABLE, timings.getConnect(TimeUnit.NANOSECONDS));
+        assertTrue("wait " + timings, timings.getWait(TimeUnit.MILLISECONDS) >= 5);
+        assertTrue("total " + timings, timings.getTotal(TimeUnit.NANOSECONDS) >= timings.getWait(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void recorder_blockedExcludesDns() throws Exception {
+        Timings.Recorder recorder = new Timings.Recorder();
+        recorder.record(Event.CONNECTION_QUEUED);
+        recorder.record(Event.RESOLUTION_STARTED);
+        Thread.sleep(20);
+        recorder.record(Event.RESOLUTION_FINISHED);
+        recorder.record(Event.CONNECTION_STARTED);
+        Timings timings = recorder.finish();
+        assertTrue("dns " + timings, timings.getDns(TimeUnit.MILLISECONDS) >= 20);
+        assertTrue("blocked " + timings, timings.getBlocked(TimeUnit.MILLISECONDS) < 20);
+    }
+
+    @Test
+    public void recorder_blockedWithoutResolution() throws Exception {
+        Timings.Recorder recorder = new Timings.Recorder();
+        recorder.record(Event.CONNECTION_QUEUED);
+        Thread.sleep(5);
+        recorder.record(Event.CONNECTION_STARTED);
+        Timings timings = recorder.finish();
+        assertEquals("dns", Timings.NOT_APPLICABLE, timings.getDns(TimeUnit.NANOSECONDS));
+        assertTrue("blocked " + timings, timings.getBlocked(TimeUnit.MILLISECONDS) >= 5);
+    }
+
+    @Test
+    public void recorder_firstOccurrenceWins() throws Exception {
+        Timings.Recorder recorder = new Timings.Recorder();
+        recorder.record(Event.RESPONSE_RECEIVING);
+        Thread.sleep(5);
+        recorder.record(Event.RESPONSE_RECEIVING);
+        recorder.record(Event.RESPONSE_RECEIVED);
+        assertTrue("receive", recorder.finish().getReceive(TimeUnit.MILLISECONDS) >= 5);
+    }
+
+    @Test
+    public void toHarTiming() {
+        HarTiming har = Timings.unknown().toHarTiming();
+        assertEquals("dns", -1, har.getDns());
+        assertEquals("ssl", -1, har.getSsl());
+        assertEquals("send", 0, har.getSend());
+        assertEquals("wait", 0, har.getWait());
+    }
+}
@@ -1,9 +1,12 @@
 package com.github.mike10004.seleniumhelp;
 
+import com.browserup.bup.BrowserUpProxy;
+import com.browserup.bup.BrowserUpProxyServer;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.primitives.UnsignedInts;
 import io.github.mike10004.nanochamp.server.NanoControl;
 import io.github.mike10004.nanochamp.server.NanoResponse;
@@ -13,6 +16,7 @@ import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
+import com.browserup.harreader.model.Har;
 import com.browserup.harreader.model.HarEntry;
 import com.browserup.harreader.model.HarRequest;
 import com.browserup.bup.mitm.CertificateAndKeySource;
@@ -20,21 +24,38 @@ import com.browserup.bup.mitm.manager.ImpersonatingMitmManager;
 import org.apache.http.client.utils.URIBuilder;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.rules.Timeout;
 import org.littleshoot.proxy.MitmManager;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.service.DriverService;
 
+import javax.annotation.Nullable;
 import javax.net.ssl.SSLEngine;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static java.util.Objects.requireNonNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -43,6 +64,9 @@ public class TrafficCollectorTest {
     @Rule
     public Timeout timeout = TimeoutRules.from(UnitTests.Settings).getLongRule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void createMitmManager() throws Exception {
         CertificateAndKeySource certificateAndKeySource = TestCertificateAndKeySource.create();
@@ -54,6 +78,161 @@ public class TrafficCollectorTest {
         assertNotNull(sslEngine);
     }
 
+    @Test
+    public void proxyPool_usesCollectorInstantiatorAndConfigurator() throws Exception {
+        AtomicInteger instantiations = new AtomicInteger(), configurations = new AtomicInteger();
+        WebDriverFactory webDriverFactory = nullDriverFactory();
+        try (BrowserUpProxyPool pool = BrowserUpProxyPool.builder().build()) {
+            TrafficCollector collector = new TrafficCollectorImpl(webDriverFactory, null, BmpConfigurator.noUpstreamProxy(), Collections.emptyList(), () -> {
+                instantiations.incrementAndGet();
+                return new BrowserUpProxyServer();
+            }, Collections.emptyList(), ExceptionReactor.PROPAGATE, TrafficCollectorSettings.builder().proxyPool(pool).build()) {
+                @Override
+                protected void configureProxy(BrowserUpProxy bmp, CertificateAndKeySource certificateAndKeySource, TrafficMonitor trafficMonitor) {
+                    configurations.incrementAndGet();
+                    super.configureProxy(bmp, certificateAndKeySource, trafficMonitor);
+                }
+            };
+            collector.collect(driver -> null);
+            collector.collect(driver -> null);
+        }
+        assertEquals("instantiations", 1, instantiations.get());
+        assertEquals("configurations", 1, configurations.get());
+    }
+
+    @Test
+    public void subclassWithOriginalConstructor() throws Exception {
+        AtomicInteger instantiations = new AtomicInteger();
+        TrafficCollector collector = new TrafficCollectorImpl(nullDriverFactory(), null, BmpConfigurator.noUpstreamProxy(), Collections.emptyList(), () -> {
+            instantiations.incrementAndGet();
+            return new BrowserUpProxyServer();
+        }, Collections.emptyList(), ExceptionReactor.PROPAGATE) {
+        };
+        HarPlus<String> collection = collector.collect(driver -> "done");
+        assertEquals("result", "done", collection.result);
+        assertNotNull("har", collection.har);
+        assertEquals("instantiations", 1, instantiations.get());
+    }
+
+    @Test
+    public void harCaptureMode_samePayloads() throws Exception {
+        NanoServer nano = NanoServer.builder()
+                .getPath("/hello", session -> NanoResponse.status(200).plainTextUtf8("hello"))
+                .getPath("/data", session -> NanoResponse.status(200).jsonUtf8("{\"a\": 1}"))
+                .build();
+        CapturePolicy textOnly = CapturePolicy.builder()
+                .defaultLevel(CapturePolicy.Level.HEADERS_ONLY)
+                .contentType(Pattern.compile("^text/plain\\b.*"), CapturePolicy.Level.FULL)
+                .build();
+        Har proxyHar, perEntryHar, perEntryPolicyHar;
+        try (NanoControl ctrl = nano.startServer()) {
+            proxyHar = collectWithMode(ctrl, TrafficCollectorSettings.builder().capturePolicy(textOnly));
+            perEntryHar = collectWithMode(ctrl, TrafficCollectorSettings.builder().harCaptureMode(HarCaptureMode.PER_ENTRY));
+            perEntryPolicyHar = collectWithMode(ctrl, TrafficCollectorSettings.builder().harCaptureMode(HarCaptureMode.PER_ENTRY).capturePolicy(textOnly));
+        }
+        List<String> expected = Arrays.asList("GET /hello 200 hello", "GET /data 200 {\"a\": 1}");
+        assertEquals("proxy capture ignores capture policy", expected, describeEntries(proxyHar));
+        assertEquals("per-entry capture", expected, describeEntries(perEntryHar));
+        assertEquals("per-entry capture with policy", Arrays.asList("GET /hello 200 hello", "GET /data 200 "), describeEntries(perEntryPolicyHar));
+        assertFalse("proxy capture has pages", proxyHar.getLog().getPages().isEmpty());
+        assertTrue("per-entry capture has no pages", perEntryHar.getLog().getPages().isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void harEntryProcessorRequiresPerEntryMode() {
+        TrafficCollector.builder(nullDriverFactory())
+                .harEntryProcessor(entry -> {})
+                .build();
+    }
+
+    @Test
+    public void spilledBodyFilesDeletedAfterCollection() throws Exception {
+        File scratchDir = temporaryFolder.newFolder();
+        List<Integer> filesDuringCollection = spillBodies(BodyCaptureLimits.builder().memoryThreshold(4).spillTo(scratchDir.toPath()));
+        assertTrue("files created during collection", filesDuringCollection.stream().allMatch(count -> count > 0));
+        assertEquals("files after collection", Collections.emptyList(), Arrays.asList(scratchDir.list()));
+    }
+
+    @Test
+    public void spilledBodyFilesKept() throws Exception {
+        File scratchDir = temporaryFolder.newFolder();
+        spillBodies(BodyCaptureLimits.builder().memoryThreshold(4).spillTo(scratchDir.toPath()).keepSpilledFiles());
+        assertEquals("files after collection", 2, scratchDir.list().length);
+    }
+
+    /**
+     * Collects traffic with a monitor whose response bodies are spilled to the scratch directory.
+     * @return the number of files in the scratch directory at each notification
+     */
+    private static List<Integer> spillBodies(BodyCaptureLimits.Builder bodyLimits) throws IOException {
+        BodyCaptureLimits limits = bodyLimits.build();
+        NanoServer nano = NanoServer.builder()
+                .getPath("/hello", session -> NanoResponse.status(200).plainTextUtf8("hello"))
+                .getPath("/data", session -> NanoResponse.status(200).jsonUtf8("{\"a\": 1}"))
+                .build();
+        List<Integer> fileCounts = Collections.synchronizedList(new ArrayList<>());
+        TrafficMonitor monitor = (request, response) -> fileCounts.add(requireNonNull(limits.getScratchDir()).toFile().list().length);
+        try (NanoControl ctrl = nano.startServer()) {
+            collectWithMode(ctrl, TrafficCollectorSettings.builder().capturePolicy(CapturePolicy.builder().bodyLimits(limits).build()), monitor);
+        }
+        assertEquals("notifications", 2, fileCounts.size());
+        return fileCounts;
+    }
+
+    private static Har collectWithMode(NanoControl ctrl, TrafficCollectorSettings.Builder settings) throws IOException {
+        return collectWithMode(ctrl, settings, null);
+    }
+
+    private static Har collectWithMode(NanoControl ctrl, TrafficCollectorSettings.Builder settings, @Nullable TrafficMonitor monitor) throws IOException {
+        AtomicReference<WebdrivingConfig> configRef = new AtomicReference<>();
+        WebDriverFactory webDriverFactory = config -> {
+            configRef.set(config);
+            return nullDriverFactory().startWebdriving(config);
+        };
+        TrafficCollector collector = new TrafficCollectorImpl(webDriverFactory, null, BmpConfigurator.noUpstreamProxy(), Collections.emptyList(), BrowserUpProxyServer::new, Collections.emptyList(), ExceptionReactor.PROPAGATE, settings.build());
+        return collector.collect(driver -> {
+            String[] hostAndPort = configRef.get().getProxySpecification().createWebdrivingProxy().getHttpProxy().split(":");
+            Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])));
+            for (String path : new String[]{"/hello", "/data"}) {
+                HttpURLConnection conn = (HttpURLConnection) ctrl.baseUri().resolve(path).toURL().openConnection(proxy);
+                try (InputStream in = conn.getInputStream()) {
+                    ByteStreams.exhaust(in);
+                } finally {
+                    conn.disconnect();
+                }
+            }
+            return null;
+        }, monitor).har;
+    }
+
+    private static List<String> describeEntries(Har har) {
+        return har.getLog().getEntries().stream()
+                .map(entry -> String.format("%s %s %d %s", entry.getRequest().getMethod(), URI.create(entry.getRequest().getUrl()).getPath(), entry.getResponse().getStatus(), entry.getResponse().getContent().getText()))
+                .collect(Collectors.toList());
+    }
+
+    private static WebDriverFactory nullDriverFactory() {
+        return config -> new WebdrivingSession() {
+            @Override
+            public WebDriver getWebDriver() {
+                return null;
+            }
+
+            @Override
+            public DriverService getDriverService() {
+                return null;
+            }
+
+            @Override
+            public void tryQuit(Duration quitTimeout) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     @Test
     public void collectHarWithFilterCausingServerErrors() throws Exception {
         Random random = new Random(getClass().getName().hashCode());
@@ -1,11 +1,46 @@
 package com.github.mike10004.seleniumhelp;
 
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMultimap;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.*;
 
 public class TrafficMonitorFilterTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void getSimpleClassName() {
         assertEquals("null", "null", TrafficMonitorFilter.getSimpleClassName(null));
@@ -16,6 +51,371 @@ public class TrafficMonitorFilterTest {
         assertEquals("object anon subclass", "Object$", TrafficMonitorFilter.getSimpleClassName(new Object(){}));
     }
 
+    @Test
+    public void responseContent_text() throws Exception {
+        byte[] body = "caf\u00e9".getBytes(StandardCharsets.UTF_8);
+        ImmutableHttpResponse response = exchange("text/plain; charset=UTF-8", body).response;
+        assertEquals("text", "caf\u00e9", response.getContentAsChars().read());
+        assertArrayEquals("bytes", body, response.getContentAsBytes().read());
+    }
+
+    @Test
+    public void responseContent_binary() throws Exception {
+        byte[] body = {(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3};
+        ImmutableHttpResponse response = exchange("image/png", body).response;
+        assertArrayEquals("bytes", body, response.getContentAsBytes().read());
+        assertEquals("base64 text", Base64.getEncoder().encodeToString(body), response.getContentAsChars().read());
+    }
+
+    @Test
+    public void captureResponseContent_overrideInvoked() throws Exception {
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+        List<byte[]> captured = new ArrayList<>();
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor) {
+            @Override
+            protected void captureResponseContent(HttpResponse httpResponse, byte[] fullMessage, HarResponse harResponse) {
+                captured.add(fullMessage);
+                harResponse.getContent().setComment("overridden");
+            }
+        };
+        filter.clientToProxyRequest(request);
+        byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(body));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        assertEquals("num invocations", 1, captured.size());
+        assertArrayEquals("content", body, captured.get(0));
+        assertArrayEquals("monitor content", body, monitor.interactions.get(0).response.getContentAsBytes().read());
+    }
+
+    @Test
+    public void interactionCompleted_subclassReceivesHarRequestDetail() throws Exception {
+        RecordingMonitor monitor = new RecordingMonitor();
+        byte[] body = "a=1&b=2".getBytes(StandardCharsets.UTF_8);
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://www.example.com/form?q=x", Unpooled.wrappedBuffer(body));
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/x-www-form-urlencoded");
+        request.headers().set("X-Custom", "foo");
+        List<HarRequest> harRequests = new ArrayList<>();
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor) {
+            @Override
+            protected void interactionCompleted(HarRequest harRequest, HarResponse harResponse, ImmutableHttpMessage.HttpContentSource responseContent, Timings timings) {
+                harRequests.add(harRequest);
+                super.interactionCompleted(harRequest, harResponse, responseContent, timings);
+            }
+        };
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        assertEquals("num interactions", 1, harRequests.size());
+        HarRequest harRequest = harRequests.get(0);
+        assertTrue("header", harRequest.getHeaders().stream().anyMatch(h -> "X-Custom".equals(h.getName()) && "foo".equals(h.getValue())));
+        assertEquals("query param", "x", harRequest.getQueryString().get(0).getValue());
+        assertNotNull("post data", harRequest.getPostData());
+        assertEquals("post params", 2, harRequest.getPostData().getParams().size());
+        assertEquals("monitor request body", "a=1&b=2", monitor.interactions.get(0).request.getContentAsChars().read());
+    }
+
+    @Test
+    public void chunkedResponse_eachChunkAccumulatedOnce() throws Exception {
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor);
+        filter.clientToProxyRequest(request);
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+        List<HttpObject> objects = new ArrayList<>();
+        objects.add(response);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String chunk = "chunk" + i + "\n";
+            expected.append(chunk);
+            objects.add(new DefaultHttpContent(Unpooled.copiedBuffer(chunk, StandardCharsets.US_ASCII)));
+        }
+        objects.add(LastHttpContent.EMPTY_LAST_CONTENT);
+        for (HttpObject object : objects) {
+            filter.serverToProxyResponse(object);
+            filter.proxyToClientResponse(object);
+        }
+        assertEquals("num interactions", 1, monitor.interactions.size());
+        assertEquals("text", expected.toString(), monitor.interactions.get(0).response.getContentAsChars().read());
+    }
+
+    @Test
+    public void timings() throws Exception {
+        List<Timings> timingsList = new ArrayList<>();
+        TrafficMonitor monitor = new TrafficMonitor() {
+            @Override
+            public void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+                fail("timings not delivered");
+            }
+
+            @Override
+            public void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse, Timings timings) {
+                timingsList.add(timings);
+            }
+        };
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor);
+        filter.clientToProxyRequest(request);
+        filter.proxyToServerRequestSent();
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(new byte[0]));
+        filter.serverToProxyResponseReceiving();
+        filter.serverToProxyResponse(response);
+        filter.serverToProxyResponseReceived();
+        filter.proxyToClientResponse(response);
+        assertEquals("num notifications", 1, timingsList.size());
+        Timings timings = timingsList.get(0);
+        assertEquals("dns", Timings.NOT_APPLICABLE, timings.getDns(TimeUnit.NANOSECONDS));
+        assertEquals("send", Timings.NOT_APPLICABLE, timings.getSend(TimeUnit.NANOSECONDS));
+        assertTrue("wait", timings.getWait(TimeUnit.NANOSECONDS) >= 0);
+        assertTrue("receive", timings.getReceive(TimeUnit.NANOSECONDS) >= 0);
+        assertTrue("total", timings.getTotal(TimeUnit.NANOSECONDS) >= 0);
+    }
+
+    @Test
+    public void streamingCallbacks() throws Exception {
+        List<String> events = new ArrayList<>();
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        List<ImmutableHttpResponse> completed = new ArrayList<>();
+        TrafficMonitor monitor = new TrafficMonitor() {
+            @Override
+            public void requestSent(ImmutableHttpRequest httpRequest) {
+                events.add("requestSent " + httpRequest.url);
+            }
+
+            @Override
+            public void responseHeadersReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+                events.add("responseHeadersReceived " + httpResponse.status);
+            }
+
+            @Override
+            public void responseContentChunk(ImmutableHttpRequest httpRequest, ByteBuffer chunk) {
+                byte[] bytes = new byte[chunk.remaining()];
+                chunk.get(bytes);
+                streamed.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public boolean isResponseHeadersNotified() {
+                return true;
+            }
+
+            @Override
+            public boolean isResponseContentStreamed() {
+                return true;
+            }
+
+            @Override
+            public boolean isResponseContentAggregated() {
+                return false;
+            }
+
+            @Override
+            public void responseReceived(ImmutableHttpRequest httpRequest, ImmutableHttpResponse httpResponse) {
+                completed.add(httpResponse);
+            }
+        };
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor);
+        filter.clientToProxyRequest(request);
+        filter.proxyToServerRequestSent();
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+        List<HttpObject> objects = new ArrayList<>();
+        objects.add(response);
+        objects.add(new DefaultHttpContent(Unpooled.copiedBuffer("hello, ", StandardCharsets.US_ASCII)));
+        objects.add(new DefaultLastHttpContent(Unpooled.copiedBuffer("world", StandardCharsets.US_ASCII)));
+        for (HttpObject object : objects) {
+            filter.serverToProxyResponse(object);
+            filter.proxyToClientResponse(object);
+        }
+        assertEquals("events", Arrays.asList("requestSent http://www.example.com/", "responseHeadersReceived 200"), events);
+        assertEquals("streamed", "hello, world", new String(streamed.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals("num completed", 1, completed.size());
+        assertEquals("aggregated content size", 0, completed.get(0).getContentAsBytes().size());
+    }
+
+    @Test
+    public void request_formContent() throws Exception {
+        RecordingMonitor monitor = new RecordingMonitor();
+        byte[] form = "a=1&b=caf%C3%A9&a=2".getBytes(StandardCharsets.US_ASCII);
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://www.example.com/submit?q=x", Unpooled.wrappedBuffer(form));
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/x-www-form-urlencoded; charset=UTF-8");
+        request.headers().add("X-Custom", "foo");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor);
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        ImmutableHttpRequest captured = monitor.interactions.get(0).request;
+        assertEquals("method", "POST", captured.method);
+        assertEquals("url", "http://www.example.com/submit?q=x", captured.url.toString());
+        assertEquals("header", "foo", captured.getFirstHeaderValue("x-custom"));
+        assertEquals("query params", ImmutableMultimap.of("q", "x"), captured.parseQueryParams());
+        assertEquals("form params", ImmutableMultimap.of("a", "1", "b", "café", "a", "2"), captured.parseFormParams());
+        assertArrayEquals("content bytes", form, captured.getContentAsBytes().read());
+    }
+
+    @Test
+    public void request_notModifiedByProxy() throws Exception {
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/page");
+        request.headers().set(HttpHeaderNames.CONNECTION, "keep-alive");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor);
+        filter.clientToProxyRequest(request);
+        // the proxy rewrites the request in place after the filter has seen it
+        request.setUri("/page");
+        request.headers().remove(HttpHeaderNames.CONNECTION);
+        request.headers().add(HttpHeaderNames.VIA, "1.1 proxy");
+        filter.proxyToServerRequestSent();
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        ImmutableHttpRequest captured = monitor.interactions.get(0).request;
+        assertEquals("url", "http://www.example.com/page", captured.url.toString());
+        assertEquals("connection", "keep-alive", captured.getFirstHeaderValue(HttpHeaderNames.CONNECTION.toString()));
+        assertNull("via", captured.getFirstHeaderValue(HttpHeaderNames.VIA.toString()));
+    }
+
+    @Test
+    public void capturePolicy_textBodies() throws Exception {
+        CapturePolicy policy = CapturePolicy.builder().defaultLevel(CapturePolicy.Level.TEXT_BODIES).build();
+        byte[] image = {(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3};
+        ImmutableHttpResponse imageResponse = exchange("image/png", image, policy).response;
+        assertEquals("status", 200, imageResponse.status);
+        assertEquals("image bytes", 0, imageResponse.getContentAsBytes().size());
+        byte[] text = "hello".getBytes(StandardCharsets.UTF_8);
+        ImmutableHttpResponse textResponse = exchange("text/plain", text, policy).response;
+        assertArrayEquals("text bytes", text, textResponse.getContentAsBytes().read());
+    }
+
+    @Test
+    public void capturePolicy_textBodies_request() throws Exception {
+        CapturePolicy policy = CapturePolicy.builder().defaultLevel(CapturePolicy.Level.TEXT_BODIES).build();
+        byte[] binary = {(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3};
+        ImmutableHttpRequest binaryRequest = post("application/octet-stream", binary, policy);
+        assertEquals("binary bytes", 0, binaryRequest.getContentAsBytes().size());
+        byte[] text = "q=hello".getBytes(StandardCharsets.UTF_8);
+        ImmutableHttpRequest textRequest = post("application/x-www-form-urlencoded", text, policy);
+        assertArrayEquals("text bytes", text, textRequest.getContentAsBytes().read());
+    }
+
+    @Test
+    public void capturePolicy_headersOnly() throws Exception {
+        CapturePolicy policy = CapturePolicy.builder().url(Pattern.compile("example\\.com"), CapturePolicy.Level.HEADERS_ONLY).build();
+        ImmutableHttpResponse response = exchange("text/plain", "hello".getBytes(StandardCharsets.UTF_8), policy).response;
+        assertEquals("content type header", "text/plain", response.getFirstHeaderValue(HttpHeaderNames.CONTENT_TYPE.toString()));
+        assertEquals("bytes", 0, response.getContentAsBytes().size());
+    }
+
+    @Test
+    public void bodyLimits_spillGzipped() throws Exception {
+        BodyCaptureLimits limits = BodyCaptureLimits.builder()
+                .memoryThreshold(16)
+                .spillTo(temporaryFolder.getRoot().toPath())
+                .build();
+        CapturePolicy policy = CapturePolicy.builder().bodyLimits(limits).build();
+        String text = Strings.repeat("hello, world\n", 100);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(compressed)) {
+            gz.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        ImmutableHttpResponse response = exchange("text/plain; charset=UTF-8", compressed.toByteArray(), "gzip", policy).response;
+        assertEquals("text", text, response.getContentAsChars().read());
+        assertFalse("truncated", response.isContentTruncated());
+        assertEquals("num scratch files", 1, temporaryFolder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void bodyLimits_spillRequest() throws Exception {
+        BodyCaptureLimits limits = BodyCaptureLimits.builder()
+                .memoryThreshold(16)
+                .spillTo(temporaryFolder.getRoot().toPath())
+                .build();
+        CapturePolicy policy = CapturePolicy.builder().bodyLimits(limits).build();
+        String text = Strings.repeat("hello, world\n", 100);
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://www.example.com/upload", Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor, policy);
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        ImmutableHttpRequest captured = monitor.interactions.get(0).request;
+        assertEquals("text", text, captured.getContentAsChars().read());
+        assertFalse("truncated", captured.isContentTruncated());
+        assertEquals("num scratch files", 1, temporaryFolder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void bodyLimits_truncateRequest() throws Exception {
+        CapturePolicy policy = CapturePolicy.builder()
+                .bodyLimits(BodyCaptureLimits.builder().truncateAt(5).build())
+                .build();
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://www.example.com/upload", Unpooled.copiedBuffer("hello, world", StandardCharsets.UTF_8));
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor, policy);
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        ImmutableHttpRequest captured = monitor.interactions.get(0).request;
+        assertEquals("text", "hello", captured.getContentAsChars().read());
+        assertTrue("truncated", captured.isContentTruncated());
+    }
+
+    @Test
+    public void bodyLimits_truncate() throws Exception {
+        CapturePolicy policy = CapturePolicy.builder()
+                .bodyLimits(BodyCaptureLimits.builder().truncateAt(5).build())
+                .build();
+        ImmutableHttpResponse response = exchange("text/plain", "hello, world".getBytes(StandardCharsets.UTF_8), policy).response;
+        assertEquals("text", "hello", response.getContentAsChars().read());
+        assertTrue("truncated", response.isContentTruncated());
+    }
+
+    private static ImmutableHttpRequest post(String contentType, byte[] body, CapturePolicy capturePolicy) {
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://www.example.com/upload", Unpooled.wrappedBuffer(body));
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor, capturePolicy);
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        assertEquals("num interactions", 1, monitor.interactions.size());
+        return monitor.interactions.get(0).request;
+    }
+
+    private static HttpInteraction exchange(String contentType, byte[] body) {
+        return exchange(contentType, body, CapturePolicy.captureAll());
+    }
+
+    private static HttpInteraction exchange(String contentType, byte[] body, CapturePolicy capturePolicy) {
+        return exchange(contentType, body, null, capturePolicy);
+    }
+
+    private static HttpInteraction exchange(String contentType, byte[] body, @Nullable String contentEncoding, CapturePolicy capturePolicy) {
+        RecordingMonitor monitor = new RecordingMonitor();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+        TrafficMonitorFilter filter = new TrafficMonitorFilter(request, null, monitor, capturePolicy);
+        filter.clientToProxyRequest(request);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(body));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        if (contentEncoding != null) {
+            response.headers().set(HttpHeaderNames.CONTENT_ENCODING, contentEncoding);
+        }
+        filter.serverToProxyResponse(response);
+        filter.proxyToClientResponse(response);
+        assertEquals("num interactions", 1, monitor.interactions.size());
+        return monitor.interactions.get(0);
+    }
+
     private static class Something {
 
         public static class Nested {
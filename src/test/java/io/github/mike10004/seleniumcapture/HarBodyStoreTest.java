@@ -0,0 +1,81 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.HarReaderMode;
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarLog;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HarBodyStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void put_deduplicates() throws Exception {
+        Path storeDir = temporaryFolder.newFolder().toPath();
+        HarBodyStore store = new HarBodyStore(storeDir);
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+        String hash1 = store.put(content);
+        String hash2 = store.put(content.clone());
+        assertEquals("hash", "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824", hash1);
+        assertEquals("same hash", hash1, hash2);
+        assertTrue("contains", store.contains(hash1));
+        assertArrayEquals("content", content, store.get(hash1).read());
+        try (Stream<Path> files = Files.walk(storeDir)) {
+            assertEquals("num files", 1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void storeAndResolve() throws Exception {
+        HarBodyStore store = new HarBodyStore(temporaryFolder.newFolder().toPath());
+        byte[] binary = {(byte) 0x89, 'P', 'N', 'G', 0, 1, 2};
+        HarEntry textEntry = createEntry("http://www.example.com/a.txt");
+        store.storeContent(textEntry.getResponse(), "café".getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1);
+        HarEntry binaryEntry = createEntry("http://www.example.com/a.png");
+        store.storeContent(binaryEntry.getResponse(), binary, null);
+        assertNull("text removed", textEntry.getResponse().getContent().getText());
+        Har har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(Arrays.asList(textEntry, binaryEntry));
+        File harFile = temporaryFolder.newFile("stored.har");
+        BrowserUpHars.writeHar(har, harFile, StandardCharsets.UTF_8);
+        String json = new String(Files.readAllBytes(harFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue("hash field in json", json.contains(HarBodyStore.HASH_FIELD));
+
+        Har resolved = BrowserUpHars.readHar(harFile, StandardCharsets.UTF_8, HarReaderMode.STRICT, store);
+        assertEquals("text", "café", resolved.getLog().getEntries().get(0).getResponse().getContent().getText());
+        HarResponse binaryResponse = resolved.getLog().getEntries().get(1).getResponse();
+        assertEquals("encoding", "base64", binaryResponse.getContent().getEncoding());
+        assertArrayEquals("binary", binary, Base64.getDecoder().decode(binaryResponse.getContent().getText()));
+    }
+
+    private static HarEntry createEntry(String url) {
+        HarEntry entry = new HarEntry();
+        HarRequest request = new HarRequest();
+        request.setUrl(url);
+        entry.setRequest(request);
+        HarResponse response = new HarResponse();
+        response.setStatus(200);
+        entry.setResponse(response);
+        return entry;
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.HarReaderMode;
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarCreatorBrowser;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarLog;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HarCodecTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getInstance_cached() {
+        assertSame(HarCodec.getInstance(HarReaderMode.STRICT), HarCodec.getInstance(HarReaderMode.STRICT));
+    }
+
+    @Test
+    public void compressionForFile() {
+        assertEquals(HarCodec.Compression.GZIP, HarCodec.Compression.forFile(new File("x.har.gz")));
+        assertEquals(HarCodec.Compression.DEFLATE, HarCodec.Compression.forFile(new File("x.har.zz")));
+        assertEquals(HarCodec.Compression.NONE, HarCodec.Compression.forFile(new File("x.har")));
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        Har har = createHar(3);
+        HarCodec codec = HarCodec.getInstance(HarReaderMode.STRICT);
+        for (String filename : new String[]{"plain.har", "gzipped.har.gz", "deflated.har.deflate"}) {
+            File file = new File(temporaryFolder.getRoot(), filename);
+            codec.write(har, file);
+            assertEquals(filename, toJson(har), toJson(codec.read(file)));
+            assertEquals(filename, toJson(har), toJson(BrowserUpHars.readHar(file, StandardCharsets.UTF_8, HarReaderMode.STRICT)));
+        }
+        byte[] gzipped = Files.readAllBytes(new File(temporaryFolder.getRoot(), "gzipped.har.gz").toPath());
+        assertEquals("gzip magic", 0x1f, gzipped[0] & 0xFF);
+        assertEquals("gzip magic", 0x8b, gzipped[1] & 0xFF);
+    }
+
+    @Test
+    public void write_streamNotClosed() throws Exception {
+        Har har = createHar(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                throw new AssertionError("closed");
+            }
+        };
+        HarCodec.getInstance(HarReaderMode.STRICT).write(har, out);
+        assertTrue("written", out.size() > 0);
+    }
+
+    @Test
+    public void openStreamWriter() throws Exception {
+        Har har = createHar(5);
+        HarCodec codec = HarCodec.getInstance(HarReaderMode.STRICT);
+        File file = new File(temporaryFolder.getRoot(), "streamed.har.gz");
+        try (HarStreamWriter writer = codec.openStreamWriter(file, har.getLog())) {
+            for (HarEntry entry : har.getLog().getEntries()) {
+                writer.writeEntry(entry);
+            }
+            assertEquals("entry count", 5, writer.getEntryCount());
+        }
+        Har deserialized = codec.read(file);
+        assertEquals("creator", "test", deserialized.getLog().getCreator().getName());
+        assertEquals("har", toJson(har), toJson(deserialized));
+    }
+
+    @Test
+    public void openStreamWriter_noEntries() throws Exception {
+        HarCodec codec = HarCodec.getInstance(HarReaderMode.STRICT);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.openStreamWriter(out, new HarLog()).close();
+        String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(json, json.endsWith("\"entries\":[]}}"));
+        assertEquals("entries", 0, codec.getHarReader().<Har>readValue(json).getLog().getEntries().size());
+    }
+
+    /*
+     * HarEntry equality is sensitive to precision that does not survive serialization,
+     * so HARs are compared by their serialized form.
+     */
+    private static String toJson(Har har) throws IOException {
+        return HarCodec.getInstance(HarReaderMode.STRICT).getHarWriter().writeValueAsString(har);
+    }
+
+    private static Har createHar(int numEntries) {
+        List<HarEntry> entries = new ArrayList<>();
+        for (int i = 0; i < numEntries; i++) {
+            HarEntry entry = new HarEntry();
+            entry.setStartedDateTime(new Date(1500000000000L + i * 1000L));
+            HarRequest request = new HarRequest();
+            request.setUrl("http://www.example.com/" + i);
+            entry.setRequest(request);
+            HarResponse response = new HarResponse();
+            response.setStatus(200);
+            response.getContent().setText("body " + i);
+            response.getContent().setMimeType("text/plain");
+            entry.setResponse(response);
+            entries.add(entry);
+        }
+        HarCreatorBrowser creator = new HarCreatorBrowser();
+        creator.setName("test");
+        creator.setVersion("1.0");
+        HarLog log = new HarLog();
+        log.setCreator(creator);
+        log.setEntries(entries);
+        Har har = new Har();
+        har.setLog(log);
+        return har;
+    }
+}
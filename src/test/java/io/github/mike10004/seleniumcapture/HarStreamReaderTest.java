@@ -0,0 +1,146 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.HarReaderMode;
+import com.browserup.harreader.model.Har;
+import com.browserup.harreader.model.HarCreatorBrowser;
+import com.browserup.harreader.model.HarEntry;
+import com.browserup.harreader.model.HarHeader;
+import com.browserup.harreader.model.HarLog;
+import com.browserup.harreader.model.HarPage;
+import com.browserup.harreader.model.HarRequest;
+import com.browserup.harreader.model.HarResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HarStreamReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final HarCodec codec = HarCodec.getInstance(HarReaderMode.STRICT);
+
+    @Test
+    public void include() throws Exception {
+        Har har = createHar(4);
+        for (String filename : new String[]{"plain.har", "compressed.har.gz"}) {
+            File file = new File(temporaryFolder.getRoot(), filename);
+            codec.write(har, file);
+            try (HarStreamReader reader = codec.openStreamReader(file, HarStreamReader.ContentText.INCLUDE)) {
+                assertEquals("creator", "test", reader.getLog().getCreator().getName());
+                assertEquals("pages", 1, reader.getLog().getPages().size());
+                assertNull("comment before entries read", reader.getLog().getComment());
+                List<HarEntry> entries = new ArrayList<>();
+                reader.forEach(entries::add);
+                assertEquals("num entries", 4, entries.size());
+                for (int i = 0; i < entries.size(); i++) {
+                    assertEquals(filename + " text " + i, "body " + i + " é", entries.get(i).getResponse().getContent().getText());
+                    assertEquals(filename + " url " + i, "http://www.example.com/" + i, entries.get(i).getRequest().getUrl());
+                }
+                assertEquals("comment after entries read", "trailing comment", reader.getLog().getComment());
+            }
+        }
+    }
+
+    @Test
+    public void skip() throws Exception {
+        File file = temporaryFolder.newFile("skip.har");
+        codec.write(createHar(3), file);
+        try (Stream<HarEntry> entries = codec.openStreamReader(file, HarStreamReader.ContentText.SKIP).streamEntries()) {
+            List<HarEntry> list = entries.collect(Collectors.toList());
+            assertEquals("num entries", 3, list.size());
+            for (HarEntry entry : list) {
+                assertNull("text", entry.getResponse().getContent().getText());
+                assertEquals("mime type", "text/plain", entry.getResponse().getContent().getMimeType());
+                assertEquals("status", 200, entry.getResponse().getStatus());
+                assertEquals("header", "X", entry.getResponse().getHeaders().get(0).getName());
+            }
+        }
+    }
+
+    @Test
+    public void lazy() throws Exception {
+        File file = temporaryFolder.newFile("lazy.har");
+        codec.write(createHar(3), file);
+        List<HarEntry> entries;
+        List<Long> offsets = new ArrayList<>();
+        try (HarStreamReader reader = codec.openStreamReader(file, HarStreamReader.ContentText.LAZY)) {
+            entries = new ArrayList<>();
+            for (HarEntry entry : reader) {
+                entries.add(entry);
+                offsets.add(reader.getLastEntryOffset());
+            }
+        }
+        Collections.reverse(entries);
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals("text " + i, "body " + (2 - i) + " é", entries.get(i).getResponse().getContent().getText());
+        }
+        HarEntry second = codec.readEntryAt(file, offsets.get(1));
+        assertEquals("entry at offset", "http://www.example.com/1", second.getRequest().getUrl());
+    }
+
+    @Test
+    public void noEntries() throws Exception {
+        byte[] json = "{\"log\":{\"version\":\"1.2\",\"creator\":{\"name\":\"x\",\"version\":\"1\"}}}".getBytes(StandardCharsets.UTF_8);
+        try (HarStreamReader reader = HarCodec.getInstance(HarReaderMode.LAX).openStreamReader(new ByteArrayInputStream(json), HarStreamReader.ContentText.SKIP)) {
+            assertEquals("creator", "x", reader.getLog().getCreator().getName());
+            assertNull("entry", reader.readEntry());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lazy_compressed() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "lazy.har.gz");
+        codec.write(createHar(1), file);
+        codec.openStreamReader(file, HarStreamReader.ContentText.LAZY);
+    }
+
+    private static Har createHar(int numEntries) {
+        List<HarEntry> entries = new ArrayList<>();
+        for (int i = 0; i < numEntries; i++) {
+            HarEntry entry = new HarEntry();
+            entry.setStartedDateTime(new Date(1500000000000L + i * 1000L));
+            entry.setPageref("page_1");
+            HarRequest request = new HarRequest();
+            request.setUrl("http://www.example.com/" + i);
+            entry.setRequest(request);
+            HarResponse response = new HarResponse();
+            response.setStatus(200);
+            response.getHeaders().add(new HarHeader());
+            response.getHeaders().get(0).setName("X");
+            response.getHeaders().get(0).setValue("text");
+            response.getContent().setText("body " + i + " é");
+            response.getContent().setMimeType("text/plain");
+            entry.setResponse(response);
+            entries.add(entry);
+        }
+        HarCreatorBrowser creator = new HarCreatorBrowser();
+        creator.setName("test");
+        creator.setVersion("1.0");
+        HarPage page = new HarPage();
+        page.setId("page_1");
+        page.setTitle("Page 1");
+        page.setStartedDateTime(new Date(1500000000000L));
+        HarLog log = new HarLog();
+        log.setCreator(creator);
+        log.setPages(new ArrayList<>(Collections.singletonList(page)));
+        log.setEntries(entries);
+        log.setComment("trailing comment");
+        Har har = new Har();
+        har.setLog(log);
+        return har;
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.mike10004.seleniumcapture;
+
+import com.browserup.harreader.model.HarContent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class LazyHarContentTest {
+
+    @Test
+    public void equalsAndHashCode_loadText() {
+        HarContent original = new HarContent();
+        original.setMimeType("text/plain");
+        original.setSize(5L);
+        LazyHarContent loaded = new LazyHarContent(original, () -> "hello");
+        LazyHarContent unloaded = new LazyHarContent(original, () -> "hello");
+        assertEquals("text", "hello", loaded.getText());
+        assertEquals("equals", loaded, unloaded);
+        assertEquals("equals reversed", new LazyHarContent(original, () -> "hello"), loaded);
+        assertEquals("hashCode", loaded.hashCode(), new LazyHarContent(original, () -> "hello").hashCode());
+        assertNotEquals("different text", loaded, new LazyHarContent(original, () -> "world"));
+    }
+}